@@ -28,19 +28,16 @@ public class CryptoSubscriberChangeListener implements ApplicationListener<Crypt
 
     /**
      * 當CryptoSubscriberChangeEvent事件發生時，此方法將被調用。
-     * 如果虛擬貨幣服務的連線是開啟的，則進行以下操作：
-     * 1.關閉現有的連線。
-     * 2.開啟新的連線。
-     * 如果虛擬貨幣服務的連線是關閉的，則不進行任何操作。
+     * 如果虛擬貨幣服務的連線池已開啟，則比對已訂閱的串流與資料庫中有訂閱者的交易對，
+     * 只發送差異的SUBSCRIBE/UNSUBSCRIBE，不會中斷其他交易對的串流。
+     * 即使部分連線正在重新連線，串流的分配仍會被更新，並在重新連線後一併訂閱。
+     * 如果虛擬貨幣服務的連線池是關閉的，則不進行任何操作。
      *
      * @param event CryptoSubscriberChangeEvent事件對象
      */
     @Override
     public void onApplicationEvent(
             @NonNull CryptoSubscriberChangeEvent event) {
-        if (cryptoService.isConnectionOpen()) {
-            cryptoService.closeConnection();
-            cryptoService.openConnection();
-        }
+        cryptoService.syncSubscribedTradingPairs();
     }
 }
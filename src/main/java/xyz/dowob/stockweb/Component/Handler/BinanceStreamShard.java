@@ -0,0 +1,419 @@
+package xyz.dowob.stockweb.Component.Handler;
+
+import com.google.common.util.concurrent.RateLimiter;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Binance串流連線池中的單一連線。
+ * 每個連線持有自己的WebSocket會話、已分配的串流、重新連線排程與控制訊息限流器，
+ * 訊息本身則交由共用的CryptoWebSocketHandler處理。
+ * 連線失敗(包含首次連線)與斷線都會依指數退避排程重新連線；
+ * 控制訊息放入佇列後由專屬的虛擬執行緒依序限流發送，呼叫端不會因等待限流而阻塞。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName BinanceStreamShard
+ * @description
+ * @create 2026-10-18 23:10
+ * @Version 1.0
+ **/
+@Log4j2
+public class BinanceStreamShard extends WebSocketHandlerDecorator {
+    private static final long MAX_RECONNECT_DELAY_SECONDS = 60;
+
+    @Getter
+    private final int index;
+
+    private final String url;
+
+    private final ThreadPoolTaskScheduler taskScheduler;
+
+    @SuppressWarnings("UnstableApiUsage")
+    private final RateLimiter controlRateLimiter;
+
+    private final int maxStreams;
+
+    private final int streamsPerMessage;
+
+    private final Duration maxLifeTime;
+
+    private final Consumer<BinanceStreamShard> statusListener;
+
+    private final Set<String> streams = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong requestId = new AtomicLong();
+
+    private final StandardWebSocketClient client = new StandardWebSocketClient();
+
+    private final Queue<ControlMessage> controlMessages = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean sendingControl = new AtomicBoolean(false);
+
+    private CompletableFuture<WebSocketSession> connecting;
+
+    private volatile WebSocketSession session;
+
+    private volatile Instant connectionTime;
+
+    private volatile boolean active = false;
+
+    /**
+     * -- SETTER --
+     * 設定重新訂閱前執行的工作，如補齊斷線期間的K線，完成後才會發送SUBSCRIBE。
+     */
+    @Setter
+    private Function<List<String>, CompletableFuture<Void>> beforeSubscribe = streams -> CompletableFuture.completedFuture(null);
+
+    private ScheduledFuture<?> lifeTimeCheck;
+
+    private ScheduledFuture<?> reconnectTask;
+
+    private int reconnectAttempts = 0;
+
+    /**
+     * 待發送的控制訊息
+     *
+     * @param method  SUBSCRIBE或UNSUBSCRIBE
+     * @param streams 串流名稱
+     */
+    private record ControlMessage(String method, List<String> streams) {}
+
+    /**
+     * BinanceStreamShard構造函數
+     *
+     * @param index              連線編號
+     * @param url                串流連線位址
+     * @param delegate           實際處理訊息的WebSocket處理器
+     * @param taskScheduler      重新連線使用的排程器
+     * @param controlMessageRate 每秒可發送的控制訊息數量，限流器以暖機模式建立，閒置後不會累積許可而瞬間超過此速率
+     * @param maxStreams         單一連線可訂閱的串流上限
+     * @param streamsPerMessage  單一控制訊息可包含的串流數量
+     * @param maxLifeTime        連線存活上限，超過後主動重新連線
+     * @param statusListener     連線狀態變更時的回呼
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    public BinanceStreamShard(int index, String url, WebSocketHandler delegate, ThreadPoolTaskScheduler taskScheduler, double controlMessageRate, int maxStreams, int streamsPerMessage, Duration maxLifeTime, Consumer<BinanceStreamShard> statusListener) {
+        super(delegate);
+        this.index = index;
+        this.url = url;
+        this.taskScheduler = taskScheduler;
+        this.controlRateLimiter = RateLimiter.create(controlMessageRate, Duration.ofSeconds(1));
+        this.maxStreams = maxStreams;
+        this.streamsPerMessage = Math.max(streamsPerMessage, 1);
+        this.maxLifeTime = maxLifeTime;
+        this.statusListener = statusListener;
+    }
+
+    /**
+     * 開啟連線，連線建立後會訂閱已分配的所有串流。
+     */
+    public synchronized void start() {
+        active = true;
+        connect();
+    }
+
+    /**
+     * 關閉連線並停止所有重新連線排程。
+     */
+    public synchronized void stop() {
+        active = false;
+        cancelTask(reconnectTask);
+        cancelTask(lifeTimeCheck);
+        controlMessages.clear();
+        closeSession(CloseStatus.GOING_AWAY);
+    }
+
+    /**
+     * 若連線應開啟但目前已斷線，且沒有進行中的連線或重新連線排程，則立即重新連線。
+     * 用於定時檢查，避免連線因未預期的狀態而永久中斷。
+     *
+     * @return 是否觸發了重新連線
+     */
+    public synchronized boolean reconnectIfDisconnected() {
+        if (!active || isConnected() || (connecting != null && !connecting.isDone()) || (reconnectTask != null && !reconnectTask.isDone())) {
+            return false;
+        }
+        log.info("Binance串流連線{}已斷線，重新連線", index);
+        connect();
+        return true;
+    }
+
+    /**
+     * 分配串流到此連線，若連線已開啟則立即發送SUBSCRIBE。
+     *
+     * @param newStreams 串流名稱，如btcusdt@kline_1m
+     */
+    public void subscribe(Collection<String> newStreams) {
+        List<String> added = new ArrayList<>();
+        for (String stream : newStreams) {
+            if (streams.add(stream)) {
+                added.add(stream);
+            }
+        }
+        sendControlMessage("SUBSCRIBE", added);
+    }
+
+    /**
+     * 從此連線移除串流，若連線已開啟則立即發送UNSUBSCRIBE。
+     *
+     * @param removedStreams 串流名稱
+     */
+    public void unsubscribe(Collection<String> removedStreams) {
+        List<String> removed = new ArrayList<>();
+        for (String stream : removedStreams) {
+            if (streams.remove(stream)) {
+                removed.add(stream);
+            }
+        }
+        sendControlMessage("UNSUBSCRIBE", removed);
+    }
+
+    /**
+     * 取得此連線已分配的串流數量
+     *
+     * @return 串流數量
+     */
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * 檢查此連線是否還能分配新的串流
+     *
+     * @return 是否還有空間
+     */
+    public boolean hasCapacity() {
+        return streams.size() < maxStreams;
+    }
+
+    /**
+     * 檢查此連線是否已開啟
+     *
+     * @return 是否已開啟
+     */
+    public boolean isConnected() {
+        WebSocketSession current = session;
+        return current != null && current.isOpen();
+    }
+
+    /**
+     * 當連線建立後，開始檢查連線存活時間，並在重新訂閱前的工作完成後訂閱已分配的串流。
+     *
+     * @param session WebSocket會話
+     */
+    @Override
+    public void afterConnectionEstablished(@NotNull WebSocketSession session) throws Exception {
+        synchronized (this) {
+            if (!active) {
+                session.close(CloseStatus.GOING_AWAY);
+                return;
+            }
+            this.session = session;
+            this.connectionTime = Instant.now();
+            this.reconnectAttempts = 0;
+            cancelTask(lifeTimeCheck);
+            lifeTimeCheck = taskScheduler.scheduleAtFixedRate(this::checkLifeTime, Duration.ofHours(1));
+        }
+        super.afterConnectionEstablished(session);
+        statusListener.accept(this);
+        List<String> assignedStreams = new ArrayList<>(streams);
+        beforeSubscribe.apply(assignedStreams).whenComplete((result, e) -> {
+            if (e != null) {
+                log.warn("Binance串流連線{}重新訂閱前的工作失敗: {}", index, e.getMessage());
+            }
+            sendControlMessage("SUBSCRIBE", assignedStreams);
+        });
+    }
+
+    /**
+     * 當連線關閉後，若連線仍在使用中則排程重新連線。
+     *
+     * @param session WebSocket會話
+     * @param status  關閉狀態
+     */
+    @Override
+    public void afterConnectionClosed(@NotNull WebSocketSession session, @NotNull CloseStatus status) throws Exception {
+        synchronized (this) {
+            if (this.session == session) {
+                this.session = null;
+            }
+            cancelTask(lifeTimeCheck);
+        }
+        super.afterConnectionClosed(session, status);
+        statusListener.accept(this);
+        scheduleReconnect();
+    }
+
+    /**
+     * 當傳輸錯誤時，關閉目前的會話並排程重新連線。
+     *
+     * @param session   WebSocket會話
+     * @param exception 錯誤
+     */
+    @Override
+    public void handleTransportError(@NotNull WebSocketSession session, @NotNull Throwable exception) throws Exception {
+        log.warn("Binance串流連線{}傳輸錯誤: {}", index, exception.getMessage());
+        super.handleTransportError(session, exception);
+        if (session.isOpen()) {
+            session.close(CloseStatus.SERVER_ERROR);
+        } else {
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * 開啟新的連線，連線失敗時不會觸發afterConnectionClosed，因此在此排程重新連線。
+     */
+    private synchronized void connect() {
+        CompletableFuture<WebSocketSession> future = client.execute(this, url);
+        connecting = future;
+        future.whenComplete((connectedSession, e) -> {
+            if (e != null) {
+                log.warn("Binance串流連線{}連線失敗: {}", index, e.getMessage());
+                scheduleReconnect();
+            }
+        });
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (!active || (reconnectTask != null && !reconnectTask.isDone())) {
+            return;
+        }
+        long delay = Math.min(1L << Math.min(reconnectAttempts, 6), MAX_RECONNECT_DELAY_SECONDS);
+        reconnectAttempts++;
+        reconnectTask = taskScheduler.schedule(() -> {
+            synchronized (this) {
+                if (active && !isConnected()) {
+                    connect();
+                }
+            }
+        }, Instant.now().plusSeconds(delay));
+    }
+
+    private void checkLifeTime() {
+        Instant connectedAt = connectionTime;
+        if (connectedAt != null && Instant.now().isAfter(connectedAt.plus(maxLifeTime))) {
+            log.info("Binance串流連線{}已達存活上限，重新連線", index);
+            closeSession(CloseStatus.GOING_AWAY);
+        }
+    }
+
+    /**
+     * 將控制訊息放入佇列，並在沒有發送中的執行緒時啟動虛擬執行緒發送。
+     *
+     * @param method SUBSCRIBE或UNSUBSCRIBE
+     * @param target 串流名稱
+     */
+    private void sendControlMessage(String method, List<String> target) {
+        if (target.isEmpty()) {
+            return;
+        }
+        controlMessages.offer(new ControlMessage(method, List.copyOf(target)));
+        scheduleControlDrain();
+    }
+
+    private void scheduleControlDrain() {
+        if (sendingControl.compareAndSet(false, true)) {
+            Thread.startVirtualThread(this::drainControlMessages);
+        }
+    }
+
+    /**
+     * 依序發送佇列中的控制訊息，結束前再次檢查佇列，避免在釋放發送權時遺漏新加入的訊息。
+     */
+    private void drainControlMessages() {
+        try {
+            ControlMessage controlMessage;
+            while ((controlMessage = controlMessages.poll()) != null) {
+                sendControlMessage(controlMessage);
+            }
+        } finally {
+            sendingControl.set(false);
+            if (!controlMessages.isEmpty()) {
+                scheduleControlDrain();
+            }
+        }
+    }
+
+    /**
+     * 將串流分批發送控制訊息，每則訊息發送前需先取得限流器的許可。
+     * 連線中斷時直接捨棄，重新連線後會重新訂閱所有已分配的串流。
+     *
+     * @param controlMessage 控制訊息
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    private void sendControlMessage(ControlMessage controlMessage) {
+        List<String> target = controlMessage.streams();
+        for (int from = 0; from < target.size(); from += streamsPerMessage) {
+            if (!isConnected()) {
+                return;
+            }
+            List<String> chunk = target.subList(from, Math.min(from + streamsPerMessage, target.size()));
+            StringBuilder message = new StringBuilder("{\"method\":\"").append(controlMessage.method()).append("\",\"params\":[");
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    message.append(',');
+                }
+                message.append('"').append(chunk.get(i)).append('"');
+            }
+            message.append("],\"id\":").append(requestId.incrementAndGet()).append('}');
+            controlRateLimiter.acquire();
+            synchronized (this) {
+                WebSocketSession current = session;
+                if (current == null || !current.isOpen()) {
+                    return;
+                }
+                try {
+                    current.sendMessage(new TextMessage(message.toString()));
+                } catch (IOException e) {
+                    log.warn("Binance串流連線{}發送{}失敗: {}", index, controlMessage.method(), e.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void closeSession(CloseStatus status) {
+        WebSocketSession current = session;
+        if (current != null && current.isOpen()) {
+            try {
+                current.close(status);
+            } catch (IOException e) {
+                log.warn("Binance串流連線{}關閉失敗: {}", index, e.getMessage());
+            }
+        }
+    }
+
+    private void cancelTask(ScheduledFuture<?> task) {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+}
@@ -1,29 +1,28 @@
 package xyz.dowob.stockweb.Component.Handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.client.WebSocketConnectionManager;
-import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 import xyz.dowob.stockweb.Component.Event.Crypto.WebSocketConnectionStatusEvent;
+import xyz.dowob.stockweb.Component.Method.BinanceKlineDecoder;
 import xyz.dowob.stockweb.Component.Method.Kafka.KafkaProducerMethod;
+import xyz.dowob.stockweb.Component.Method.KlineGapFillMethod;
+import xyz.dowob.stockweb.Component.Method.KlineIngestFilter;
+import xyz.dowob.stockweb.Component.Method.KlineLaneDispatcher;
+import xyz.dowob.stockweb.Component.Method.KlineRingBufferMethod;
+import xyz.dowob.stockweb.Component.Method.LatestPriceCacheMethod;
 import xyz.dowob.stockweb.Component.Method.SubscribeMethod;
-import xyz.dowob.stockweb.Component.Method.retry.RetryTemplate;
+import xyz.dowob.stockweb.Dto.Common.KafkaWebsocketDto;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
 import xyz.dowob.stockweb.Exception.AssetExceptions;
-import xyz.dowob.stockweb.Exception.RetryException;
 import xyz.dowob.stockweb.Exception.SubscriptionExceptions;
 import xyz.dowob.stockweb.Model.Crypto.CryptoTradingPair;
 import xyz.dowob.stockweb.Model.User.Subscribe;
@@ -33,22 +32,23 @@ import xyz.dowob.stockweb.Repository.User.SubscribeRepository;
 import xyz.dowob.stockweb.Service.Crypto.CryptoInfluxService;
 
 import java.io.IOException;
-import java.time.Instant;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static xyz.dowob.stockweb.Exception.AssetExceptions.ErrorEnum.CRYPTO_NOT_FOUND;
 
 /**
- * 當WebSocket連線建立後，此類別將被調用。
- * 實現TextWebSocketHandler接口。
- * 此類別用於處理WebSocket連接，並將數據寫入InfluxDB。
+ * 管理Binance串流連線池，並處理所有連線收到的K線訊息。
+ * 已訂閱的交易對會被分配到多個BinanceStreamShard連線，每個連線有獨立的讀取執行緒、重新連線排程與控制訊息限流，
+ * 當現有連線的串流數量達到上限時會自動開啟新的連線。
+ * 訊息在各連線的讀取執行緒上解析，寫入InfluxDB與環形緩衝區的工作則交由每個交易對各自的虛擬執行緒通道依序處理。
  * 此類別包含訂閱和取消訂閱特定交易對的方法。
  *
  * @author yuan
  */
+@Log4j2
 @NoArgsConstructor(force = true)
 @Component
 public class CryptoWebSocketHandler extends TextWebSocketHandler {
@@ -71,128 +71,229 @@ public class CryptoWebSocketHandler extends TextWebSocketHandler {
     private Optional<KafkaProducerMethod> kafkaProducerMethod;
 
     @Autowired
-    private RetryTemplate retryTemplate;
+    private KlineRingBufferMethod klineRingBufferMethod;
 
-    private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    @Autowired
+    private BinanceKlineDecoder binanceKlineDecoder;
 
-    /**
-     * -- SETTER --
-     * 設定ThreadPoolTaskScheduler。
-     */
-    @Setter
+    @Autowired
     private ThreadPoolTaskScheduler taskScheduler;
 
-    private WebSocketSession webSocketSession;
+    @Autowired
+    private KlineGapFillMethod klineGapFillMethod;
+
+    @Autowired
+    private KlineIngestFilter klineIngestFilter;
+
+    @Autowired
+    private KlineLaneDispatcher klineLaneDispatcher;
+
+    @Autowired
+    private LatestPriceCacheMethod latestPriceCacheMethod;
+
+    @Autowired
+    private KlineWebSocketHandler klineWebSocketHandler;
+
+    @Value("${crypto.websocket.url:wss://stream.binance.com:9443/stream?streams=}")
+    private String streamUrl;
+
+    @Value("${crypto.websocket.connection_count:2}")
+    private int connectionCount;
+
+    @Value("${crypto.websocket.max_streams_per_connection:1024}")
+    private int maxStreamsPerConnection;
+
+    @Value("${crypto.websocket.streams_per_message:200}")
+    private int streamsPerMessage;
 
-    int connectMaxLiftTime = 24 * 60 * 60;
+    @Value("${crypto.websocket.control_message_rate:5}")
+    private double controlMessageRate;
 
-    Date connectionTime;
+    @Value("${crypto.websocket.max_life_hours:23}")
+    private long maxLifeHours;
 
-    @Getter
-    boolean isRunning = false;
+    private final List<BinanceStreamShard> shards = new CopyOnWriteArrayList<>();
+
+    private final Map<String, BinanceStreamShard> streamAssignments = new ConcurrentHashMap<>();
+
+    private volatile boolean running = false;
+
+    private volatile boolean connected = false;
 
     /**
-     * 當WebSocket連線建立後，此方法會被調用。它將設定WebSocket會話，並開始重新連接的計劃。
+     * 開啟連線池，依已訂閱的交易對數量決定連線數量並平均分配串流。
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        List<String> streams = findSubscribedStreamList();
+        int shardCount = Math.max(Math.max(connectionCount, 1), (streams.size() + maxStreamsPerConnection - 1) / maxStreamsPerConnection);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(createShard());
+        }
+        for (String stream : streams) {
+            BinanceStreamShard shard = selectShard();
+            streamAssignments.put(stream, shard);
+            shard.subscribe(List.of(stream));
+        }
+        shards.forEach(BinanceStreamShard::start);
+    }
+
+    /**
+     * 關閉連線池中的所有連線。
+     */
+    public synchronized void stop() {
+        running = false;
+        shards.forEach(BinanceStreamShard::stop);
+        shards.clear();
+        streamAssignments.clear();
+        if (connected) {
+            connected = false;
+            eventPublisher.publishEvent(new WebSocketConnectionStatusEvent(this, false, null));
+        }
+    }
+
+    /**
+     * 檢查連線池是否已開啟
      *
-     * @param session WebSocket會話
+     * @return 是否已開啟
      */
-    @Override
-    public void afterConnectionEstablished(@NotNull WebSocketSession session) throws IOException {
-        this.webSocketSession = session;
-        this.connectionTime = new Date();
-        isRunning = true;
-        scheduleReconnection();
-        eventPublisher.publishEvent(new WebSocketConnectionStatusEvent(this, true, session));
-        subscribeAllPreviousTradingPair();
+    public boolean isRunning() {
+        return running;
     }
 
     /**
-     * 當WebSocket連線關閉後，此方法會被調用。它將關閉計劃，釋放資源，並重新連接WebSocket。
+     * 檢查連線池中的每個連線，已斷線且沒有重新連線排程的連線會立即重新連線。
      *
-     * @param session WebSocket會話
-     * @param status  關閉狀態
+     * @return 觸發重新連線的連線數量
      */
-    @Override
-    public void afterConnectionClosed(@NotNull WebSocketSession session, @NotNull CloseStatus status) throws IOException {
-        eventPublisher.publishEvent(new WebSocketConnectionStatusEvent(this, false, null));
-        scheduler.shutdownNow();
-        try {
-            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-        } finally {
-            releaseResources();
-            isRunning = false;
-            this.scheduler = Executors.newSingleThreadScheduledExecutor();
-            scheduleReconnection();
+    public int reconnectDisconnectedShards() {
+        if (!running) {
+            return 0;
         }
+        return (int) shards.stream().filter(BinanceStreamShard::reconnectIfDisconnected).count();
     }
 
     /**
-     * 這個方法用於安排重新連接的任務。
-     * 如果計劃器已經關閉或終止，它將重新初始化。
+     * 訂閱串流，串流會被分配到串流數量最少且未達上限的連線，若所有連線皆已滿則開啟新的連線。
+     *
+     * @param streams 串流名稱，如btcusdt@kline_1m
      */
-    private void scheduleReconnection() {
-        if (scheduler.isShutdown() || scheduler.isTerminated()) {
-            scheduler = Executors.newSingleThreadScheduledExecutor();
+    public synchronized void subscribeStreams(Collection<String> streams) {
+        if (!running) {
+            return;
         }
-        scheduler.scheduleAtFixedRate(() -> {
-            long lifeTime = (new Date().getTime() - connectionTime.getTime()) / 1000;
-            if (lifeTime > connectMaxLiftTime) {
-                reconnectAndResubscribe();
+        Map<BinanceStreamShard, List<String>> assigned = new HashMap<>();
+        for (String stream : streams) {
+            if (streamAssignments.containsKey(stream)) {
+                continue;
             }
-        }, 1, 1, TimeUnit.HOURS);
+            BinanceStreamShard shard = selectShard();
+            if (shard == null) {
+                shard = createShard();
+                shards.add(shard);
+                shard.start();
+            }
+            streamAssignments.put(stream, shard);
+            assigned.computeIfAbsent(shard, k -> new ArrayList<>()).add(stream);
+        }
+        assigned.forEach(BinanceStreamShard::subscribe);
     }
 
     /**
-     * 當WebSocket傳輸錯誤時，此方法會被調用。它將處理錯誤並重新連接WebSocket。
+     * 取消訂閱串流，並從所屬的連線移除。
      *
-     * @param session   WebSocket會話
-     * @param exception 錯誤
+     * @param streams 串流名稱，如btcusdt@kline_1m
      */
-    @Override
-    public void handleTransportError(@NotNull WebSocketSession session, @NotNull Throwable exception) throws IOException {
-        try {
-            retryTemplate.doWithRetry(this::reconnectAndResubscribe);
-        } catch (RetryException e) {
-            releaseResources();
-            isRunning = false;
+    public synchronized void unsubscribeStreams(Collection<String> streams) {
+        Map<BinanceStreamShard, List<String>> removed = new HashMap<>();
+        for (String stream : streams) {
+            BinanceStreamShard shard = streamAssignments.remove(stream);
+            if (shard != null) {
+                removed.computeIfAbsent(shard, k -> new ArrayList<>()).add(stream);
+            }
         }
+        removed.forEach(BinanceStreamShard::unsubscribe);
     }
 
     /**
-     * 當WebSocket收到文本消息時，此方法會被調用。它將處理消息並將其寫入InfluxDB。
+     * 比對目前已分配的串流與資料庫中有訂閱者的交易對，只針對差異發送SUBSCRIBE/UNSUBSCRIBE，
+     * 不影響其他已訂閱串流的連線。
+     */
+    public synchronized void syncSubscribedStreams() {
+        if (!running) {
+            return;
+        }
+        Set<String> targetStreams = new HashSet<>(findSubscribedStreamList());
+        List<String> removedStreams = streamAssignments.keySet().stream().filter(stream -> !targetStreams.contains(stream)).toList();
+        List<String> addedStreams = targetStreams.stream().filter(stream -> !streamAssignments.containsKey(stream)).toList();
+        if (!removedStreams.isEmpty()) {
+            unsubscribeStreams(removedStreams);
+        }
+        if (!addedStreams.isEmpty()) {
+            subscribeStreams(addedStreams);
+        }
+    }
+
+    /**
+     * 當任一連線收到文本消息時，此方法會被調用。
+     * 訊息在該連線的讀取執行緒上以串流方式解析為KlineEvent，再交由KlineLaneDispatcher依交易對分派到各自的虛擬執行緒通道，
+     * 讀取執行緒不會因InfluxDB寫入或Kafka發送而阻塞，同一交易對的K線順序也維持不變。
+     * 非Kafka模式下，未收盤的K線直接轉發給正在觀看的用戶，是否寫入InfluxDB則由KlineIngestFilter決定。
      *
      * @param session WebSocket會話
      * @param message 文本消息
      *
-     * @throws JsonProcessingException 如果處理消息時發生錯誤
+     * @throws IOException 如果處理消息時發生錯誤
      */
     @Override
-    @Async
-    @SuppressWarnings("unchecked")
-    public void handleTextMessage(@NotNull WebSocketSession session, @NotNull TextMessage message) throws JsonProcessingException {
-        TypeReference<Map<String, Object>> typeRef = new TypeReference<>() {};
-        ObjectMapper objectMapper = new ObjectMapper();
-        Map<String, Object> jsonMap = objectMapper.readValue(message.getPayload(), typeRef);
-        if (jsonMap.containsKey("data")) {
-            Map<String, Object> dataMap = (Map<String, Object>) jsonMap.get("data");
-            if (dataMap != null && dataMap.containsKey("k")) {
-                Map<String, Object> kline = (Map<String, Object>) dataMap.get("k");
-                if (kline != null) {
-                    Map<String, Map<String, String>> formattedKline = formatCryptoDataToKline(kline);
-                    if (kafkaProducerMethod != null && kafkaProducerMethod.isPresent()) {
-                        kafkaProducerMethod.get().sendMessage("crypto_kline", formattedKline);
-                    } else {
-                        cryptoInfluxService.writeToInflux(formattedKline);
-                    }
-                }
+    public void handleTextMessage(@NotNull WebSocketSession session, @NotNull TextMessage message) throws IOException {
+        KlineEvent klineEvent = binanceKlineDecoder.decode(message.getPayload());
+        if (klineEvent == null) {
+            return;
+        }
+        klineLaneDispatcher.dispatch(klineEvent, this::ingest);
+    }
+
+    /**
+     * 在交易對的處理通道上處理K線事件，傳遞至Kafka或寫入環形緩衝區與InfluxDB。
+     *
+     * @param klineEvent K線事件
+     */
+    private void ingest(KlineEvent klineEvent) {
+        klineGapFillMethod.recordKline(klineEvent);
+        if (kafkaProducerMethod != null && kafkaProducerMethod.isPresent()) {
+            kafkaProducerMethod.get().sendKlineEvent("crypto_kline", klineEvent);
+        } else {
+            klineRingBufferMethod.append(klineEvent);
+            latestPriceCacheMethod.update(klineEvent.assetType(), klineEvent.symbol(), klineEvent.close(), klineEvent.epochMillis());
+            forwardToViewers(klineEvent);
+            if (klineIngestFilter.shouldPersist(klineEvent)) {
+                cryptoInfluxService.writeToInflux(klineEvent);
             }
         }
     }
 
+    /**
+     * 將K線事件轉發給正在觀看該交易對K線圖的用戶，沒有用戶訂閱時不做任何事。
+     *
+     * @param klineEvent K線事件
+     */
+    private void forwardToViewers(KlineEvent klineEvent) {
+        Long assetId = klineRingBufferMethod.getSubscribedAssetId(klineEvent.symbol());
+        if (assetId == null) {
+            return;
+        }
+        KafkaWebsocketDto kafkaWebsocketDto = new KafkaWebsocketDto();
+        kafkaWebsocketDto.setAssetId(assetId);
+        kafkaWebsocketDto.setAssetType(klineEvent.assetType());
+        kafkaWebsocketDto.setAssetName(klineEvent.symbol());
+        kafkaWebsocketDto.setData(klineEvent.toAssetKlineDataDto());
+        klineWebSocketHandler.sendKlineDataByKafka(kafkaWebsocketDto);
+    }
+
     /**
      * 這個方法返回false，表示不支援部分訊息。
      *
@@ -256,15 +357,11 @@ public class CryptoWebSocketHandler extends TextWebSocketHandler {
                 if (cryptoTradingPairSymbol.checkUserIsSubscriber(user)) {
                     subscribeMethod.removeSubscriberFromTradingPair(cryptoTradingPairSymbol, user.getId());
                 }
-                if (cryptoRepository.countCryptoSubscribersNumber(cryptoTradingPairSymbol) == 0 && webSocketSession != null && webSocketSession.isOpen()) {
-                    String message = "{\"method\":\"UNSUBSCRIBE\", \"params\":[" + "\"" + tradingPair.toLowerCase() + channel.toLowerCase() + "\"]" + ", \"id\": null}";
-                    webSocketSession.sendMessage(new TextMessage(message));
+                if (cryptoRepository.countCryptoSubscribersNumber(cryptoTradingPairSymbol) == 0 && running) {
+                    unsubscribeStreams(List.of(tradingPair.toLowerCase() + channel.toLowerCase()));
                     int allSubscribeNumber = cryptoRepository.countAllSubscribeNumber();
                     if (allSubscribeNumber == 0) {
-                        webSocketSession.close(CloseStatus.GOING_AWAY);
-                        eventPublisher.publishEvent(new WebSocketConnectionStatusEvent(this, false, null));
-                        webSocketSession = null;
-                        isRunning = false;
+                        stop();
                     }
                 }
             } else {
@@ -287,108 +384,54 @@ public class CryptoWebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * 這個方法用於重新連接WebSocket並重新訂閱之前的所有交易對。
-     * 如果重新連接失敗，將計劃下一次重新連接。
-     */
-    public void reconnectAndResubscribe() {
-        try {
-            Instant scheduledTime = Instant.now().plusSeconds(10);
-            taskScheduler.schedule(() -> {
-                if (!scheduler.isShutdown() && !scheduler.isTerminated()) {
-                    scheduler.shutdown();
-                    isRunning = false;
-                    try {
-                        if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
-                            scheduler.shutdownNow();
-                        }
-                    } catch (InterruptedException e) {
-                        scheduler.shutdownNow();
-                    }
-                }
-                if (webSocketSession != null && webSocketSession.isOpen()) {
-                    try {
-                        webSocketSession.close(CloseStatus.GOING_AWAY);
-                        eventPublisher.publishEvent(new WebSocketConnectionStatusEvent(this, false, null));
-                        webSocketSession = null;
-                        isRunning = false;
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-                WebSocketConnectionManager connectionManager = new WebSocketConnectionManager(new StandardWebSocketClient(),
-                                                                                              this,
-                                                                                              "wss://stream.binance.com:9443/stream?streams=");
-                connectionManager.setAutoStartup(true);
-                connectionManager.start();
-                this.connectionTime = new Date();
-                this.isRunning = true;
-                try {
-                    subscribeAllPreviousTradingPair();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }, scheduledTime);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    /**
-     * 這個方法用於訂閱之前的所有交易對。
-     * 如果訂閱失敗，將計劃下一次訂閱。
-     */
-    private void subscribeAllPreviousTradingPair() throws IOException {
-        List<String> tradingPairList = findSubscribedTradingPairList();
-        if (tradingPairList != null && !tradingPairList.isEmpty()) {
-            String message = "{\"method\":\"SUBSCRIBE\", \"params\":" + tradingPairList + ", \"id\": null}";
-            webSocketSession.sendMessage(new TextMessage(message));
-            isRunning = true;
-        }
-    }
-
-    /**
-     * 這個方法用於查找所有已訂閱的交易對。
+     * 這個方法用於查找所有已訂閱的交易對串流。
      *
      * @return List<String>
      */
-    private List<String> findSubscribedTradingPairList() {
+    private List<String> findSubscribedStreamList() {
         return cryptoRepository.findAllByHasAnySubscribed(true)
                                .stream()
-                               .map(tradingPair -> "\"" + tradingPair.getTradingPair().toLowerCase() + "@kline_1m\"")
+                               .map(tradingPair -> tradingPair.getTradingPair().toLowerCase() + "@kline_1m")
                                .toList();
     }
 
     /**
-     * 這個方法用於釋放資源。
-     * 如果WebSocket連接仍然打開，它將關閉WebSocket連接。
+     * 選擇串流數量最少且未達上限的連線
+     *
+     * @return 連線，若所有連線皆已滿則回傳null
      */
-    private void releaseResources() throws IOException {
-        if (webSocketSession != null && webSocketSession.isOpen()) {
-            webSocketSession.close(CloseStatus.GOING_AWAY);
-            webSocketSession = null;
-        }
-        scheduler.shutdownNow();
-        isRunning = false;
+    private BinanceStreamShard selectShard() {
+        return shards.stream()
+                     .filter(BinanceStreamShard::hasCapacity)
+                     .min(Comparator.comparingInt(BinanceStreamShard::getStreamCount))
+                     .orElse(null);
+    }
+
+    private BinanceStreamShard createShard() {
+        BinanceStreamShard shard = new BinanceStreamShard(shards.size(),
+                                                          streamUrl,
+                                                          this,
+                                                          taskScheduler,
+                                                          controlMessageRate,
+                                                          maxStreamsPerConnection,
+                                                          streamsPerMessage,
+                                                          Duration.ofHours(maxLifeHours),
+                                                          this::onShardStatusChanged);
+        shard.setBeforeSubscribe(klineGapFillMethod::backfillStreams);
+        return shard;
     }
 
     /**
-     * 這個方法用於將加密貨幣數據格式化為K線數據。
-     * 以虛擬貨幣名稱為key，K線數據為value。
+     * 任一連線狀態變更時，依連線池整體狀態發布WebSocket連線狀態事件。
      *
-     * @param dataMap 加密貨幣數據
-     *
-     * @return Map<String, Map < String, String>>
+     * @param shard 狀態變更的連線
      */
-    private Map<String, Map<String, String>> formatCryptoDataToKline(Map<String, Object> dataMap) {
-        HashMap<String, String> kline = new HashMap<>();
-        HashMap<String, Map<String, String>> result = new HashMap<>();
-        kline.put("time", dataMap.get("t").toString());
-        kline.put("open", dataMap.get("o").toString());
-        kline.put("high", dataMap.get("h").toString());
-        kline.put("low", dataMap.get("l").toString());
-        kline.put("close", dataMap.get("c").toString());
-        kline.put("volume", dataMap.get("v").toString());
-        result.put(dataMap.get("s").toString(), kline);
-        return result;
+    private void onShardStatusChanged(BinanceStreamShard shard) {
+        boolean anyConnected = running && shards.stream().anyMatch(BinanceStreamShard::isConnected);
+        if (anyConnected != connected) {
+            connected = anyConnected;
+            eventPublisher.publishEvent(new WebSocketConnectionStatusEvent(this, anyConnected, null));
+        }
+        log.info("Binance串流連線{}狀態: {}", shard.getIndex(), shard.isConnected() ? "已連線" : "已斷線");
     }
 }
@@ -0,0 +1,156 @@
+package xyz.dowob.stockweb.Component.Handler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * 用於將K線圖資料編碼為二進位WebSocket訊框的編碼器。
+ * 訊框格式(Big-Endian)：
+ * 標頭 19 bytes: 版本(byte)、類型(byte, 0:current 1:history)、旗標(byte, bit0:hasMore)、分段序號(int, -1表示不分段)、
+ * 偏好幣種匯率(double)、筆數(int)。
+ * 每筆資料 48 bytes: 時間戳毫秒(long)、開盤價、最高價、最低價、收盤價、成交量(double)，缺少的欄位以NaN表示。
+ * 資料段與偏好幣種匯率無關，可先以encodeRecords編碼後快取，每個連線只需再以frame加上各自的標頭。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineBinaryEncoder
+ * @description
+ * @create 2026-10-18 15:40
+ * @Version 1.0
+ **/
+public final class KlineBinaryEncoder {
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 19;
+
+    public static final int RECORD_SIZE = 48;
+
+    private static final String[] VALUE_FIELDS = {"open", "high", "low", "close", "volume"};
+
+    private KlineBinaryEncoder() {
+    }
+
+    /**
+     * 將K線圖資料陣列編碼為二進位訊框。
+     *
+     * @param data    K線圖資料陣列
+     * @param type    資產類型(current/history)
+     * @param exrate  偏好幣種匯率
+     * @param chunk   分段序號，可為null
+     * @param hasMore 是否還有更早的分段，可為null
+     *
+     * @return 二進位訊框
+     */
+    public static byte[] encode(JsonNode data, String type, BigDecimal exrate, Integer chunk, Boolean hasMore) {
+        int count = data == null ? 0 : data.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        writeHeader(buffer, type, exrate, chunk, hasMore, count);
+        if (data != null) {
+            for (JsonNode node : data) {
+                buffer.putLong(parseTimestamp(node.path("timestamp").asText(null)));
+                for (String field : VALUE_FIELDS) {
+                    buffer.putDouble(parseValue(node.path(field).asText(null)));
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 以串流方式解析已序列化的K線圖JSON陣列並編碼為二進位訊框的資料段，不建立JSON樹。
+     *
+     * @param json        K線圖資料JSON陣列的UTF-8位元組
+     * @param jsonFactory JSON解析工廠
+     *
+     * @return 不含標頭的資料段
+     *
+     * @throws IOException 解析JSON失敗時拋出
+     */
+    public static byte[] encodeRecords(byte[] json, JsonFactory jsonFactory) throws IOException {
+        ByteArrayOutputStream recordStream = new ByteArrayOutputStream(json.length / 3);
+        try (JsonParser parser = jsonFactory.createParser(json); DataOutputStream output = new DataOutputStream(recordStream)) {
+            long timestamp = Long.MIN_VALUE;
+            double[] values = new double[VALUE_FIELDS.length];
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_OBJECT) {
+                    timestamp = Long.MIN_VALUE;
+                    Arrays.fill(values, Double.NaN);
+                } else if (token == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    String text = parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+                    if ("timestamp".equals(field)) {
+                        timestamp = parseTimestamp(text);
+                    } else {
+                        for (int i = 0; i < VALUE_FIELDS.length; i++) {
+                            if (VALUE_FIELDS[i].equals(field)) {
+                                values[i] = parseValue(text);
+                                break;
+                            }
+                        }
+                    }
+                } else if (token == JsonToken.END_OBJECT) {
+                    output.writeLong(timestamp);
+                    for (double value : values) {
+                        output.writeDouble(value);
+                    }
+                }
+            }
+        }
+        return recordStream.toByteArray();
+    }
+
+    /**
+     * 為已編碼的資料段加上標頭，組成不分段的二進位訊框。
+     *
+     * @param records 不含標頭的資料段，長度需為RECORD_SIZE的倍數
+     * @param type    資產類型(current/history)
+     * @param exrate  偏好幣種匯率
+     *
+     * @return 二進位訊框
+     */
+    public static byte[] frame(byte[] records, String type, BigDecimal exrate) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + records.length);
+        writeHeader(buffer, type, exrate, null, null, records.length / RECORD_SIZE);
+        buffer.put(records);
+        return buffer.array();
+    }
+
+    private static void writeHeader(ByteBuffer buffer, String type, BigDecimal exrate, Integer chunk, Boolean hasMore, int count) {
+        buffer.put(VERSION);
+        buffer.put((byte) ("history".equals(type) ? 1 : 0));
+        buffer.put((byte) (Boolean.TRUE.equals(hasMore) ? 1 : 0));
+        buffer.putInt(chunk == null ? -1 : chunk);
+        buffer.putDouble(exrate == null ? 1d : exrate.doubleValue());
+        buffer.putInt(count);
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        if (timestamp == null || timestamp.isEmpty()) {
+            return Long.MIN_VALUE;
+        }
+        return Instant.parse(timestamp).toEpochMilli();
+    }
+
+    private static double parseValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package xyz.dowob.stockweb.Component.Handler;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import xyz.dowob.stockweb.Enum.WebsocketOverflowPolicy;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 用於K線圖WebSocket連線的非阻塞發送裝飾器。
+ * 繼承自ConcurrentWebSocketSessionDecorator，確保同一連線不會被多個執行緒同時寫入。
+ * 呼叫端只將消息放入佇列，實際發送由該連線專屬的虛擬執行緒處理，因此廣播時不會等待處理較慢的連線。
+ * 初始化資料、分段資料等完整消息不會被丟棄，放入有界佇列，佇列已滿代表連線處理過慢，直接關閉連線；
+ * 即時K線資料則放入另一個有界佇列，並依照溢出策略處理，COALESCE策略依資產與類型各保留最新一筆。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineSessionDecorator
+ * @description
+ * @create 2026-10-18 10:12
+ * @Version 1.0
+ **/
+@Log4j2
+public class KlineSessionDecorator extends ConcurrentWebSocketSessionDecorator {
+    private final ArrayBlockingQueue<WebSocketMessage<?>> fullMessages;
+
+    private final ArrayBlockingQueue<WebSocketMessage<?>> realtimeMessages;
+
+    private final Map<String, WebSocketMessage<?>> latestMessages = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private final WebsocketOverflowPolicy overflowPolicy;
+
+    /**
+     * 建立K線圖WebSocket連線發送裝飾器。
+     *
+     * @param delegate        原始WebSocketSession對象
+     * @param sendTimeLimit   單次發送時間上限(毫秒)
+     * @param bufferSizeLimit 發送緩衝區大小上限(位元組)
+     * @param queueCapacity     即時資料佇列容量
+     * @param fullQueueCapacity 完整資料佇列容量
+     * @param overflowPolicy    佇列溢出處理策略
+     */
+    public KlineSessionDecorator(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit, int queueCapacity, int fullQueueCapacity, WebsocketOverflowPolicy overflowPolicy) {
+        super(delegate,
+              sendTimeLimit,
+              bufferSizeLimit,
+              overflowPolicy == WebsocketOverflowPolicy.CLOSE ? OverflowStrategy.TERMINATE : OverflowStrategy.DROP);
+        this.fullMessages = new ArrayBlockingQueue<>(Math.max(1, fullQueueCapacity));
+        this.realtimeMessages = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * 將完整資料消息放入佇列，此類消息不會被丟棄。
+     * 若佇列已滿，代表連線處理過慢，關閉連線。
+     *
+     * @param message 消息對象
+     */
+    public void enqueue(WebSocketMessage<?> message) {
+        if (!fullMessages.offer(message)) {
+            log.warn("K線圖連線完整資料佇列已滿，關閉連線: {}", getId());
+            closeSlowConsumer();
+            return;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 將即時K線資料消息放入有界佇列。
+     * 若佇列已滿，則依照溢出策略丟棄最舊消息、關閉連線；COALESCE策略則依合併鍵僅保留最新消息。
+     *
+     * @param coalesceKey 合併鍵，同一資產與類型的即時資料使用相同的鍵
+     * @param message     消息對象
+     */
+    public void enqueueRealtime(String coalesceKey, WebSocketMessage<?> message) {
+        switch (overflowPolicy) {
+            case COALESCE -> latestMessages.put(coalesceKey, message);
+            case DROP -> {
+                while (!realtimeMessages.offer(message)) {
+                    realtimeMessages.poll();
+                }
+            }
+            case CLOSE -> {
+                if (!realtimeMessages.offer(message)) {
+                    closeSlowConsumer();
+                    return;
+                }
+            }
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 若目前沒有發送中的執行緒，則啟動一個虛擬執行緒發送佇列中的消息。
+     */
+    private void scheduleDrain() {
+        if (isOpen() && draining.compareAndSet(false, true)) {
+            Thread.startVirtualThread(this::drain);
+        }
+    }
+
+    /**
+     * 依序發送佇列中的消息，完整資料優先於即時資料。
+     * 結束前再次檢查佇列，避免在釋放發送權時遺漏新加入的消息。
+     */
+    private void drain() {
+        try {
+            WebSocketMessage<?> message;
+            while (isOpen() && (message = nextMessage()) != null) {
+                sendMessage(message);
+            }
+        } catch (Exception e) {
+            log.warn("K線圖連線發送失敗，關閉連線: {}", e.getMessage());
+            closeSlowConsumer();
+        } finally {
+            draining.set(false);
+            if (isOpen() && hasPendingMessage()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private WebSocketMessage<?> nextMessage() {
+        WebSocketMessage<?> message = fullMessages.poll();
+        if (message == null) {
+            message = realtimeMessages.poll();
+        }
+        Iterator<String> keys = latestMessages.keySet().iterator();
+        while (message == null && keys.hasNext()) {
+            message = latestMessages.remove(keys.next());
+        }
+        return message;
+    }
+
+    private boolean hasPendingMessage() {
+        return !fullMessages.isEmpty() || !realtimeMessages.isEmpty() || !latestMessages.isEmpty();
+    }
+
+    private void closeSlowConsumer() {
+        fullMessages.clear();
+        realtimeMessages.clear();
+        latestMessages.clear();
+        try {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+        }
+    }
+}
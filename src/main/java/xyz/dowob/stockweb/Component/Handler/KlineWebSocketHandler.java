@@ -6,18 +6,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.influxdb.query.FluxTable;
+import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import xyz.dowob.stockweb.Component.Method.KlineClusterMethod;
+import xyz.dowob.stockweb.Component.Method.KlineRingBufferMethod;
 import xyz.dowob.stockweb.Dto.Common.AssetKlineDataDto;
 import xyz.dowob.stockweb.Dto.Common.KafkaWebsocketDto;
 import xyz.dowob.stockweb.Dto.Common.WebsocketChartDto;
 import xyz.dowob.stockweb.Enum.WebsocketAction;
+import xyz.dowob.stockweb.Enum.WebsocketOverflowPolicy;
 import xyz.dowob.stockweb.Exception.AssetExceptions;
 import xyz.dowob.stockweb.Exception.FormatExceptions;
 import xyz.dowob.stockweb.Exception.RepositoryExceptions;
@@ -30,12 +36,16 @@ import xyz.dowob.stockweb.Service.Common.AssetService;
 import xyz.dowob.stockweb.Service.Common.RedisService;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static xyz.dowob.stockweb.Exception.FormatExceptions.ErrorEnum.KLINE_FORMAT_ERROR;
 
@@ -50,6 +60,7 @@ import static xyz.dowob.stockweb.Exception.FormatExceptions.ErrorEnum.KLINE_FORM
  * @create 2024-08-24 14:25
  * @Version 1.0
  **/
+@Log4j2
 public class KlineWebSocketHandler extends TextWebSocketHandler {
     private static final Map<User, Map<Long, String>> CONNECTIONS = new ConcurrentHashMap<>();
 
@@ -57,10 +68,26 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
 
     private static final Map<Long, Set<String>> KLINE_SUBSCRIPTIONS = new ConcurrentHashMap<>();
 
+    private static final Map<String, Set<Long>> SESSION_SUBSCRIPTIONS = new ConcurrentHashMap<>();
+
     private static final Map<String, WebSocketSession> SESSION_MAP = new ConcurrentHashMap<>();
 
     private static final Map<String, Boolean> INITIALIZATION_STATUS = new ConcurrentHashMap<>();
 
+    private static final Set<Long> HISTORY_STREAMING = ConcurrentHashMap.newKeySet();
+
+    private static final Map<String, CompletableFuture<Boolean>> KLINE_LOADING = new ConcurrentHashMap<>();
+
+    private static final Set<String> BINARY_SESSIONS = ConcurrentHashMap.newKeySet();
+
+    private static final Map<Long, List<AssetKlineDataDto>> CONFLATED_KLINES = new ConcurrentHashMap<>();
+
+    private static final Map<String, EncodedKlineRecords> BINARY_RECORDS = new ConcurrentHashMap<>();
+
+    private static final Map<String, String> REFRESHED_TIMESTAMPS = new ConcurrentHashMap<>();
+
+    private static final String BINARY_FORMAT = "binary";
+
     private static final String CURRENT_TYPE = "current";
 
     private static final String HISTORY_TYPE = "history";
@@ -80,11 +107,39 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private KlineRingBufferMethod klineRingBufferMethod;
+
+    @Autowired
+    private KlineClusterMethod klineClusterMethod;
+
     @Value("${common.kafka.enable:false}")
     private boolean kafkaEnable;
 
+    @Value("${websocket.kline.send_time_limit:10000}")
+    private int sendTimeLimit;
+
+    @Value("${websocket.kline.buffer_size_limit:524288}")
+    private int bufferSizeLimit;
+
+    @Value("${websocket.kline.queue_capacity:16}")
+    private int queueCapacity;
+
+    @Value("${websocket.kline.full_queue_capacity:256}")
+    private int fullQueueCapacity;
+
+    @Value("${websocket.kline.overflow_policy:COALESCE}")
+    private WebsocketOverflowPolicy overflowPolicy;
+
+    @Value("${websocket.kline.history_chunk_days:180}")
+    private int historyChunkDays;
+
+    @Value("${websocket.kline.conflation_tick_ms:250}")
+    private long conflationTickMs;
+
     /**
      * 每分鐘更新一次current Kline資料。
+     * 叢集模式下只由取得執行權的實例寫入共享緩存，各實例只推送給本地連線。
      * 若KLINE_SUBSCRIPTIONS為空，則不執行。
      * 僅在不開啟Kafka時執行。
      */
@@ -93,14 +148,12 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
         if (KLINE_SUBSCRIPTIONS.isEmpty() || kafkaEnable) {
             return;
         }
-        KLINE_SUBSCRIPTIONS.forEach((assetId, sessions) -> CompletableFuture.runAsync(() -> updateSubscription(assetId,
-                                                                                                               sessions,
-                                                                                                               CURRENT_TYPE,
-                                                                                                               false)));
+        CompletableFuture.runAsync(() -> refreshSubscriptions(CURRENT_TYPE));
     }
 
     /**
      * 每天4點更新history Kline資料。
+     * 叢集模式下只由取得執行權的實例寫入共享緩存，各實例只推送給本地連線。
      * 若KLINE_SUBSCRIPTIONS為空，則不執行。
      */
     @Scheduled(cron = "0 0 4 * * *")
@@ -108,15 +161,93 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
         if (KLINE_SUBSCRIPTIONS.isEmpty()) {
             return;
         }
-        KLINE_SUBSCRIPTIONS.forEach((assetId, sessions) -> CompletableFuture.runAsync(() -> updateSubscription(assetId,
-                                                                                                               sessions,
-                                                                                                               HISTORY_TYPE,
-                                                                                                               false)));
+        CompletableFuture.runAsync(() -> refreshSubscriptions(HISTORY_TYPE));
+    }
+
+    /**
+     * 批次更新已訂閱資產的Kline資料。
+     * 共享的Redis緩存只由取得refresh_{type}執行權的實例寫入，該實例涵蓋共享訂閱登記表中所有實例訂閱的資產，並從緩存的最後更新時間開始查詢；
+     * 其他實例只查詢本地訂閱的資產，從本實例上次推送的時間開始查詢，且只推送給本地連線，不寫入緩存，避免多個實例重複寫入相同的K線。
+     * 以一次Redis批次讀取取得各資產的最後更新時間與處理狀態，跳過正在處理中的資產。
+     * 再以AssetService.getAssetsKlineData依資料庫分組，每組只執行一次Flux查詢，於記憶體中拆分後處理。
+     * 單一資產處理失敗時只記錄錯誤，不影響其他資產的更新。
+     *
+     * @param type 資產類型
+     */
+    private void refreshSubscriptions(String type) {
+        Map<Long, Set<String>> subscriptions = new HashMap<>(KLINE_SUBSCRIPTIONS);
+        subscriptions.values().removeIf(Set::isEmpty);
+        boolean writeCache = klineClusterMethod.tryAcquireTask("refresh_" + type, 50);
+        Set<Long> assetIdSet = new HashSet<>(subscriptions.keySet());
+        if (writeCache) {
+            assetIdSet.addAll(klineClusterMethod.getGlobalSubscribedAssetIds());
+        }
+        if (assetIdSet.isEmpty()) {
+            return;
+        }
+        List<Long> assetIds = new ArrayList<>(assetIdSet);
+        List<String> innerKeys = new ArrayList<>(assetIds.size() * 2);
+        assetIds.forEach(assetId -> innerKeys.add(String.format("%s_%s:%s", CURRENT_TYPE, assetId, LAST_TIMESTAMP_SUFFIX)));
+        assetIds.forEach(assetId -> innerKeys.add(String.format("%s_%s:%s", type, assetId, STATUS_SUFFIX)));
+        List<String> values = redisService.getHashValuesFromKey(KLINE_PREFIX, innerKeys);
+        Map<Long, String> assetTimestamps = new HashMap<>();
+        for (int i = 0; i < assetIds.size(); i++) {
+            if ("progress".equals(values.get(assetIds.size() + i))) {
+                continue;
+            }
+            String refreshKey = String.format("%s_%s", type, assetIds.get(i));
+            String timestamp = writeCache ? values.get(i) : REFRESHED_TIMESTAMPS.getOrDefault(refreshKey, values.get(i));
+            if (writeCache || timestamp != null) {
+                assetTimestamps.put(assetIds.get(i), timestamp);
+            }
+        }
+        if (assetTimestamps.isEmpty()) {
+            return;
+        }
+        Map<String, List<FluxTable>> tables = assetService.getAssetsKlineData(assetTimestamps, type);
+        assetTimestamps.keySet().forEach(assetId -> {
+            String tableKey = String.format("%s_%s", assetId, type);
+            if (!tables.containsKey(tableKey)) {
+                return;
+            }
+            Map<String, List<FluxTable>> tableMap = new HashMap<>();
+            tableMap.put(tableKey, tables.get(tableKey));
+            try {
+                if (writeCache) {
+                    boolean fullLoad = assetTimestamps.get(assetId) == null;
+                    if (fullLoad) {
+                        assetService.resetKlineCache(assetId, type);
+                    }
+                    cacheKlineData(assetId, type, tableMap);
+                    if (fullLoad) {
+                        assetService.markKlineCacheComplete(assetId, type);
+                    }
+                }
+                Set<String> sessions = subscriptions.get(assetId);
+                if (sessions != null && !tableMap.get(tableKey).isEmpty()) {
+                    List<String> klineData = assetService.formatKlineTableByTime(tableMap);
+                    String klineJson = klineData.getFirst();
+                    if (klineData.get(1) != null) {
+                        REFRESHED_TIMESTAMPS.put(String.format("%s_%s", type, assetId), klineData.get(1));
+                    }
+                    if (CURRENT_TYPE.equals(type)) {
+                        klineRingBufferMethod.merge(assetId, klineJson.getBytes(StandardCharsets.UTF_8));
+                    }
+                    WebsocketChartDto dto = formatKlineData(List.of(klineJson), type);
+                    if (dto != null) {
+                        broadcast(assetId, dto, sessions, false, false);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("更新資產ID: {}的{}K線資料失敗，繼續處理其他資產", assetId, type, e);
+            }
+        });
     }
 
     /**
      * 當WebSocket連接成功時，此方法將被調用。
      * 將用戶加入CONNECTIONS中，並將用戶ID加入USER_MAP中，CONNECTIONS中的用戶ID對應的WebSocketSession對象。
+     * 連線會被包裝為KlineSessionDecorator，以有界佇列非阻塞地發送消息。
      *
      * @param session WebSocketSession對象
      */
@@ -125,7 +256,8 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
         User user = (User) session.getAttributes().get("user");
         CONNECTIONS.computeIfAbsent(user, k -> new ConcurrentHashMap<>());
         USER_MAP.put(session.getId(), user);
-        SESSION_MAP.put(session.getId(), session);
+        SESSION_MAP.put(session.getId(),
+                        new KlineSessionDecorator(session, sendTimeLimit, bufferSizeLimit, queueCapacity, fullQueueCapacity, overflowPolicy));
         INITIALIZATION_STATUS.put(session.getId(), false);
     }
 
@@ -153,6 +285,7 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
      * 如果CONNECTIONS中的用戶已經訂閱過該資產ID，則關閉先前訂閱。
      * 將用戶ID與資產ID存入CONNECTIONS中。
      * 將資產ID與WebSocketSession對象存入KLINE_SUBSCRIPTIONS中。
+     * 訂閱時可帶入format為binary，改以KlineBinaryEncoder定義的二進位訊框傳輸K線資料。
      * 從資料庫獲取資產的current Kline資料和history Kline資料。
      * 如果資料庫中沒有資料，則開始更新資料，使用CompletableFuture異步處理。
      *
@@ -175,6 +308,9 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
                     INITIALIZATION_STATUS.put(session.getId(), true);
                     break;
                 case WebsocketAction.subscribe:
+                    if (BINARY_FORMAT.equals(jsonNode.path("format").asText())) {
+                        BINARY_SESSIONS.add(session.getId());
+                    }
                     handleSubscribe(session, assetId);
                     break;
                 default:
@@ -193,20 +329,21 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
             preAssetSession.sendMessage(new TextMessage("關閉先前重複訂閱"));
             removeSession(preAssetSession);
         }
-        CONNECTIONS.getOrDefault(user, new HashMap<>()).put(assetId, session.getId());
-        KLINE_SUBSCRIPTIONS.computeIfAbsent(assetId, k -> new HashSet<>()).add(session.getId());
+        CONNECTIONS.computeIfAbsent(user, k -> new ConcurrentHashMap<>()).put(assetId, session.getId());
         String validCheck = validAsset(assetId);
         if (!validCheck.isEmpty()) {
             session.sendMessage(new TextMessage(validCheck));
             session.close();
             return;
         }
+        addSubscription(assetId, session.getId());
+        WebSocketSession decoratedSession = SESSION_MAP.getOrDefault(session.getId(), session);
         CompletableFuture.runAsync(() -> {
             if (kafkaEnable) {
                 updateSubscription(assetId, Set.of(session.getId()), CURRENT_TYPE, true);
                 return;
             }
-            initialConnect(assetId, session);
+            initialConnect(assetId, decoratedSession);
         });
     }
 
@@ -217,8 +354,9 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
      * @param session WebSocketSession對象
      */
     private void initialConnect(Long assetId, WebSocketSession session) {
-        WebsocketChartDto currentData = geKlineData(assetId, CURRENT_TYPE);
-        WebsocketChartDto historyData = geKlineData(assetId, HISTORY_TYPE);
+        boolean binary = BINARY_SESSIONS.contains(session.getId());
+        byte[] currentData = getKlineData(assetId, CURRENT_TYPE, binary);
+        byte[] historyData = getKlineData(assetId, HISTORY_TYPE, binary);
         initialOrSendKlineData(currentData, session, assetId, CURRENT_TYPE);
         initialOrSendKlineData(historyData, session, assetId, HISTORY_TYPE);
     }
@@ -237,51 +375,163 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * 從資料庫獲取資產的Kline資料，並轉換成FluxTable對象存入Redis緩存。
+     * 從資料庫串流獲取資產的Kline資料，每格式化一段就存入Redis緩存，並交給onChunk處理。
+     * 沒有起始時間代表從頭載入完整資料，會先清除既有快取，全部分段寫入後才標記快取為完整，載入中的部分資料不會被其他連線當作完整資料讀取。
      *
      * @param assetId   資產ID
      * @param type      資產類型
      * @param timestamp 時間戳
+     * @param onChunk   每一段K線JSON的處理方法，可為null
      *
-     * @return 資產的Kline資料
+     * @return 是否查詢到資料，若其他連線正在處理中則回傳null
      */
-    private Map<String, List<FluxTable>> handleKlineData(Long assetId, String type, String timestamp) {
+    private Boolean handleKlineData(Long assetId, String type, String timestamp, Consumer<String> onChunk) {
+        String hashInnerKey = String.format("%s_%s:", type, assetId);
+        String listKey = String.format("%s_%s", KLINE_PREFIX, hashInnerKey);
         try {
-            String status = redisService.getHashValueFromKey(KLINE_PREFIX, String.format("%s_%s:%s", type, assetId, STATUS_SUFFIX));
+            String status = redisService.getHashValueFromKey(KLINE_PREFIX, hashInnerKey + STATUS_SUFFIX);
             if ("progress".equals(status)) {
                 return null;
             }
-            Map<String, List<FluxTable>> tableMap = assetService.getAssetKlineData(assetId, type, timestamp);
-            if (assetService.checkNewDataMethod(assetId, type, tableMap)) {
-                String hashInnerKey = String.format("%s_%s:", type, assetId);
-                String listKey = String.format("%s_%s", KLINE_PREFIX, hashInnerKey);
-                assetService.saveAssetInfoToRedis(tableMap, listKey, hashInnerKey);
+            boolean fullLoad = timestamp == null;
+            if (fullLoad) {
+                assetService.resetKlineCache(assetId, type);
+            }
+            long rows = assetService.streamAssetKlineData(assetId, type, timestamp, klineData -> {
+                assetService.saveKlineDataToRedis(klineData, listKey, hashInnerKey);
+                if (onChunk != null) {
+                    onChunk.accept(klineData.getFirst());
+                }
+            });
+            if (fullLoad) {
+                assetService.markKlineCacheComplete(assetId, type);
             }
-            return tableMap;
+            return assetService.checkNewDataMethod(assetId, type, rows > 0);
         } catch (AssetExceptions | RepositoryExceptions e) {
             throw new RuntimeException(e);
+        } catch (FormatExceptions e) {
+            redisService.saveHashToCache(KLINE_PREFIX, hashInnerKey + STATUS_SUFFIX, "fail", 48);
+            throw e;
         }
     }
 
     /**
-     * 從Redis獲取資產的Kline資料。並轉換成K線圖格式。
+     * 若資料表中有新資料，則將其存入Redis緩存。
+     *
+     * @param assetId  資產ID
+     * @param type     資產類型
+     * @param tableMap 資料表
+     *
+     * @throws RepositoryExceptions 如果讀取Redis發生錯誤，則拋出異常
+     */
+    private void cacheKlineData(Long assetId, String type, Map<String, List<FluxTable>> tableMap) throws RepositoryExceptions {
+        if (assetService.checkNewDataMethod(assetId, type, tableMap)) {
+            String hashInnerKey = String.format("%s_%s:", type, assetId);
+            String listKey = String.format("%s_%s", KLINE_PREFIX, hashInnerKey);
+            assetService.saveAssetInfoToRedis(tableMap, listKey, hashInnerKey);
+        }
+    }
+
+    /**
+     * 獲取資產預先合併的Kline資料。
+     * current資料優先從堆外環形緩衝區取得；若緩衝區尚未初始化，則從Redis讀取並作為緩衝區的初始資料。
+     * 資料為已序列化的JSON陣列位元組，不需要解析成JSON樹。
      *
      * @param assetId 資產ID
      * @param type    資產類型
      *
-     * @return 資產的Kline資料
+     * @return 資產的Kline資料，若沒有資料則回傳null
      */
-    private WebsocketChartDto geKlineData(Long assetId, String type) {
+    private byte[] getKlineData(Long assetId, String type) {
         try {
-            String hashInnerKey = String.format("%s_%s:", type, assetId);
-            String listKey = String.format("%s_%s", KLINE_PREFIX, hashInnerKey);
-            List<String> dataList = redisService.getCacheListValueFromKey(listKey + "data");
-            return formatKlineData(dataList, type);
+            if (CURRENT_TYPE.equals(type)) {
+                byte[] bufferedData = klineRingBufferMethod.getKlineData(assetId);
+                if (bufferedData != null) {
+                    return bufferedData;
+                }
+            }
+            byte[] cachedData = assetService.getKlineCacheBlob(assetId, type);
+            if (cachedData != null && CURRENT_TYPE.equals(type)) {
+                klineRingBufferMethod.seed(assetId, cachedData);
+            }
+            return cachedData;
         } catch (Exception ignored) {
         }
         return null;
     }
 
+    /**
+     * 依連線的格式獲取資產預先合併的Kline資料。
+     * 二進位格式的current資料直接複製環形緩衝區的記錄；其餘資料由JSON編碼後依資產與類型快取，
+     * 來源資料未變更時，之後的二進位連線可直接使用已編碼的資料段，不需重新解析JSON。
+     *
+     * @param assetId 資產ID
+     * @param type    資產類型
+     * @param binary  是否使用二進位格式
+     *
+     * @return JSON陣列位元組，或二進位格式時為KlineBinaryEncoder的資料段，若沒有資料則回傳null
+     */
+    private byte[] getKlineData(Long assetId, String type, boolean binary) {
+        if (!binary) {
+            return getKlineData(assetId, type);
+        }
+        if (CURRENT_TYPE.equals(type)) {
+            byte[] bufferedRecords = klineRingBufferMethod.getBinaryRecords(assetId);
+            if (bufferedRecords != null) {
+                return bufferedRecords;
+            }
+        }
+        byte[] data = getKlineData(assetId, type);
+        if (data == null) {
+            return null;
+        }
+        String recordKey = String.format("%s_%s", type, assetId);
+        int hash = Arrays.hashCode(data);
+        EncodedKlineRecords cached = BINARY_RECORDS.get(recordKey);
+        if (cached != null && cached.length() == data.length && cached.hash() == hash) {
+            return cached.records();
+        }
+        try {
+            byte[] records = KlineBinaryEncoder.encodeRecords(data, objectMapper.getFactory());
+            BINARY_RECORDS.put(recordKey, new EncodedKlineRecords(data.length, hash, records));
+            return records;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 已編碼的二進位K線資料段，以來源JSON的長度與雜湊值判斷來源是否已變更
+     *
+     * @param length  來源JSON的位元組長度
+     * @param hash    來源JSON的雜湊值
+     * @param records 不含標頭的資料段
+     */
+    private record EncodedKlineRecords(int length, int hash, byte[] records) {}
+
+    /**
+     * 每分鐘將已訂閱資產在Redis中新增的Kline增量資料合併進預先序列化的blob。
+     * 叢集模式下只由取得執行權的實例處理，並涵蓋共享訂閱登記表中所有實例訂閱的資產。
+     * 若沒有任何訂閱，則不執行。
+     */
+    @Scheduled(cron = "30 */1 * * * *")
+    public void compactKlineData() {
+        if (!klineClusterMethod.tryAcquireTask("compact_kline", 50)) {
+            return;
+        }
+        Set<Long> assetIds = klineClusterMethod.getGlobalSubscribedAssetIds();
+        if (assetIds.isEmpty()) {
+            return;
+        }
+        assetIds.forEach(assetId -> CompletableFuture.runAsync(() -> {
+            try {
+                assetService.compactKlineCache(assetId, CURRENT_TYPE);
+                assetService.compactKlineCache(assetId, HISTORY_TYPE);
+            } catch (RepositoryExceptions ignored) {
+            }
+        }));
+    }
+
     /**
      * 從Kline轉換格式成K線圖格式。
      *
@@ -333,71 +583,291 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
 
     /**
      * 初始化以及發送K線圖格式資料。
+     * 直接將已序列化的資料位元組拼接為WebsocketChartDto相同的JSON結構發送，不經過JSON樹轉換；
+     * 二進位連線則為已編碼的資料段加上各自的標頭。
      *
-     * @param dto     　K線圖格式資料
+     * @param data    　已序列化的K線圖資料JSON陣列，二進位連線時為KlineBinaryEncoder的資料段
      * @param session 　WebSocketSession對象
      * @param assetId 　資產ID
      * @param type    　資產類型
      */
-    private void initialOrSendKlineData(WebsocketChartDto dto, WebSocketSession session, Long assetId, String type) {
-        if (dto == null) {
-            updateData(Set.of(session.getId()), assetId, type, null, false);
+    private void initialOrSendKlineData(byte[] data, WebSocketSession session, Long assetId, String type) {
+        if (data == null && HISTORY_TYPE.equals(type)) {
+            streamHistoryKlineData(session, assetId);
+        } else if (data == null) {
+            loadKlineData(session, assetId, type);
         } else {
             User user = USER_MAP.get(session.getId());
-            dto.setPreferCurrencyExrate(user.getPreferredCurrency().getExchangeRate());
-            sendMessage(dto, session);
+            if (user == null) {
+                return;
+            }
+            try {
+                if (BINARY_SESSIONS.contains(session.getId())) {
+                    byte[] frame = KlineBinaryEncoder.frame(data, type, user.getPreferredCurrency().getExchangeRate());
+                    sendMessage(new BinaryMessage(frame), session, null);
+                    return;
+                }
+                String exrate = objectMapper.writeValueAsString(user.getPreferredCurrency().getExchangeRate());
+                byte[] prefix = ("{\"type\":" + objectMapper.writeValueAsString(type) + ",\"preferCurrencyExrate\":" + exrate + ",\"data\":").getBytes(
+                        StandardCharsets.UTF_8);
+                byte[] payload = new byte[prefix.length + data.length + 1];
+                System.arraycopy(prefix, 0, payload, 0, prefix.length);
+                System.arraycopy(data, 0, payload, prefix.length, data.length);
+                payload[payload.length - 1] = '}';
+                sendMessage(new TextMessage(payload), session, null);
+            } catch (IOException e) {
+                throw new RuntimeException(new ServiceExceptions(ServiceExceptions.ErrorEnum.WEBSOCKET_SEND_MESSAGE_ERROR, e));
+            }
+        }
+    }
+
+    /**
+     * 分段傳輸歷史K線資料。
+     * 從最近的時間區間開始，以websocket.kline.history_chunk_days為單位往前串流查詢，使首段資料的等待時間與資產歷史長度無關。
+     * 同一時間區間內的分段為由舊到新，而前端會把每一段接在既有資料之前，因此區間查詢完成後才由新到舊發送該區間的分段。
+     * 同一資產同時只有一個連線會將分段資料寫入Redis緩存，避免重複寫入。
+     * 快取列表會依列表順序合併為單一JSON陣列，因此各區間的分段先保留在記憶體中，串流結束後才由舊到新寫入Redis緩存，
+     * 全部區間寫入後才標記快取為完整。
+     *
+     * @param session WebSocketSession對象
+     * @param assetId 資產ID
+     */
+    private void streamHistoryKlineData(WebSocketSession session, Long assetId) {
+        String hashInnerKey = String.format("%s_%s:", HISTORY_TYPE, assetId);
+        String listKey = String.format("%s_%s", KLINE_PREFIX, hashInnerKey);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        boolean saveToCache = HISTORY_STREAMING.add(assetId);
+        try {
+            if (saveToCache) {
+                assetService.resetKlineCache(assetId, HISTORY_TYPE);
+            }
+            LocalDateTime dateline = assetService.getKlineDateline(assetId, HISTORY_TYPE);
+            LocalDateTime stop = LocalDateTime.now(ZoneOffset.UTC);
+            List<List<List<String>>> cacheWindows = new ArrayList<>();
+            int chunk = 0;
+            while (stop.isAfter(dateline) && session.isOpen()) {
+                LocalDateTime start = stop.minusDays(historyChunkDays).isBefore(dateline) ? dateline : stop.minusDays(historyChunkDays);
+                List<List<String>> windowData = new ArrayList<>();
+                assetService.streamAssetKlineData(assetId, HISTORY_TYPE, start.format(formatter), stop.format(formatter), windowData::add);
+                for (int i = windowData.size() - 1; i >= 0; i--) {
+                    chunk = sendHistoryChunk(session, windowData.get(i).getFirst(), chunk, i > 0 || start.isAfter(dateline));
+                }
+                if (saveToCache) {
+                    cacheWindows.add(windowData);
+                }
+                stop = start;
+            }
+            if (saveToCache) {
+                for (int i = cacheWindows.size() - 1; i >= 0; i--) {
+                    cacheWindows.get(i).forEach(klineData -> assetService.saveKlineDataToRedis(klineData, listKey, hashInnerKey));
+                }
+                if (!stop.isAfter(dateline)) {
+                    assetService.markKlineCacheComplete(assetId, HISTORY_TYPE);
+                }
+            }
+            if (chunk == 0 && saveToCache) {
+                redisService.saveHashToCache(KLINE_PREFIX, hashInnerKey + STATUS_SUFFIX, "no_data", 48);
+            }
+        } catch (AssetExceptions e) {
+            throw new RuntimeException(new FormatExceptions(KLINE_FORMAT_ERROR, "資產ID: " + assetId));
+        } finally {
+            if (saveToCache) {
+                HISTORY_STREAMING.remove(assetId);
+            }
+        }
+    }
+
+    /**
+     * 發送一段歷史K線資料。
+     *
+     * @param session   WebSocketSession對象
+     * @param klineJson K線JSON
+     * @param chunk     分段序號
+     * @param hasMore   是否還有後續資料
+     *
+     * @return 下一個分段序號
+     */
+    private int sendHistoryChunk(WebSocketSession session, String klineJson, int chunk, boolean hasMore) {
+        try {
+            WebsocketChartDto dto = formatKlineData(List.of(klineJson), HISTORY_TYPE);
+            if (dto == null) {
+                return chunk;
+            }
+            dto.setChunk(chunk);
+            dto.setHasMore(hasMore);
+            sendChartMessage(dto, session);
+            return chunk + 1;
+        } catch (JsonProcessingException e) {
+            throw new FormatExceptions(KLINE_FORMAT_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * 加入用戶的偏好幣種匯率後，序列化並發送K線圖格式資料。
+     *
+     * @param dto     K線圖格式資料
+     * @param session WebSocketSession對象
+     */
+    private void sendChartMessage(WebsocketChartDto dto, WebSocketSession session) {
+        User user = USER_MAP.get(session.getId());
+        if (user == null) {
+            return;
+        }
+        dto.setPreferCurrencyExrate(user.getPreferredCurrency().getExchangeRate());
+        try {
+            sendMessage(renderChartMessage(dto, BINARY_SESSIONS.contains(session.getId())), session, null);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(new ServiceExceptions(ServiceExceptions.ErrorEnum.WEBSOCKET_SEND_MESSAGE_ERROR, e));
         }
     }
 
+    /**
+     * 將K線圖格式資料轉換為WebSocket消息，依照連線協商的格式產生TextMessage或BinaryMessage。
+     *
+     * @param dto    K線圖格式資料
+     * @param binary 是否使用二進位格式
+     *
+     * @return WebSocket消息
+     *
+     * @throws JsonProcessingException 如果序列化錯誤，則拋出異常
+     */
+    private WebSocketMessage<?> renderChartMessage(WebsocketChartDto dto, boolean binary) throws JsonProcessingException {
+        if (binary) {
+            return new BinaryMessage(KlineBinaryEncoder.encode(dto.getData(),
+                                                               dto.getType(),
+                                                               dto.getPreferCurrencyExrate(),
+                                                               dto.getChunk(),
+                                                               dto.getHasMore()));
+        }
+        return new TextMessage(objectMapper.writeValueAsString(dto));
+    }
+
     /**
      * 用於更新後續的新資料
-     * 對於每個連線ID，從資料庫獲取新資料，格式化後發送給用戶。
+     * 對於每個連線ID，從資料庫串流獲取新資料，每格式化一段就發送給用戶。
      * 並在過程中加入用戶的偏好幣種匯率，以便用戶在前端顯示轉換後價值。
      *
      * @param sessions      連線ID集合
      * @param assetId       資產ID
      * @param type          資產類型
      * @param lastTimestamp 最後更新時間
+     *
+     * @return 是否查詢到資料，若其他連線正在處理中則為null
      */
-    private void updateData(Set<String> sessions, Long assetId, String type, String lastTimestamp, boolean isInitial) {
-        CompletableFuture.supplyAsync(() -> handleKlineData(assetId, type, lastTimestamp)).thenAccept(newAddData -> {
-            if (newAddData != null) {
-                if (!isInitial) {
-                    try {
-                        WebsocketChartDto dto = formatKlineData(List.of(assetService.formatKlineTableByTime(newAddData).getFirst()), type);
-                        if (dto != null) {
-                            sessions.forEach(sessionId -> {
-                                User user = USER_MAP.get(sessionId);
-                                if (user == null) {
-                                    KLINE_SUBSCRIPTIONS.get(assetId).remove(sessionId);
-                                } else {
-                                    dto.setPreferCurrencyExrate(user.getPreferredCurrency().getExchangeRate());
-                                    sendMessage(dto, SESSION_MAP.get(sessionId));
-                                }
-                            });
-                        } else {
-                            throw new RuntimeException(new FormatExceptions(KLINE_FORMAT_ERROR, "資產ID: " + assetId));
-                        }
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
+    private CompletableFuture<Boolean> updateData(Set<String> sessions, Long assetId, String type, String lastTimestamp, boolean isInitial) {
+        Consumer<String> onChunk = isInitial ? null : klineJson -> {
+            try {
+                WebsocketChartDto dto = formatKlineData(List.of(klineJson), type);
+                if (dto != null) {
+                    broadcast(assetId, dto, sessions, false, false);
                 } else {
-                    sessions.forEach(sessionId -> initialConnect(assetId, SESSION_MAP.get(sessionId)));
+                    throw new RuntimeException(new FormatExceptions(KLINE_FORMAT_ERROR, "資產ID: " + assetId));
+                }
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        return CompletableFuture.supplyAsync(() -> handleKlineData(assetId, type, lastTimestamp, onChunk)).thenApply(hasData -> {
+            if (hasData != null && isInitial) {
+                sessions.forEach(sessionId -> initialConnect(assetId, SESSION_MAP.get(sessionId)));
+            }
+            return hasData;
+        });
+    }
+
+    /**
+     * 連線初始化時快取中沒有資料，從資料庫載入完整的K線資料。
+     * 同一資產同時只會有一個連線實際查詢資料庫，其他連線等待該次載入完成後，直接從其寫入的快取取得資料並發送。
+     * 等待的連線若因該次載入失敗、未完成或快取中沒有資料而取不到資料，則改為自行載入一次；
+     * 自行載入仍失敗時，以SERVER_ERROR關閉連線，不會讓圖表停留在沒有資料的狀態。
+     * 載入完成時先從KLINE_LOADING移除，再通知等待的連線，使其重新載入時不會再等待同一次已結束的載入。
+     *
+     * @param session WebSocketSession對象
+     * @param assetId 資產ID
+     * @param type    資產類型
+     */
+    private void loadKlineData(WebSocketSession session, Long assetId, String type) {
+        loadKlineData(session, assetId, type, true);
+    }
+
+    /**
+     * 從資料庫載入完整的K線資料。
+     *
+     * @param session WebSocketSession對象
+     * @param assetId 資產ID
+     * @param type    資產類型
+     * @param retry   等待其他連線的載入取不到資料時，是否改為自行載入
+     */
+    private void loadKlineData(WebSocketSession session, Long assetId, String type, boolean retry) {
+        String loadKey = String.format("%s_%s", type, assetId);
+        CompletableFuture<Boolean> load = new CompletableFuture<>();
+        CompletableFuture<Boolean> inFlight = KLINE_LOADING.putIfAbsent(loadKey, load);
+        if (inFlight != null) {
+            inFlight.whenComplete((hasData, e) -> {
+                if (!session.isOpen()) {
+                    return;
+                }
+                boolean binary = BINARY_SESSIONS.contains(session.getId());
+                byte[] data = e == null && Boolean.TRUE.equals(hasData) ? getKlineData(assetId, type, binary) : null;
+                if (data != null) {
+                    initialOrSendKlineData(data, session, assetId, type);
+                } else if (retry) {
+                    loadKlineData(session, assetId, type, false);
+                } else if (e != null || hasData == null) {
+                    closeOnLoadFailure(session, assetId, type, e);
                 }
+            });
+            return;
+        }
+        updateData(Set.of(session.getId()), assetId, type, null, false).whenComplete((hasData, e) -> {
+            KLINE_LOADING.remove(loadKey, load);
+            if (e != null) {
+                load.completeExceptionally(e);
+            } else {
+                load.complete(hasData);
+            }
+            if (e != null && session.isOpen()) {
+                closeOnLoadFailure(session, assetId, type, e);
             }
         });
     }
 
     /**
-     * 發送消息給用戶，並在發送消息時處理連線已經關閉的情況。
+     * K線資料載入失敗時記錄錯誤，並以SERVER_ERROR關閉連線，由前端重新連線。
      *
-     * @param session           WebSocketSession對象
-     * @param websocketChartDto K線圖表格式資料
+     * @param session WebSocketSession對象
+     * @param assetId 資產ID
+     * @param type    資產類型
+     * @param e       載入失敗的原因，載入未完成時為null
      */
-    private void sendMessage(WebsocketChartDto websocketChartDto, WebSocketSession session) {
+    private void closeOnLoadFailure(WebSocketSession session, Long assetId, String type, Throwable e) {
+        log.error("載入資產ID: {}的{}K線資料失敗，關閉連線: {}", assetId, type, session.getId(), e);
+        try {
+            session.close(CloseStatus.SERVER_ERROR.withReason("K線資料載入失敗"));
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 發送已序列化的消息給用戶，並在發送消息時處理連線已經關閉的情況。
+     * 若連線為KlineSessionDecorator，則僅放入該連線的發送佇列，不阻塞呼叫端執行緒。
+     *
+     * @param message     已序列化的WebSocket消息對象
+     * @param session     WebSocketSession對象
+     * @param coalesceKey 即時資料的合併鍵，為null時代表不可丟棄的完整資料
+     */
+    private void sendMessage(WebSocketMessage<?> message, WebSocketSession session, String coalesceKey) {
         try {
             if (session.isOpen()) {
-                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(websocketChartDto)));
+                if (session instanceof KlineSessionDecorator decorator) {
+                    if (coalesceKey != null) {
+                        decorator.enqueueRealtime(coalesceKey, message);
+                    } else {
+                        decorator.enqueue(message);
+                    }
+                } else {
+                    session.sendMessage(message);
+                }
             } else {
                 removeSession(session);
             }
@@ -419,6 +889,7 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
             if ((asset instanceof CryptoTradingPair crypto && !crypto.isHasAnySubscribed()) || (asset instanceof StockTw stockTw && !stockTw.isHasAnySubscribed())) {
                 return "此資產ID尚未訂閱: " + assetId;
             }
+            klineRingBufferMethod.register(asset);
             return "";
         } catch (Exception e) {
             return "無效的資產ID:" + assetId;
@@ -437,6 +908,7 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
     private void updateSubscription(Long assetId, Set<String> sessions, String type, boolean isInitial) {
         if (sessions.isEmpty()) {
             KLINE_SUBSCRIPTIONS.remove(assetId);
+            releaseIfUnsubscribed(assetId);
             return;
         }
         String listKey = String.format("%s_%s:", CURRENT_TYPE, assetId);
@@ -445,12 +917,59 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
     }
 
     /**
-     * 用於Kafka發送Kline資料，並將其轉換為K線圖格式，並發送給用戶。
+     * 用於Kafka或即時串流發送Kline資料，並將其轉換為K線圖格式，並發送給用戶。
+     * 若websocket.kline.conflation_tick_ms大於0，則只保留每個資產最新的K線，由flushConflatedKlineData定時發送；
+     * 同一根K線的多次更新會被合併，換到新K線時則保留前一根K線的最終狀態一併發送。
      *
      * @param klineData KafkaWebsocketDto對象
      */
     public void sendKlineDataByKafka(KafkaWebsocketDto klineData) {
         Long assetId = klineData.getAssetId();
+        if (!KLINE_SUBSCRIPTIONS.containsKey(assetId)) {
+            return;
+        }
+        AssetKlineDataDto assetData = klineData.getData();
+        if (conflationTickMs <= 0) {
+            sendKlineData(assetId, List.of(assetData));
+            return;
+        }
+        CONFLATED_KLINES.compute(assetId, (k, pending) -> {
+            List<AssetKlineDataDto> klines = pending == null ? new ArrayList<>(2) : pending;
+            if (!klines.isEmpty() && klines.getLast().getTimestamp().equals(assetData.getTimestamp())) {
+                klines.set(klines.size() - 1, assetData);
+            } else {
+                if (klines.size() >= 2) {
+                    klines.removeFirst();
+                }
+                klines.add(assetData);
+            }
+            return klines;
+        });
+    }
+
+    /**
+     * 依照websocket.kline.conflation_tick_ms定時將合併後的K線資料發送給用戶，每個資產每次最多發送一則消息。
+     */
+    @Scheduled(fixedRateString = "#{T(java.lang.Math).max(${websocket.kline.conflation_tick_ms:250}, 50)}")
+    public void flushConflatedKlineData() {
+        if (CONFLATED_KLINES.isEmpty()) {
+            return;
+        }
+        for (Long assetId : CONFLATED_KLINES.keySet()) {
+            List<AssetKlineDataDto> klines = CONFLATED_KLINES.remove(assetId);
+            if (klines != null && !klines.isEmpty()) {
+                sendKlineData(assetId, klines);
+            }
+        }
+    }
+
+    /**
+     * 將K線資料轉換為K線圖格式，並廣播給已完成初始化的連線。
+     *
+     * @param assetId 資產ID
+     * @param klines  K線資料列表
+     */
+    private void sendKlineData(Long assetId, List<AssetKlineDataDto> klines) {
         Set<String> sessions = KLINE_SUBSCRIPTIONS.get(assetId);
         if (sessions == null) {
             return;
@@ -458,36 +977,123 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
         WebsocketChartDto dto = new WebsocketChartDto();
         dto.setType(CURRENT_TYPE);
         ArrayNode dataArray = objectMapper.createArrayNode();
-        AssetKlineDataDto assetData = klineData.getData();
-        long timeLong = Long.parseLong(assetData.getTimestamp());
         DateTimeFormatter formatter = DateTimeFormatter.ISO_INSTANT.withZone(ZoneOffset.UTC);
-        String timestamp = formatter.format(Instant.ofEpochMilli(timeLong));
-        ObjectNode node = objectMapper.createObjectNode();
-        node.put("timestamp", timestamp);
-        node.put("open", assetData.getOpen());
-        node.put("high", assetData.getHigh());
-        node.put("low", assetData.getLow());
-        node.put("close", assetData.getClose());
-        node.put("volume", assetData.getVolume());
-        dataArray.add(node);
+        for (AssetKlineDataDto assetData : klines) {
+            long timeLong = Long.parseLong(assetData.getTimestamp());
+            String timestamp = formatter.format(Instant.ofEpochMilli(timeLong));
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("timestamp", timestamp);
+            node.put("open", assetData.getOpen());
+            node.put("high", assetData.getHigh());
+            node.put("low", assetData.getLow());
+            node.put("close", assetData.getClose());
+            node.put("volume", assetData.getVolume());
+            dataArray.add(node);
+        }
         dto.setData(dataArray);
+        broadcast(assetId, dto, sessions, true, true);
+    }
+
+    /**
+     * 將同一筆K線圖資料廣播給訂閱該資產的所有連線。
+     * 依照用戶的偏好幣種匯率以及協商的傳輸格式將連線分組，每組只序列化一次，並共用同一個消息發送給該組所有連線。
+     * 若連線對應的用戶已不存在，則從KLINE_SUBSCRIPTIONS中移除該連線ID。
+     *
+     * @param assetId            資產ID
+     * @param dto                K線圖格式資料
+     * @param sessions           連線ID集合
+     * @param requireInitialized 是否僅發送給已完成圖表初始化的連線
+     * @param realtime           是否為即時K線更新，只有即時更新會依溢出策略丟棄或合併，初始化與分段資料必定送達
+     */
+    private void broadcast(Long assetId, WebsocketChartDto dto, Set<String> sessions, boolean requireInitialized, boolean realtime) {
+        Map<BigDecimal, List<WebSocketSession>> textGroups = new HashMap<>();
+        Map<BigDecimal, List<WebSocketSession>> binaryGroups = new HashMap<>();
         for (String sessionId : sessions) {
-            if (INITIALIZATION_STATUS.get(sessionId) == null || !INITIALIZATION_STATUS.get(sessionId)) {
+            if (requireInitialized && !Boolean.TRUE.equals(INITIALIZATION_STATUS.get(sessionId))) {
                 continue;
             }
-            WebSocketSession session = SESSION_MAP.get(sessionId);
             User user = USER_MAP.get(sessionId);
-            if (user == null) {
-                KLINE_SUBSCRIPTIONS.get(assetId).remove(sessionId);
+            WebSocketSession session = SESSION_MAP.get(sessionId);
+            if (user == null || session == null) {
+                removeSubscription(assetId, sessionId);
                 continue;
             }
-            dto.setPreferCurrencyExrate(user.getPreferredCurrency().getExchangeRate());
-            sendMessage(dto, session);
+            Map<BigDecimal, List<WebSocketSession>> groups = BINARY_SESSIONS.contains(sessionId) ? binaryGroups : textGroups;
+            groups.computeIfAbsent(user.getPreferredCurrency().getExchangeRate(), k -> new ArrayList<>()).add(session);
+        }
+        String coalesceKey = realtime ? String.format("%s_%s", dto.getType(), assetId) : null;
+        broadcastGroups(assetId, dto, textGroups, false, coalesceKey);
+        broadcastGroups(assetId, dto, binaryGroups, true, coalesceKey);
+    }
+
+    private void broadcastGroups(Long assetId, WebsocketChartDto dto, Map<BigDecimal, List<WebSocketSession>> groups, boolean binary, String coalesceKey) {
+        groups.forEach((exrate, groupSessions) -> {
+            dto.setPreferCurrencyExrate(exrate);
+            WebSocketMessage<?> message;
+            try {
+                message = renderChartMessage(dto, binary);
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException(new FormatExceptions(KLINE_FORMAT_ERROR, "資產ID: " + assetId));
+            }
+            groupSessions.forEach(session -> sendMessage(message, session, coalesceKey));
+        });
+    }
+
+    /**
+     * 新增已驗證資產的訂閱，同時更新KLINE_SUBSCRIPTIONS以及SESSION_SUBSCRIPTIONS反向索引，並登記到共享訂閱登記表。
+     * 連線ID在compute中加入，與removeSubscription的移除互斥；登記表的Redis寫入在compute之外執行，不會佔住ConcurrentHashMap的鎖。
+     *
+     * @param assetId   資產ID
+     * @param sessionId 連線ID
+     */
+    private void addSubscription(Long assetId, String sessionId) {
+        KLINE_SUBSCRIPTIONS.compute(assetId, (k, sessions) -> {
+            Set<String> subscribedSessions = sessions == null ? ConcurrentHashMap.newKeySet() : sessions;
+            subscribedSessions.add(sessionId);
+            return subscribedSessions;
+        });
+        klineClusterMethod.register(assetId);
+        SESSION_SUBSCRIPTIONS.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet()).add(assetId);
+    }
+
+    /**
+     * 移除資產訂閱，同時更新KLINE_SUBSCRIPTIONS以及SESSION_SUBSCRIPTIONS反向索引。
+     * 若資產已無任何訂閱連線，則從KLINE_SUBSCRIPTIONS中刪除該資產ID。
+     *
+     * @param assetId   資產ID
+     * @param sessionId 連線ID
+     */
+    private void removeSubscription(Long assetId, String sessionId) {
+        KLINE_SUBSCRIPTIONS.computeIfPresent(assetId, (k, sessions) -> {
+            sessions.remove(sessionId);
+            return sessions.isEmpty() ? null : sessions;
+        });
+        releaseIfUnsubscribed(assetId);
+        SESSION_SUBSCRIPTIONS.computeIfPresent(sessionId, (k, assets) -> {
+            assets.remove(assetId);
+            return assets.isEmpty() ? null : assets;
+        });
+    }
+
+    /**
+     * 若資產已無任何訂閱連線，則釋放該資產的K線環形緩衝區、已編碼的二進位資料段與本地的推送時間，並從共享訂閱登記表中移除。
+     *
+     * @param assetId 資產ID
+     */
+    private void releaseIfUnsubscribed(Long assetId) {
+        if (!KLINE_SUBSCRIPTIONS.containsKey(assetId)) {
+            klineRingBufferMethod.release(assetId);
+            klineClusterMethod.unregister(assetId);
+            BINARY_RECORDS.remove(String.format("%s_%s", CURRENT_TYPE, assetId));
+            BINARY_RECORDS.remove(String.format("%s_%s", HISTORY_TYPE, assetId));
+            REFRESHED_TIMESTAMPS.remove(String.format("%s_%s", CURRENT_TYPE, assetId));
+            REFRESHED_TIMESTAMPS.remove(String.format("%s_%s", HISTORY_TYPE, assetId));
         }
     }
 
     /**
      * 用於關閉Session以及刪除相關資料。
+     * 透過SESSION_SUBSCRIPTIONS反向索引，只處理該連線實際訂閱的資產。
      *
      * @param session WebSocketSession對象
      *
@@ -502,10 +1108,22 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
                 CONNECTIONS.remove(user);
             }
         }
-        KLINE_SUBSCRIPTIONS.values().forEach(sessionsSet -> sessionsSet.remove(session.getId()));
+        Set<Long> subscribedAssets = SESSION_SUBSCRIPTIONS.remove(session.getId());
+        if (subscribedAssets != null) {
+            subscribedAssets.forEach(assetId -> {
+                KLINE_SUBSCRIPTIONS.computeIfPresent(assetId, (k, sessions) -> {
+                    sessions.remove(session.getId());
+                    return sessions.isEmpty() ? null : sessions;
+                });
+                releaseIfUnsubscribed(assetId);
+            });
+        }
         INITIALIZATION_STATUS.remove(session.getId());
-        SESSION_MAP.get(session.getId()).close();
-        SESSION_MAP.remove(session.getId());
+        BINARY_SESSIONS.remove(session.getId());
+        WebSocketSession decoratedSession = SESSION_MAP.remove(session.getId());
+        if (decoratedSession != null) {
+            decoratedSession.close();
+        }
         USER_MAP.remove(session.getId());
         session.close();
     }
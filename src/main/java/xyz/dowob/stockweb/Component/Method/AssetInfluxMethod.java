@@ -1,7 +1,6 @@
 package xyz.dowob.stockweb.Component.Method;
 
 import com.influxdb.client.InfluxDBClient;
-import com.influxdb.client.WriteApi;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
 import com.influxdb.query.FluxRecord;
@@ -9,6 +8,8 @@ import com.influxdb.query.FluxTable;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Component.Method.Flux.FluxQuery;
+import xyz.dowob.stockweb.Component.Method.Flux.FluxQueryMethod;
 import xyz.dowob.stockweb.Component.Method.retry.RetryTemplate;
 import xyz.dowob.stockweb.Enum.AssetType;
 import xyz.dowob.stockweb.Exception.AssetExceptions;
@@ -23,15 +24,23 @@ import xyz.dowob.stockweb.Repository.Currency.CurrencyRepository;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
 /**
  * 這是一個資產與Influx有關的方法，用於查詢和寫入資產資料。
@@ -58,6 +67,12 @@ public class AssetInfluxMethod {
 
     private final RetryTemplate retryTemplate;
 
+    private final FluxQueryMethod fluxQueryMethod;
+
+    private final InfluxWriteMethod influxWriteMethod;
+
+    private final LatestPriceCacheMethod latestPriceCacheMethod;
+
     @Value("${db.influxdb.bucket.crypto}")
     private String cryptoBucket;
 
@@ -73,9 +88,6 @@ public class AssetInfluxMethod {
     @Value("${db.influxdb.bucket.currency}")
     private String currencyBucket;
 
-    @Value("${db.influxdb.org}")
-    private String org;
-
     @Value("${db.influxdb.bucket.crypto_history.dateline:20180101}")
     private String cryptoHistoryDateline;
 
@@ -88,6 +100,9 @@ public class AssetInfluxMethod {
     @Value("${db.influxdb.bucket.stock_tw_current.remain_day:365}")
     private int stockTwCurrentRemainDay;
 
+    @Value("${db.influxdb.query.batch_start_spread_minutes:60}")
+    private long batchStartSpreadMinutes;
+
     /**
      * 構造函數，用於注入InfluxDBClient
      *
@@ -100,9 +115,12 @@ public class AssetInfluxMethod {
      * @param commonEconomyInfluxClient   通用經濟數據InfluxDB客戶端
      * @param currencyRepository          貨幣相關的資料庫
      * @param retryTemplate               重試模板
+     * @param influxWriteMethod           共用的InfluxDB批次寫入方法
+     * @param latestPriceCacheMethod      最新價格快取
+     * @param fluxQueryMethod             Flux查詢方法
      */
     public AssetInfluxMethod(
-            @Qualifier("StockTwInfluxClient") InfluxDBClient stockTwInfluxClient, @Qualifier("StockTwHistoryInfluxClient") InfluxDBClient stockTwHistoryInfluxClient, @Qualifier("CryptoInfluxClient") InfluxDBClient cryptoInfluxClient, @Qualifier("CryptoHistoryInfluxClient") InfluxDBClient cryptoHistoryInfluxClient, @Qualifier("CurrencyInfluxClient") InfluxDBClient currencyInfluxClient, @Qualifier("propertySummaryInfluxClient") InfluxDBClient propertySummaryInfluxClient, @Qualifier("commonEconomyInfluxClient") InfluxDBClient commonEconomyInfluxClient, CurrencyRepository currencyRepository, RetryTemplate retryTemplate) {
+            @Qualifier("StockTwInfluxClient") InfluxDBClient stockTwInfluxClient, @Qualifier("StockTwHistoryInfluxClient") InfluxDBClient stockTwHistoryInfluxClient, @Qualifier("CryptoInfluxClient") InfluxDBClient cryptoInfluxClient, @Qualifier("CryptoHistoryInfluxClient") InfluxDBClient cryptoHistoryInfluxClient, @Qualifier("CurrencyInfluxClient") InfluxDBClient currencyInfluxClient, @Qualifier("propertySummaryInfluxClient") InfluxDBClient propertySummaryInfluxClient, @Qualifier("commonEconomyInfluxClient") InfluxDBClient commonEconomyInfluxClient, CurrencyRepository currencyRepository, RetryTemplate retryTemplate, InfluxWriteMethod influxWriteMethod, LatestPriceCacheMethod latestPriceCacheMethod, FluxQueryMethod fluxQueryMethod) {
         this.stockTwInfluxClient = stockTwInfluxClient;
         this.cryptoInfluxClient = cryptoInfluxClient;
         this.currencyInfluxClient = currencyInfluxClient;
@@ -112,87 +130,111 @@ public class AssetInfluxMethod {
         this.commonEconomyInfluxClient = commonEconomyInfluxClient;
         this.currencyRepository = currencyRepository;
         this.retryTemplate = retryTemplate;
+        this.influxWriteMethod = influxWriteMethod;
+        this.latestPriceCacheMethod = latestPriceCacheMethod;
+        this.fluxQueryMethod = fluxQueryMethod;
     }
 
     /**
-     * 取得資料庫和客戶端，以及查詢條件
+     * 資產在InfluxDB中的序列位置
+     *
+     * @param bucket      資料庫名稱
+     * @param client      InfluxDB客戶端
+     * @param measurement 資料表名稱
+     * @param field       價格欄位名稱
+     * @param tagKey      資產標識的標籤名稱
+     * @param symbol      資產標識
+     */
+    private record InfluxSeries(String bucket, InfluxDBClient client, String measurement, String field, String tagKey, String symbol) {
+        /**
+         * 取得同一個查詢可涵蓋的分組鍵，資料庫、資料表、欄位與標籤相同的資產可合併查詢
+         *
+         * @return 分組鍵
+         */
+        private String groupKey() {
+            return String.join("|", bucket, measurement, field, tagKey);
+        }
+    }
+
+    /**
+     * 取得資產在InfluxDB中的序列位置
      *
      * @param asset          資產
      * @param useHistoryData 是否使用歷史資料
      *
-     * @return Object[] {bucket, client, measurement, field, assetType, symbol}
-     * bucket: 資料庫名稱
-     * client: InfluxDB客戶端
-     * measurement: 資料表名稱
-     * field: 欄位名稱
-     * assetType: 資產類型
-     * symbol: 資產標識
-     *
-     * @throws RuntimeException 重試失敗時的最後一次錯誤
+     * @return 資料庫、客戶端、資料表、價格欄位、標籤與資產標識
      */
-    private Object[] getBucketAndClient(Asset asset, boolean useHistoryData) {
-        Object bucket, client;
+    private InfluxSeries getSeries(Asset asset, boolean useHistoryData) {
         String klineDataKey = "kline_data", rateKey = "exchange_rate";
         String closeKey = "close", rateTypeKey = "rate";
         String tradingPairKey = "tradingPair", currencyKey = "Currency", stockCodeKey = "stock_tw";
         return switch (asset.getAssetType()) {
             case CRYPTO -> {
                 CryptoTradingPair cryptoTradingPair = (CryptoTradingPair) asset;
-                bucket = useHistoryData ? cryptoHistoryBucket : cryptoBucket;
-                client = useHistoryData ? cryptoHistoryInfluxClient : cryptoInfluxClient;
-                yield new Object[]{bucket, client, klineDataKey, closeKey, tradingPairKey, cryptoTradingPair.getTradingPair()};
+                yield new InfluxSeries(useHistoryData ? cryptoHistoryBucket : cryptoBucket,
+                                       useHistoryData ? cryptoHistoryInfluxClient : cryptoInfluxClient,
+                                       klineDataKey,
+                                       closeKey,
+                                       tradingPairKey,
+                                       cryptoTradingPair.getTradingPair());
             }
             case CURRENCY -> {
                 Currency currency = (Currency) asset;
-                bucket = currencyBucket;
-                client = currencyInfluxClient;
-                yield new Object[]{bucket, client, rateKey, rateTypeKey, currencyKey, currency.getCurrency()};
+                yield new InfluxSeries(currencyBucket, currencyInfluxClient, rateKey, rateTypeKey, currencyKey, currency.getCurrency());
             }
             case STOCK_TW -> {
                 StockTw stockTw = (StockTw) asset;
-                bucket = useHistoryData ? stockHistoryBucket : stockTwBucket;
-                client = useHistoryData ? stockTwHistoryInfluxClient : stockTwInfluxClient;
-                yield new Object[]{bucket, client, klineDataKey, closeKey, stockCodeKey, stockTw.getStockCode()};
+                yield new InfluxSeries(useHistoryData ? stockHistoryBucket : stockTwBucket,
+                                       useHistoryData ? stockTwHistoryInfluxClient : stockTwInfluxClient,
+                                       klineDataKey,
+                                       closeKey,
+                                       stockCodeKey,
+                                       stockTw.getStockCode());
             }
         };
     }
 
     /**
-     * 查詢資產最新價格
+     * 批次查詢多個資產的最新價格
+     * 依照資料庫、資料表、欄位與標籤將資產分組，每組只執行一次Flux查詢，以contains過濾資產標識後依標籤分組取最後一筆。
      *
-     * @param asset          資產
+     * @param assets         資產
      * @param useHistoryData 是否使用歷史資料
      *
-     * @return FluxTable
+     * @return Map<Long, Double> {資產ID, 最新價格}，查無資料的資產不會出現在結果中
      *
      * @throws RuntimeException 重試失敗時的最後一次錯誤
      */
-    private List<FluxTable> queryLatestPrice(Asset asset, boolean useHistoryData) throws RuntimeException {
-        try {
-            var ref = new Object() {
-                List<FluxTable> tables;
-            };
-            retryTemplate.doWithRetry(() -> {
-                Object[] bucketAndClient = getBucketAndClient(asset, useHistoryData);
-                String bucket = (String) bucketAndClient[0];
-                InfluxDBClient client = (InfluxDBClient) bucketAndClient[1];
-                String measurement = (String) bucketAndClient[2];
-                String field = (String) bucketAndClient[3];
-                String assetType = (String) bucketAndClient[4];
-                String symbol = (String) bucketAndClient[5];
-                String query = String.format("from(bucket: \"%s\") " + " |> range(start: -30d)" + " |> filter(fn: (r) => r[\"_measurement\"] == \"%s\")" + " |> filter(fn: (r) => r[\"_field\"] == \"%s\")" + " |> filter(fn: (r) => r[\"%s\"] == \"%s\")" + " |> last()",
-                                             bucket,
-                                             measurement,
-                                             field,
-                                             assetType,
-                                             symbol);
-                ref.tables = client.getQueryApi().query(query, org);
-            });
-            return ref.tables;
-        } catch (RetryException e) {
-            Exception lastException = e.getLastException();
-            throw new RuntimeException("重試失敗，最後一次錯誤信息：" + lastException.getMessage(), lastException);
+    private Map<Long, Double> queryLatestPrices(Collection<Asset> assets, boolean useHistoryData) throws RuntimeException {
+        Map<Long, Double> result = new HashMap<>();
+        Map<String, Map<String, Long>> symbolGroups = new HashMap<>();
+        Map<String, InfluxSeries> groupSeries = new HashMap<>();
+        for (Asset asset : assets) {
+            InfluxSeries series = getSeries(asset, useHistoryData);
+            groupSeries.putIfAbsent(series.groupKey(), series);
+            symbolGroups.computeIfAbsent(series.groupKey(), k -> new HashMap<>()).put(series.symbol(), asset.getId());
+            latestPriceCacheMethod.register(asset.getAssetType(), series.symbol(), asset.getId());
         }
+        symbolGroups.forEach((groupKey, symbolMap) -> {
+            InfluxSeries series = groupSeries.get(groupKey);
+            FluxQuery query = FluxQuery.from(series.bucket())
+                                       .range("-30d")
+                                       .filter("_measurement", series.measurement())
+                                       .filter("_field", series.field())
+                                       .filter(series.tagKey(), new TreeSet<>(symbolMap.keySet()))
+                                       .group(series.tagKey())
+                                       .last()
+                                       .build();
+            for (FluxTable table : fluxQueryMethod.query(series.client(), query)) {
+                for (FluxRecord record : table.getRecords()) {
+                    Long assetId = symbolMap.get(String.valueOf(record.getValueByKey(series.tagKey())));
+                    if (assetId != null && record.getValue() instanceof Number value) {
+                        result.put(assetId, value.doubleValue());
+                    }
+                }
+            }
+        });
+        return result;
     }
 
     /**
@@ -203,58 +245,111 @@ public class AssetInfluxMethod {
      * @return 最新價格
      */
     public BigDecimal getLatestPrice(Asset asset) {
-        List<FluxTable> tables = queryLatestPrice(asset, false);
-        Currency twd = currencyRepository.findByCurrency("TWD")
-                                         .orElseThrow(() -> new RuntimeException(new AssetExceptions(AssetExceptions.ErrorEnum.ASSET_NOT_FOUND,
-                                                                                                     "TWD")));
-        if (tables.isEmpty() || tables.getFirst().getRecords().isEmpty()) {
-            if (asset.getAssetType() == AssetType.CURRENCY) {
-                Currency currency = (Currency) asset;
-                if (currency.getExchangeRate() != null) {
-                    return BigDecimal.ONE.divide(currency.getExchangeRate(), 6, RoundingMode.HALF_UP);
-                }
+        return getLatestPrices(List.of(asset)).get(asset.getId());
+    }
+
+    /**
+     * 批次取得多個資產的最新價格
+     * 優先使用最新價格快取，只有快取未命中或已過期的資產才查詢InfluxDB，查詢結果會回填快取。
+     * 先以每個資料庫一次查詢取得即時價格，查無即時價格的資產再以同樣方式查詢歷史價格，
+     * 貨幣則改用資料庫中的匯率換算，仍查無價格的資產價格為-1。
+     * 歷史價格與匯率換算的價格只是替代值，不回填快取，避免以新的更新時間讓過舊的價格在快取中被視為最新價格。
+     *
+     * @param assets 資產
+     *
+     * @return Map<Long, BigDecimal> {資產ID, 最新價格}，每個資產皆有對應的項目
+     */
+    public Map<Long, BigDecimal> getLatestPrices(Collection<Asset> assets) {
+        Map<Long, BigDecimal> result = new HashMap<>();
+        if (assets.isEmpty()) {
+            return result;
+        }
+        List<Asset> missedAssets = new ArrayList<>();
+        for (Asset asset : assets) {
+            BigDecimal cachedPrice = latestPriceCacheMethod.get(asset.getId());
+            if (cachedPrice != null) {
+                result.put(asset.getId(), cachedPrice);
             } else {
-                List<FluxTable> historyTables = queryLatestPrice(asset, true);
-                if (historyTables.isEmpty() || historyTables.getFirst().getRecords().isEmpty()) {
-                    return BigDecimal.valueOf(-1);
-                }
-                FluxRecord historyRecord = historyTables.getFirst().getRecords().getFirst();
-                Object historyValue = historyRecord.getValueByKey("_value");
-                if (historyValue instanceof Number) {
-                    if (asset instanceof StockTw) {
-                        return BigDecimal.valueOf(((Number) historyValue).doubleValue())
-                                         .divide(twd.getExchangeRate(), 6, RoundingMode.HALF_UP);
-                    } else {
-                        return BigDecimal.valueOf(((Number) historyValue).doubleValue());
+                missedAssets.add(asset);
+            }
+        }
+        if (missedAssets.isEmpty()) {
+            return result;
+        }
+        queryLatestPrices(missedAssets, false).forEach((assetId, price) -> {
+            latestPriceCacheMethod.refresh(assetId, price);
+            result.put(assetId, BigDecimal.valueOf(price));
+        });
+        List<Asset> historyAssets = new ArrayList<>();
+        for (Asset asset : missedAssets) {
+            if (result.containsKey(asset.getId())) {
+                continue;
+            }
+            if (asset instanceof Currency currency) {
+                result.put(asset.getId(),
+                           currency.getExchangeRate() != null ? BigDecimal.ONE.divide(currency.getExchangeRate(), 6, RoundingMode.HALF_UP) : BigDecimal.valueOf(
+                                   -1));
+            } else {
+                historyAssets.add(asset);
+            }
+        }
+        if (!historyAssets.isEmpty()) {
+            Map<Long, Double> historyPrices = queryLatestPrices(historyAssets, true);
+            BigDecimal twdRate = null;
+            for (Asset asset : historyAssets) {
+                Double historyPrice = historyPrices.get(asset.getId());
+                if (historyPrice == null) {
+                    result.put(asset.getId(), BigDecimal.valueOf(-1));
+                } else if (asset instanceof StockTw) {
+                    if (twdRate == null) {
+                        twdRate = currencyRepository.findByCurrency("TWD")
+                                                    .orElseThrow(() -> new RuntimeException(new AssetExceptions(AssetExceptions.ErrorEnum.ASSET_NOT_FOUND,
+                                                                                                                "TWD")))
+                                                    .getExchangeRate();
                     }
+                    result.put(asset.getId(), BigDecimal.valueOf(historyPrice).divide(twdRate, 6, RoundingMode.HALF_UP));
                 } else {
-                    return BigDecimal.valueOf(-1);
+                    result.put(asset.getId(), BigDecimal.valueOf(historyPrice));
                 }
             }
-            return BigDecimal.valueOf(-1);
-        }
-        FluxRecord record = tables.getFirst().getRecords().getFirst();
-        Object value = record.getValueByKey("_value");
-        if (value instanceof Number) {
-            return BigDecimal.valueOf(((Number) value).doubleValue());
-        } else {
-            return BigDecimal.valueOf(-1);
         }
+        return result;
     }
 
     /**
      * 寫入Influx方法，此為寫入單個資料點。
+     * 資料點放入共用的批次WriteApi後立即返回，由背景批次寫入。
      *
      * @param influxClient InfluxDB客戶端
      * @param point        資料點
      */
     public void writeToInflux(InfluxDBClient influxClient, Point point) {
+        influxWriteMethod.write(influxClient, point);
+    }
+
+    /**
+     * 寫入Influx方法，此為批量寫入多個資料點。
+     * 資料點放入共用的批次WriteApi後立即返回，由背景批次寫入。
+     *
+     * @param influxClient InfluxDB客戶端
+     * @param points       資料點列表
+     */
+    public void writeToInflux(InfluxDBClient influxClient, List<Point> points) {
+        influxWriteMethod.write(influxClient, points);
+    }
+
+    /**
+     * 寫入Influx方法，以阻塞方式批量寫入多個資料點，寫入完成或重試失敗後才返回。
+     * 用於大量歷史資料的寫入，讓呼叫端自然受到寫入速度限制，避免塞滿即時寫入共用的緩衝區。
+     *
+     * @param influxClient InfluxDB客戶端
+     * @param points       資料點列表
+     */
+    public void writeToInfluxBlocking(InfluxDBClient influxClient, List<Point> points) {
         try {
             retryTemplate.doWithRetry(() -> {
                 try {
-                    try (WriteApi writeApi = influxClient.makeWriteApi()) {
-                        writeApi.writePoint(point);
-                    }
+                    influxClient.getWriteApiBlocking().writePoints(points);
                 } catch (Exception e) {
                     throw new RepositoryExceptions(RepositoryExceptions.ErrorEnum.INFLUXDB_WRITE_ERROR, e);
                 }
@@ -265,18 +360,16 @@ public class AssetInfluxMethod {
     }
 
     /**
-     * 寫入Influx方法，此為批量寫入多個資料點。
+     * 寫入Influx方法，以阻塞方式寫入已編碼的line protocol，寫入完成或重試失敗後才返回。
      *
      * @param influxClient InfluxDB客戶端
-     * @param points       資料點列表
+     * @param records      以換行分隔的line protocol，時間戳為毫秒
      */
-    public void writeToInflux(InfluxDBClient influxClient, List<Point> points) {
+    public void writeRecordsBlocking(InfluxDBClient influxClient, String records) {
         try {
             retryTemplate.doWithRetry(() -> {
                 try {
-                    try (WriteApi writeApi = influxClient.makeWriteApi()) {
-                        writeApi.writePoints(points);
-                    }
+                    influxClient.getWriteApiBlocking().writeRecord(WritePrecision.MS, records);
                 } catch (Exception e) {
                     throw new RepositoryExceptions(RepositoryExceptions.ErrorEnum.INFLUXDB_WRITE_ERROR, e);
                 }
@@ -287,69 +380,150 @@ public class AssetInfluxMethod {
     }
 
     /**
-     * 查詢指定時間內的資產價格表格
+     * 串流查詢指定時間內的資產K線資料
      *
      * @param asset     資產
      * @param isHistory 是否查詢歷史資料
-     * @param timeStamp 時間戳
-     *
-     * @return Map<String, List < FluxTable>> {assetId + "_history/current", FluxTable}
-     * assetId: 資產ID
-     * history/current: 歷史/當前價格
+     * @param timeStamp 時間戳，為null時使用預設起始時間
+     * @param onRecord  每一筆K線資料的處理方法
      *
      * @throws RuntimeException 重試失敗時的最後一次錯誤
      */
-    public Map<String, List<FluxTable>> queryByAsset(Asset asset, Boolean isHistory, String timeStamp) {
-        var ref = new Object() {
-            List<FluxTable> tables;
-        };
-        Object[] bucketAndClient = getBucketAndClient(asset, isHistory);
-        // todo 考慮即時資料實現分段傳輸
+    public void streamByAsset(Asset asset, Boolean isHistory, String timeStamp, Consumer<FluxRecord> onRecord) {
         DateTimeFormatter outFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'00:00:00'Z'");
+        String start = timeStamp != null ? timeStamp : getKlineDateline(asset, isHistory).format(outFormatter);
+        streamByAssetRange(asset, isHistory, start, "now()", onRecord);
+    }
+
+    /**
+     * 取得資產K線資料的預設查詢起始時間
+     * 加密貨幣與台股的歷史資料從設定的起始日期開始，即時資料則保留設定的天數。
+     *
+     * @param asset     資產
+     * @param isHistory 是否查詢歷史資料
+     *
+     * @return 查詢起始時間
+     */
+    public LocalDateTime getKlineDateline(Asset asset, Boolean isHistory) {
         DateTimeFormatter cryptoAndStockTwFormatter = DateTimeFormatter.ofPattern("yyyyMMdd");
-        String start;
-        if (timeStamp != null) {
-            start = timeStamp;
-        } else {
-            if (asset.getAssetType() == AssetType.CRYPTO) {
-                if (isHistory) {
-                    start = LocalDateTime.from(LocalDate.parse(cryptoHistoryDateline, cryptoAndStockTwFormatter).atStartOfDay())
-                                         .format(outFormatter);
-                } else {
-                    start = LocalDateTime.now().minusDays(cryptoCurrentRemainDay).format(outFormatter);
-                }
-            } else if (asset.getAssetType() == AssetType.STOCK_TW) {
-                if (isHistory) {
-                    start = LocalDateTime.from(LocalDate.parse(stockHistoryDateline, cryptoAndStockTwFormatter).atStartOfDay())
-                                         .format(outFormatter);
-                } else {
-                    start = LocalDateTime.now().minusDays(stockTwCurrentRemainDay).format(outFormatter);
+        if (asset.getAssetType() == AssetType.CRYPTO) {
+            if (isHistory) {
+                return LocalDate.parse(cryptoHistoryDateline, cryptoAndStockTwFormatter).atStartOfDay();
+            }
+            return LocalDateTime.now().minusDays(cryptoCurrentRemainDay);
+        } else if (asset.getAssetType() == AssetType.STOCK_TW) {
+            if (isHistory) {
+                return LocalDate.parse(stockHistoryDateline, cryptoAndStockTwFormatter).atStartOfDay();
+            }
+            return LocalDateTime.now().minusDays(stockTwCurrentRemainDay);
+        }
+        return LocalDateTime.of(1970, 1, 1, 0, 0);
+    }
+
+    /**
+     * 串流查詢指定時間區間內的資產K線資料，用於分段傳輸K線資料
+     * 查詢結果以pivot將同一時間點的各欄位合併為一筆資料，每筆資料包含open、high、low、close、volume或rate欄位，
+     * 解析出一筆就交給onRecord處理，不會先將整個序列保留在記憶體中。
+     *
+     * @param asset     資產
+     * @param isHistory 是否查詢歷史資料
+     * @param start     起始時間(RFC3339格式)
+     * @param stop      結束時間(RFC3339格式或now())
+     * @param onRecord  每一筆K線資料的處理方法
+     *
+     * @throws RuntimeException 重試失敗時的最後一次錯誤
+     */
+    public void streamByAssetRange(Asset asset, Boolean isHistory, String start, String stop, Consumer<FluxRecord> onRecord) {
+        InfluxSeries series = getSeries(asset, isHistory);
+        FluxQuery query = FluxQuery.from(series.bucket())
+                                   .range(start, stop)
+                                   .filter("_measurement", series.measurement())
+                                   .filter(series.tagKey(), series.symbol())
+                                   .pivotFields()
+                                   .build();
+        fluxQueryMethod.stream(series.client(), query, onRecord);
+    }
+
+    /**
+     * 批次查詢多個資產自各自起始時間以來的價格表格
+     * 依照資料庫、資料表與標籤將資產分組，組內再依起始時間排序，起始時間相差不超過db.influxdb.query.batch_start_spread_minutes的資產合併為一次Flux查詢，
+     * 再於記憶體中依資產標識以及各自的起始時間拆分。起始時間較早的資產(如尚未載入過的資產)會單獨查詢，不會擴大其他資產的查詢範圍。
+     *
+     * @param assetStarts 資產與其查詢起始時間，起始時間為null時使用預設起始時間
+     * @param isHistory   是否查詢歷史資料
+     *
+     * @return Map<String, List < FluxTable>> {assetId + "_history/current", FluxTable}，每個資產皆有對應的項目
+     *
+     * @throws RuntimeException 重試失敗時的最後一次錯誤
+     */
+    public Map<String, List<FluxTable>> queryByAssets(Map<Asset, String> assetStarts, Boolean isHistory) {
+        DateTimeFormatter outFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'00:00:00'Z'");
+        String addition = isHistory ? "history" : "current";
+        Map<String, List<FluxTable>> result = new HashMap<>();
+        Map<String, List<Asset>> assetGroups = new HashMap<>();
+        Map<Asset, InfluxSeries> assetSeries = new HashMap<>();
+        Map<Asset, Instant> startInstants = new HashMap<>();
+        assetStarts.forEach((asset, timeStamp) -> {
+            InfluxSeries series = getSeries(asset, isHistory);
+            String start = timeStamp != null ? timeStamp : getKlineDateline(asset, isHistory).format(outFormatter);
+            assetSeries.put(asset, series);
+            startInstants.put(asset, Instant.parse(start));
+            assetGroups.computeIfAbsent(series.groupKey(), k -> new ArrayList<>()).add(asset);
+            result.put(asset.getId().toString() + "_" + addition, new ArrayList<>());
+        });
+        Duration maxSpread = Duration.ofMinutes(batchStartSpreadMinutes);
+        for (List<Asset> assets : assetGroups.values()) {
+            assets.sort(Comparator.comparing(startInstants::get));
+            List<Asset> batch = new ArrayList<>();
+            for (Asset asset : assets) {
+                Instant start = startInstants.get(asset);
+                if (!batch.isEmpty() && Duration.between(startInstants.get(batch.getFirst()), start).compareTo(maxSpread) > 0) {
+                    queryBatch(batch, assetSeries, startInstants, result, addition);
+                    batch = new ArrayList<>();
                 }
-            } else {
-                start = "1970-01-01T00:00:00.000Z";
+                batch.add(asset);
             }
+            queryBatch(batch, assetSeries, startInstants, result, addition);
         }
-        try {
-            retryTemplate.doWithRetry(() -> {
-                String bucket = (String) bucketAndClient[0];
-                InfluxDBClient client = (InfluxDBClient) bucketAndClient[1];
-                String measurement = (String) bucketAndClient[2];
-                String assetType = (String) bucketAndClient[4];
-                String symbol = (String) bucketAndClient[5];
-                String query = String.format("from(bucket: \"%s\") " + " |> range(start: %s, stop: now())" + " |> filter(fn: (r) => r[\"_measurement\"] == \"%s\")" + " |> filter(fn: (r) => r[\"%s\"] == \"%s\")",
-                                             bucket,
-                                             start,
-                                             measurement,
-                                             assetType,
-                                             symbol);
-                ref.tables = client.getQueryApi().query(query, org);
-            });
-            String addition = isHistory ? "history" : "current";
-            return new HashMap<>() {{
-                put(asset.getId().toString() + "_" + addition, ref.tables);
-            }};
-        } catch (RetryException e) {
-            throw new RuntimeException("重試失敗，最後一次錯誤信息：" + e.getLastException().getMessage());
+        return result;
+    }
+
+    /**
+     * 以一次Flux查詢取得同一組資產自最早起始時間以來的價格表格，並依資產標識以及各自的起始時間拆分後放入結果。
+     *
+     * @param assets         同一資料庫、資料表與標籤的資產，依起始時間排序
+     * @param assetSeries    資產對應的InfluxDB序列
+     * @param startInstants  資產的查詢起始時間
+     * @param result         查詢結果 {assetId + "_history/current", FluxTable}
+     * @param addition       結果鍵的後綴 history/current
+     */
+    private void queryBatch(
+            List<Asset> assets, Map<Asset, InfluxSeries> assetSeries, Map<Asset, Instant> startInstants, Map<String, List<FluxTable>> result, String addition) {
+        InfluxSeries groupSeries = assetSeries.get(assets.getFirst());
+        String tagKey = groupSeries.tagKey();
+        Map<String, Asset> symbolMap = new HashMap<>();
+        assets.forEach(asset -> symbolMap.put(assetSeries.get(asset).symbol(), asset));
+        FluxQuery query = FluxQuery.from(groupSeries.bucket())
+                                   .range(startInstants.get(assets.getFirst()).toString())
+                                   .filter("_measurement", groupSeries.measurement())
+                                   .filter(tagKey, new TreeSet<>(symbolMap.keySet()))
+                                   .build();
+        for (FluxTable table : fluxQueryMethod.query(groupSeries.client(), query)) {
+            if (table.getRecords().isEmpty()) {
+                continue;
+            }
+            Asset asset = symbolMap.get(String.valueOf(table.getRecords().getFirst().getValueByKey(tagKey)));
+            if (asset == null) {
+                continue;
+            }
+            Instant start = startInstants.get(asset);
+            FluxTable assetTable = new FluxTable();
+            assetTable.getColumns().addAll(table.getColumns());
+            table.getRecords().stream().filter(record -> record.getTime() != null && !record.getTime().isBefore(start)).forEach(
+                    assetTable.getRecords()::add);
+            if (!assetTable.getRecords().isEmpty()) {
+                result.get(asset.getId().toString() + "_" + addition).add(assetTable);
+            }
         }
     }
 
@@ -375,41 +549,29 @@ public class AssetInfluxMethod {
      *
      * @throws RuntimeException 重試失敗時的最後一次錯誤
      */
-    public Map<LocalDateTime, String> createInquiryPredicateWithUserAndSpecificTimes(
+    public Map<LocalDateTime, FluxQuery> createInquiryPredicateWithUserAndSpecificTimes(
             String propertySummaryBucket, String measurement, Map<String, String> filters, User user, List<LocalDateTime> specificTimes, int allowRangeOfHour, boolean isLast, boolean needToFillData) {
-        Map<LocalDateTime, String> queries = new HashMap<>();
+        Map<LocalDateTime, FluxQuery> queries = new HashMap<>();
         DateTimeFormatter influxDateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
         for (LocalDateTime specificTime : specificTimes) {
             LocalDateTime rangeStart = specificTime.minusHours(allowRangeOfHour);
             LocalDateTime rangeEnd = specificTime.plusMinutes(30);
-            String formattedStart = influxDateFormat.format(rangeStart);
-            String formattedEnd = influxDateFormat.format(rangeEnd);
-            StringBuilder baseQuery = new StringBuilder(String.format("from(bucket: \"%s\")" + " |> range(start: %s, stop: %s)" + " |> filter(fn: (r) => r[\"_measurement\"] == \"%s\")",
-                                                                      propertySummaryBucket,
-                                                                      formattedStart,
-                                                                      formattedEnd,
-                                                                      measurement));
+            FluxQuery.Builder builder = FluxQuery.from(propertySummaryBucket)
+                                                 .range(influxDateFormat.format(rangeStart), influxDateFormat.format(rangeEnd))
+                                                 .filter("_measurement", measurement);
             if (isLast) {
-                baseQuery.append(" |> last()");
+                builder.last();
             }
             if (user != null) {
-                String additionalQuery = String.format(" |> filter(fn: (r) => r[\"user_id\"] == \"%s\")", user.getId());
-                baseQuery.append(additionalQuery);
+                builder.filter("user_id", user.getId().toString());
             }
             if (needToFillData) {
-                baseQuery.append(" |> aggregateWindow(every: 1h, fn: mean, createEmpty: true)" + " |> fill(usePrevious: true)");
+                builder.fillHourly();
             }
             if (filters != null && !filters.isEmpty()) {
-                for (Map.Entry<String, String> additionalFilters : filters.entrySet()) {
-                    String additionFilterKey = additionalFilters.getKey();
-                    String additionFilterValue = additionalFilters.getValue();
-                    String additionalQuery = String.format("  |> filter(fn: (r) => r[\"%s\"] == \"%s\")",
-                                                           additionFilterKey,
-                                                           additionFilterValue);
-                    baseQuery.append(additionalQuery);
-                }
+                new TreeMap<>(filters).forEach(builder::filter);
             }
-            queries.put(specificTime, baseQuery.toString());
+            queries.put(specificTime, builder.build());
         }
         return queries;
     }
@@ -433,38 +595,79 @@ public class AssetInfluxMethod {
      */
     public Map<LocalDateTime, List<FluxTable>> queryByTimeAndUser(String bucket, String measurement, Map<String, String> filters, User user, List<LocalDateTime> specificTimes, int allowRangeOfHour, boolean isLast, boolean needToFillData) {
         Map<LocalDateTime, List<FluxTable>> userTablesMap = new HashMap<>();
-        Map<LocalDateTime, String> predicate = createInquiryPredicateWithUserAndSpecificTimes(bucket,
-                                                                                              measurement,
-                                                                                              filters,
-                                                                                              user,
-                                                                                              specificTimes,
-                                                                                              allowRangeOfHour,
-                                                                                              isLast,
-                                                                                              needToFillData);
-        for (Map.Entry<LocalDateTime, String> entry : predicate.entrySet()) {
-            LocalDateTime specificTime = entry.getKey();
-            String query = entry.getValue();
-            var ref = new Object() {
-                List<FluxTable> result;
-            };
-            try {
-                retryTemplate.doWithRetry(() -> ref.result = propertySummaryInfluxClient.getQueryApi().query(query, org));
-            } catch (RetryException e) {
-                throw new RuntimeException("重試失敗，最後一次錯誤信息：" + e.getLastException().getMessage());
-            }
-            userTablesMap.put(specificTime, ref.result);
-        }
+        Map<LocalDateTime, FluxQuery> predicate = createInquiryPredicateWithUserAndSpecificTimes(bucket,
+                                                                                                 measurement,
+                                                                                                 filters,
+                                                                                                 user,
+                                                                                                 specificTimes,
+                                                                                                 allowRangeOfHour,
+                                                                                                 isLast,
+                                                                                                 needToFillData);
+        predicate.forEach((specificTime, query) -> userTablesMap.put(specificTime, fluxQueryMethod.query(propertySummaryInfluxClient, query)));
         return userTablesMap;
     }
 
+    /**
+     * 批次查詢多個資產在指定時間點的參考價格
+     * 股票與加密貨幣使用歷史資料，依照資料庫、資料表、欄位與標籤將資產分組，
+     * 每組每個時間點只執行一次Flux查詢，以contains過濾資產標識後依標籤分組，取該時間點前allowRangeOfHour小時內的最後一筆。
+     *
+     * @param assets           資產
+     * @param specificTimes    指定時間
+     * @param allowRangeOfHour 允許的時間誤差範圍
+     *
+     * @return Map<Long, double [ ]> {資產ID, 參考價格}，陣列順序與specificTimes相同，查無資料的時間點為NaN
+     *
+     * @throws RuntimeException 重試失敗時的最後一次錯誤
+     */
+    public Map<Long, double[]> queryStatisticPrices(Collection<Asset> assets, List<LocalDateTime> specificTimes, int allowRangeOfHour) throws RuntimeException {
+        Map<Long, double[]> result = new HashMap<>();
+        Map<String, Map<String, Long>> symbolGroups = new HashMap<>();
+        Map<String, InfluxSeries> groupSeries = new HashMap<>();
+        for (Asset asset : assets) {
+            InfluxSeries series = getSeries(asset, true);
+            groupSeries.putIfAbsent(series.groupKey(), series);
+            symbolGroups.computeIfAbsent(series.groupKey(), k -> new HashMap<>()).put(series.symbol(), asset.getId());
+            double[] prices = new double[specificTimes.size()];
+            Arrays.fill(prices, Double.NaN);
+            result.put(asset.getId(), prices);
+        }
+        DateTimeFormatter influxDateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+        symbolGroups.forEach((groupKey, symbolMap) -> {
+            InfluxSeries series = groupSeries.get(groupKey);
+            for (int i = 0; i < specificTimes.size(); i++) {
+                LocalDateTime specificTime = specificTimes.get(i);
+                FluxQuery query = FluxQuery.from(series.bucket())
+                                           .range(influxDateFormat.format(specificTime.minusHours(allowRangeOfHour)),
+                                                  influxDateFormat.format(specificTime.plusMinutes(30)))
+                                           .filter("_measurement", series.measurement())
+                                           .filter("_field", series.field())
+                                           .filter(series.tagKey(), new TreeSet<>(symbolMap.keySet()))
+                                           .group(series.tagKey())
+                                           .last()
+                                           .build();
+                for (FluxTable table : fluxQueryMethod.query(series.client(), query)) {
+                    for (FluxRecord record : table.getRecords()) {
+                        Long assetId = symbolMap.get(String.valueOf(record.getValueByKey(series.tagKey())));
+                        if (assetId != null && record.getValue() instanceof Number value) {
+                            result.get(assetId)[i] = value.doubleValue();
+                        }
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
     /**
      * 取得ROI統計日期
      * 今天、昨天、一週前、一個月前、一年前
+     * 時間取整到分鐘，同一分鐘內的統計查詢會產生相同的查詢，可合併為一次查詢
      *
      * @return List<LocalDateTime>
      */
     public List<LocalDateTime> getStatisticDate() {
-        LocalDateTime today = LocalDateTime.now();
+        LocalDateTime today = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
         List<LocalDateTime> localDateTime = new ArrayList<>();
         localDateTime.add(today);
         localDateTime.add(today.minusDays(1));
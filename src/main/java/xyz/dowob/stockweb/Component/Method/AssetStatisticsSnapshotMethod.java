@@ -0,0 +1,60 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以資產ID為鍵的資產統計快照，保存一天前、一週前、一個月前、一年前的參考價格。
+ * 快照由定時任務一次批次計算所有已訂閱資產後整批替換，每個資產只保存一個double陣列，查無資料的時間點為NaN。
+ * 超過asset.statistics.snapshot_max_age_ms未更新的快照視為過期，由AssetService改為即時計算後回填。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName AssetStatisticsSnapshotMethod
+ * @description
+ * @create 2026-10-19 09:20
+ * @Version 1.0
+ **/
+@Component
+public class AssetStatisticsSnapshotMethod {
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Value("${asset.statistics.snapshot_max_age_ms:3600000}")
+    private long maxAgeMillis;
+
+    /**
+     * 資產統計快照
+     *
+     * @param prices     參考價格，順序與AssetInfluxMethod.getStatisticDate去除今天後相同
+     * @param updateTime 計算完成的時間，用於判斷是否過期
+     */
+    private record Snapshot(double[] prices, long updateTime) {}
+
+    /**
+     * 寫入多個資產的統計快照
+     *
+     * @param statistics {資產ID, 參考價格}
+     */
+    public void putAll(Map<Long, double[]> statistics) {
+        long now = System.currentTimeMillis();
+        statistics.forEach((assetId, prices) -> snapshots.put(assetId, new Snapshot(prices, now)));
+    }
+
+    /**
+     * 取得未過期的統計快照
+     *
+     * @param assetId 資產ID
+     *
+     * @return 參考價格，沒有快照或已過期時回傳null
+     */
+    public double[] get(Long assetId) {
+        Snapshot snapshot = snapshots.get(assetId);
+        if (snapshot == null || System.currentTimeMillis() - snapshot.updateTime() > maxAgeMillis) {
+            return null;
+        }
+        return snapshot.prices();
+    }
+}
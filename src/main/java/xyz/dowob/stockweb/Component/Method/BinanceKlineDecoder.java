@@ -0,0 +1,151 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+import xyz.dowob.stockweb.Enum.AssetType;
+
+import java.io.IOException;
+
+/**
+ * 用於解析Binance組合串流(combined stream)K線訊息的串流解碼器。
+ * 以共用的JsonFactory建立JsonParser，只讀取data.k中的s、t、o、h、l、c、v、x欄位，
+ * 並直接建立以原始型別保存數值的KlineEvent，不建立任何Map或中間字串。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName BinanceKlineDecoder
+ * @description
+ * @create 2026-10-18 21:30
+ * @Version 1.0
+ **/
+@Component
+public class BinanceKlineDecoder {
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * 解析Binance組合串流訊息並轉換為KlineEvent。
+     * 訂閱回應等非K線訊息會回傳null。
+     *
+     * @param payload 訊息內容
+     *
+     * @return K線事件
+     *
+     * @throws IOException 解析JSON失敗時拋出
+     */
+    public KlineEvent decode(String payload) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            KlineEvent event = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    event = readData(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return event;
+        }
+    }
+
+    private KlineEvent readData(JsonParser parser) throws IOException {
+        KlineEvent event = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("k".equals(field) && value == JsonToken.START_OBJECT) {
+                event = readKline(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return event;
+    }
+
+    private KlineEvent readKline(JsonParser parser) throws IOException {
+        String symbol = null;
+        long openTime = Long.MIN_VALUE;
+        double open = Double.NaN, high = Double.NaN, low = Double.NaN, close = Double.NaN, volume = Double.NaN;
+        boolean closed = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (field.length() != 1) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field.charAt(0)) {
+                case 's' -> symbol = parser.getText();
+                case 't' -> openTime = parser.getLongValue();
+                case 'o' -> open = parseDecimal(parser);
+                case 'h' -> high = parseDecimal(parser);
+                case 'l' -> low = parseDecimal(parser);
+                case 'c' -> close = parseDecimal(parser);
+                case 'v' -> volume = parseDecimal(parser);
+                case 'x' -> closed = value == JsonToken.VALUE_TRUE;
+                default -> parser.skipChildren();
+            }
+        }
+        if (symbol == null || openTime == Long.MIN_VALUE || Double.isNaN(close)) {
+            return null;
+        }
+        return new KlineEvent(symbol, AssetType.CRYPTO, openTime, open, high, low, close, volume, closed);
+    }
+
+    /**
+     * 直接從解析器的字元緩衝區解析十進位字串，避免建立中間字串。
+     * 若位數超過double可精確表示的範圍，則退回使用Double.parseDouble。
+     *
+     * @param parser JsonParser
+     *
+     * @return 解析後的數值
+     *
+     * @throws IOException 讀取失敗時拋出
+     */
+    private double parseDecimal(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT || parser.currentToken() == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getDoubleValue();
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        int end = offset + length;
+        int index = offset;
+        boolean negative = false;
+        if (index < end && chars[index] == '-') {
+            negative = true;
+            index++;
+        }
+        long mantissa = 0;
+        int scale = -1;
+        for (; index < end; index++) {
+            char c = chars[index];
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if (c < '0' || c > '9' || mantissa >= MAX_EXACT_MANTISSA / 10) {
+                return Double.parseDouble(new String(chars, offset, length));
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (scale >= POW10.length) {
+            return Double.parseDouble(new String(chars, offset, length));
+        }
+        double result = scale > 0 ? mantissa / POW10[scale] : mantissa;
+        return negative ? -result : result;
+    }
+}
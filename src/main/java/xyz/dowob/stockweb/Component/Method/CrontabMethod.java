@@ -358,13 +358,19 @@ public class CrontabMethod {
 
     /**
      * 檢查並重新連接WebSocket
+     * 連線池未開啟時重新開啟；已開啟時逐一檢查每個連線，重新連接已斷線的連線
      * 每5分鐘
      */
     @Scheduled(fixedRate = 300000)
     public void checkAndReconnectWebSocket() {
         try {
-            if (cryptoService.isNeedToCheckConnection() && !cryptoWebSocketHandler.isRunning()) {
+            if (!cryptoService.isNeedToCheckConnection()) {
+                return;
+            }
+            if (!cryptoWebSocketHandler.isRunning()) {
                 cryptoService.checkAndReconnectWebSocket();
+            } else {
+                cryptoWebSocketHandler.reconnectDisconnectedShards();
             }
         } catch (Exception e) {
             log.error("檢查並重新連接WebSocket失敗: {}", e.getMessage());
@@ -487,6 +493,19 @@ public class CrontabMethod {
         }
     }
 
+    /**
+     * 批次計算已訂閱資產的統計快照
+     * 依照asset.statistics.refresh_cron設置，預設每15分鐘
+     */
+    @Scheduled(cron = "${asset.statistics.refresh_cron:0 */15 * * * ?}")
+    public void refreshAssetStatisticsSnapshot() {
+        try {
+            assetService.refreshAssetStatisticsSnapshot();
+        } catch (Exception e) {
+            log.error("計算資產統計快照失敗: {}", e.getMessage());
+        }
+    }
+
     /**
      * 定期緩存資產前綴樹
      * 每週五凌晨2點
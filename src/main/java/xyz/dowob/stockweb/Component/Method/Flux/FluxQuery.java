@@ -0,0 +1,275 @@
+package xyz.dowob.stockweb.Component.Method.Flux;
+
+import xyz.dowob.stockweb.Exception.FormatExceptions;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 參數化的Flux查詢。
+ * 查詢本體只引用params.p0、params.p1等參數，所有值都以型別化的Flux字面值綁定在params記錄中，不會直接拼接進查詢語法。
+ * 相同形狀的查詢會產生相同的查詢本體，可作為查詢模板重複使用；查詢本體與參數共同作為查詢結果快取的鍵。
+ * InfluxDB OSS不支援查詢API的params欄位，因此執行時將params記錄宣告於查詢本體之前。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName FluxQuery
+ * @description
+ * @create 2026-10-19 05:00
+ * @Version 1.0
+ **/
+public final class FluxQuery {
+    private static final Pattern DURATION_PATTERN = Pattern.compile("-?(\\d+(ns|us|ms|mo|s|m|h|d|w|y))+");
+
+    private final String body;
+
+    private final Map<String, String> params;
+
+    private FluxQuery(String body, Map<String, String> params) {
+        this.body = body;
+        this.params = Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * 以資料庫開始建立查詢
+     *
+     * @param bucket 資料庫名稱
+     *
+     * @return 查詢建構器
+     */
+    public static Builder from(String bucket) {
+        return new Builder(bucket);
+    }
+
+    /**
+     * 取得查詢本體，即不含參數值的查詢模板
+     *
+     * @return 查詢本體
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * 轉換為可執行的Flux查詢語句
+     *
+     * @return Flux查詢語句
+     */
+    public String toFlux() {
+        String record = params.entrySet()
+                              .stream()
+                              .map(entry -> entry.getKey() + ": " + entry.getValue())
+                              .collect(Collectors.joining(", ", "params = {", "}\n"));
+        return record + body;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FluxQuery fluxQuery)) {
+            return false;
+        }
+        return body.equals(fluxQuery.body) && params.equals(fluxQuery.params);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(body, params);
+    }
+
+    @Override
+    public String toString() {
+        return toFlux();
+    }
+
+    /**
+     * Flux查詢建構器，每個方法依呼叫順序加入一個管線階段
+     */
+    public static final class Builder {
+        private final StringBuilder body = new StringBuilder();
+
+        private final Map<String, String> params = new TreeMap<>();
+
+        private Builder(String bucket) {
+            body.append("from(bucket: ").append(bind(stringLiteral(bucket))).append(")");
+        }
+
+        /**
+         * 指定查詢起始時間，結束時間為現在
+         *
+         * @param start 起始時間，可為RFC3339時間、相對時間(如-30d)或now()
+         *
+         * @return 查詢建構器
+         */
+        public Builder range(String start) {
+            body.append(" |> range(start: ").append(bind(timeLiteral(start))).append(")");
+            return this;
+        }
+
+        /**
+         * 指定查詢時間區間
+         *
+         * @param start 起始時間，可為RFC3339時間、相對時間(如-30d)或now()
+         * @param stop  結束時間，可為RFC3339時間、相對時間(如-30d)或now()
+         *
+         * @return 查詢建構器
+         */
+        public Builder range(String start, String stop) {
+            body.append(" |> range(start: ").append(bind(timeLiteral(start))).append(", stop: ").append(bind(timeLiteral(stop))).append(")");
+            return this;
+        }
+
+        /**
+         * 過濾欄位等於指定值的資料
+         *
+         * @param column 欄位名稱
+         * @param value  欄位值
+         *
+         * @return 查詢建構器
+         */
+        public Builder filter(String column, String value) {
+            body.append(" |> filter(fn: (r) => r[").append(stringLiteral(column)).append("] == ").append(bind(stringLiteral(value))).append(")");
+            return this;
+        }
+
+        /**
+         * 過濾欄位為指定值之一的資料
+         *
+         * @param column 欄位名稱
+         * @param values 欄位值
+         *
+         * @return 查詢建構器
+         */
+        public Builder filter(String column, Collection<String> values) {
+            String set = values.stream().map(Builder::stringLiteral).collect(Collectors.joining(", ", "[", "]"));
+            body.append(" |> filter(fn: (r) => contains(value: r[").append(stringLiteral(column)).append("], set: ").append(bind(set)).append("))");
+            return this;
+        }
+
+        /**
+         * 依欄位分組
+         *
+         * @param column 欄位名稱
+         *
+         * @return 查詢建構器
+         */
+        public Builder group(String column) {
+            body.append(" |> group(columns: [").append(stringLiteral(column)).append("])");
+            return this;
+        }
+
+        /**
+         * 以時間為列將各欄位合併為同一筆資料
+         *
+         * @return 查詢建構器
+         */
+        public Builder pivotFields() {
+            body.append(" |> pivot(rowKey: [\"_time\"], columnKey: [\"_field\"], valueColumn: \"_value\")");
+            return this;
+        }
+
+        /**
+         * 以每小時平均值補齊資料，缺少的時間點使用前一筆資料
+         *
+         * @return 查詢建構器
+         */
+        public Builder fillHourly() {
+            body.append(" |> aggregateWindow(every: 1h, fn: mean, createEmpty: true) |> fill(usePrevious: true)");
+            return this;
+        }
+
+        /**
+         * 取每個資料表的最後一筆
+         *
+         * @return 查詢建構器
+         */
+        public Builder last() {
+            body.append(" |> last()");
+            return this;
+        }
+
+        /**
+         * 取每個資料表的第一筆
+         *
+         * @return 查詢建構器
+         */
+        public Builder first() {
+            body.append(" |> first()");
+            return this;
+        }
+
+        /**
+         * 計算每個資料表的資料筆數
+         *
+         * @return 查詢建構器
+         */
+        public Builder count() {
+            body.append(" |> count()");
+            return this;
+        }
+
+        /**
+         * 加總每個資料表的_value欄位
+         *
+         * @return 查詢建構器
+         */
+        public Builder sum() {
+            body.append(" |> sum(column: \"_value\")");
+            return this;
+        }
+
+        /**
+         * 建立查詢
+         *
+         * @return 參數化的Flux查詢
+         */
+        public FluxQuery build() {
+            return new FluxQuery(body.toString(), params);
+        }
+
+        private String bind(String literal) {
+            String name = "p" + params.size();
+            params.put(name, literal);
+            return "params." + name;
+        }
+
+        private static String stringLiteral(String value) {
+            StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"', '\\' -> literal.append('\\').append(c);
+                    case '\n' -> literal.append("\\n");
+                    case '\r' -> literal.append("\\r");
+                    case '\t' -> literal.append("\\t");
+                    case '$' -> literal.append(i + 1 < value.length() && value.charAt(i + 1) == '{' ? "\\$" : "$");
+                    default -> literal.append(c);
+                }
+            }
+            return literal.append('"').toString();
+        }
+
+        private static String timeLiteral(String value) {
+            if ("now()".equals(value)) {
+                return value;
+            }
+            if (DURATION_PATTERN.matcher(value).matches()) {
+                return value;
+            }
+            try {
+                return Instant.parse(value).toString();
+            } catch (DateTimeParseException e) {
+                throw new FormatExceptions(FormatExceptions.ErrorEnum.UNSUPPORTED_DATE_FORMAT, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package xyz.dowob.stockweb.Component.Method.Flux;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.query.FluxRecord;
+import com.influxdb.query.FluxTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Component.Method.retry.RetryTemplate;
+import xyz.dowob.stockweb.Exception.RetryException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 執行參數化Flux查詢的方法。
+ * 一般查詢以(客戶端, 查詢模板, 參數)為鍵合併請求：同時發出的相同查詢共用同一個執行中的查詢，只向InfluxDB查詢一次；
+ * 查詢完成後結果再快取db.influxdb.query.cache_ttl_ms毫秒。快取與共用的結果由所有呼叫端共用，不應被修改。
+ * 串流查詢不經過快取。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName FluxQueryMethod
+ * @description
+ * @create 2026-10-19 05:20
+ * @Version 1.0
+ **/
+@Component
+public class FluxQueryMethod {
+    private static final int CACHE_SWEEP_SIZE = 1024;
+
+    private final RetryTemplate retryTemplate;
+
+    private final Map<CacheKey, CachedResult> cache = new ConcurrentHashMap<>();
+
+    private final Map<CacheKey, CompletableFuture<List<FluxTable>>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${db.influxdb.org}")
+    private String org;
+
+    @Value("${db.influxdb.query.cache_ttl_ms:1000}")
+    private long cacheTtlMillis;
+
+    private record CacheKey(InfluxDBClient client, FluxQuery query) {}
+
+    private record CachedResult(long expireTime, List<FluxTable> tables) {}
+
+    /**
+     * FluxQueryMethod構造函數
+     *
+     * @param retryTemplate 重試模板
+     */
+    public FluxQueryMethod(RetryTemplate retryTemplate) {
+        this.retryTemplate = retryTemplate;
+    }
+
+    /**
+     * 執行Flux查詢並取得完整結果
+     * 短時間內相同的查詢直接回傳快取的結果；若相同的查詢正在執行中，則等待並共用該查詢的結果或錯誤。
+     * 回傳的List與其中的FluxTable會同時交給其他呼叫端並保存在快取中，呼叫端不可修改(新增、刪除或排序)，需要調整時應複製後再處理。
+     * 執行查詢的呼叫端不論以任何錯誤(包含Error)結束，都會完成共用的查詢，等待中的呼叫端不會永久阻塞。
+     *
+     * @param client InfluxDB客戶端
+     * @param query  Flux查詢
+     *
+     * @return 查詢結果，為共用的唯讀結果
+     *
+     * @throws RuntimeException 重試失敗時的最後一次錯誤
+     */
+    public List<FluxTable> query(InfluxDBClient client, FluxQuery query) {
+        CacheKey key = new CacheKey(client, query);
+        CachedResult cached = cache.get(key);
+        if (cached != null && cached.expireTime() > System.currentTimeMillis()) {
+            return cached.tables();
+        }
+        CompletableFuture<List<FluxTable>> flight = new CompletableFuture<>();
+        CompletableFuture<List<FluxTable>> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+        try {
+            List<FluxTable> tables = execute(client, query);
+            if (cacheTtlMillis > 0) {
+                long now = System.currentTimeMillis();
+                if (cache.size() >= CACHE_SWEEP_SIZE) {
+                    cache.values().removeIf(result -> result.expireTime() <= now);
+                }
+                cache.put(key, new CachedResult(now + cacheTtlMillis, tables));
+            }
+            flight.complete(tables);
+            return tables;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * 以串流方式執行Flux查詢，每解析出一筆資料就交給onRecord處理，查詢完成後才返回。
+     * 尚未處理任何資料前發生錯誤會依重試設定重新查詢；已處理部分資料後發生錯誤則不重試，避免資料重複。
+     *
+     * @param client   InfluxDB客戶端
+     * @param query    Flux查詢
+     * @param onRecord 每一筆資料的處理方法
+     *
+     * @throws RuntimeException 查詢失敗或重試失敗時拋出
+     */
+    public void stream(InfluxDBClient client, FluxQuery query, Consumer<FluxRecord> onRecord) {
+        String flux = query.toFlux();
+        var ref = new Object() {
+            boolean emitted;
+
+            Throwable partialError;
+        };
+        try {
+            retryTemplate.doWithRetry(() -> {
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                client.getQueryApi().query(flux, org, (cancellable, record) -> {
+                    try {
+                        ref.emitted = true;
+                        onRecord.accept(record);
+                    } catch (Throwable e) {
+                        cancellable.cancel();
+                        done.completeExceptionally(e);
+                    }
+                }, done::completeExceptionally, () -> done.complete(null));
+                try {
+                    done.join();
+                } catch (CompletionException e) {
+                    if (!ref.emitted) {
+                        throw e;
+                    }
+                    ref.partialError = e.getCause();
+                }
+            });
+        } catch (RetryException e) {
+            throw new RuntimeException("重試失敗，最後一次錯誤信息：" + e.getLastException().getMessage());
+        }
+        if (ref.partialError instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (ref.partialError != null) {
+            throw new RuntimeException("串流查詢中斷：" + ref.partialError.getMessage(), ref.partialError);
+        }
+    }
+
+    private List<FluxTable> execute(InfluxDBClient client, FluxQuery query) {
+        String flux = query.toFlux();
+        var ref = new Object() {
+            List<FluxTable> tables;
+        };
+        try {
+            retryTemplate.doWithRetry(() -> ref.tables = client.getQueryApi().query(flux, org));
+        } catch (RetryException e) {
+            throw new RuntimeException("重試失敗，最後一次錯誤信息：" + e.getLastException().getMessage());
+        }
+        return ref.tables;
+    }
+}
@@ -0,0 +1,124 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.WriteApi;
+import com.influxdb.client.WriteOptions;
+import com.influxdb.client.write.Point;
+import com.influxdb.client.write.events.BackpressureEvent;
+import com.influxdb.client.write.events.WriteErrorEvent;
+import com.influxdb.client.write.events.WriteRetriableErrorEvent;
+import io.reactivex.rxjava3.core.BackpressureOverflowStrategy;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 管理每個InfluxDB客戶端(即每個Bucket)共用且長期存在的批次WriteApi。
+ * 呼叫端只需將資料點放入緩衝區即可返回，由WriteApi依批次大小、刷新間隔與抖動時間在背景寫入，
+ * 緩衝區已滿時丟棄最舊的資料點，寫入失敗時依common.max_retryTimes以指數退避重試，最終失敗則記錄錯誤。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName InfluxWriteMethod
+ * @description
+ * @create 2026-10-19 01:40
+ * @Version 1.0
+ **/
+@Log4j2
+@Component
+public class InfluxWriteMethod {
+    private final Map<InfluxDBClient, WriteApi> writeApis = new ConcurrentHashMap<>();
+
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    @Value("${db.influxdb.write.batch_size:1000}")
+    private int batchSize;
+
+    @Value("${db.influxdb.write.flush_interval_ms:1000}")
+    private int flushInterval;
+
+    @Value("${db.influxdb.write.jitter_interval_ms:200}")
+    private int jitterInterval;
+
+    @Value("${db.influxdb.write.buffer_limit:10000}")
+    private int bufferLimit;
+
+    @Value("${db.influxdb.write.retry_interval_ms:5000}")
+    private int retryInterval;
+
+    @Value("${common.max_retryTimes:3}")
+    private int maxRetries;
+
+    /**
+     * 將資料點放入客戶端的寫入緩衝區，不等待寫入完成。
+     *
+     * @param influxClient InfluxDB客戶端
+     * @param point        資料點
+     */
+    public void write(InfluxDBClient influxClient, Point point) {
+        getWriteApi(influxClient).writePoint(point);
+    }
+
+    /**
+     * 將多個資料點放入客戶端的寫入緩衝區，不等待寫入完成。
+     *
+     * @param influxClient InfluxDB客戶端
+     * @param points       資料點列表
+     */
+    public void write(InfluxDBClient influxClient, List<Point> points) {
+        if (!points.isEmpty()) {
+            getWriteApi(influxClient).writePoints(List.copyOf(points));
+        }
+    }
+
+    /**
+     * 取得最終寫入失敗的批次數量
+     *
+     * @return 失敗批次數量
+     */
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /**
+     * 應用關閉時送出並關閉所有WriteApi。
+     */
+    @PreDestroy
+    public void close() {
+        writeApis.values().forEach(WriteApi::close);
+        writeApis.clear();
+    }
+
+    private WriteApi getWriteApi(InfluxDBClient influxClient) {
+        return writeApis.computeIfAbsent(influxClient, this::createWriteApi);
+    }
+
+    private WriteApi createWriteApi(InfluxDBClient influxClient) {
+        WriteOptions writeOptions = WriteOptions.builder()
+                                                .batchSize(batchSize)
+                                                .flushInterval(flushInterval)
+                                                .jitterInterval(jitterInterval)
+                                                .bufferLimit(bufferLimit)
+                                                .backpressureStrategy(BackpressureOverflowStrategy.DROP_OLDEST)
+                                                .retryInterval(retryInterval)
+                                                .maxRetries(maxRetries)
+                                                .build();
+        WriteApi writeApi = influxClient.makeWriteApi(writeOptions);
+        writeApi.listenEvents(WriteRetriableErrorEvent.class,
+                              event -> log.warn("InfluxDB寫入失敗，{}毫秒後重試: {}",
+                                                event.getRetryInterval(),
+                                                event.getThrowable().getMessage()));
+        writeApi.listenEvents(WriteErrorEvent.class, event -> {
+            failedBatches.incrementAndGet();
+            log.error("InfluxDB寫入失敗，已達最大重試次數: {}", event.getThrowable().getMessage());
+        });
+        writeApi.listenEvents(BackpressureEvent.class, event -> log.warn("InfluxDB寫入緩衝區已滿，丟棄最舊的資料點: {}", event.getReason()));
+        return writeApi;
+    }
+}
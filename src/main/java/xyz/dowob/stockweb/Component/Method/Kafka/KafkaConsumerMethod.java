@@ -1,8 +1,5 @@
 package xyz.dowob.stockweb.Component.Method.Kafka;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -10,13 +7,17 @@ import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 import xyz.dowob.stockweb.Component.Handler.KlineWebSocketHandler;
-import xyz.dowob.stockweb.Dto.Common.AssetKlineDataDto;
+import xyz.dowob.stockweb.Component.Method.KlineIngestFilter;
+import xyz.dowob.stockweb.Component.Method.KlineRingBufferMethod;
+import xyz.dowob.stockweb.Component.Method.LatestPriceCacheMethod;
 import xyz.dowob.stockweb.Dto.Common.KafkaWebsocketDto;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
 import xyz.dowob.stockweb.Model.Common.Asset;
 import xyz.dowob.stockweb.Service.Common.AssetService;
 import xyz.dowob.stockweb.Service.Crypto.CryptoInfluxService;
 import xyz.dowob.stockweb.Service.Stock.StockTwInfluxService;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -44,28 +45,35 @@ public class KafkaConsumerMethod {
 
     private final AssetService assetService;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final KlineRingBufferMethod klineRingBufferMethod;
+
+    private final KlineIngestFilter klineIngestFilter;
+
+    private final LatestPriceCacheMethod latestPriceCacheMethod;
 
     private static final Map<String, Asset> ASSET_CACHE_MAP = new ConcurrentHashMap<>();
 
-    public KafkaConsumerMethod(CryptoInfluxService cryptoInfluxService, StockTwInfluxService stockTwInfluxService, KlineWebSocketHandler klineWebSocketHandler, AssetService assetService) {
+    public KafkaConsumerMethod(CryptoInfluxService cryptoInfluxService, StockTwInfluxService stockTwInfluxService, KlineWebSocketHandler klineWebSocketHandler, AssetService assetService, KlineRingBufferMethod klineRingBufferMethod, KlineIngestFilter klineIngestFilter, LatestPriceCacheMethod latestPriceCacheMethod) {
         this.cryptoInfluxService = cryptoInfluxService;
         this.stockTwInfluxService = stockTwInfluxService;
         this.klineWebSocketHandler = klineWebSocketHandler;
         this.assetService = assetService;
+        this.klineRingBufferMethod = klineRingBufferMethod;
+        this.klineIngestFilter = klineIngestFilter;
+        this.latestPriceCacheMethod = latestPriceCacheMethod;
     }
 
     /**
      * 用於Kafka處理消費者的加密貨幣即時K線資料並儲存到InfluxDB。
+     * 未收盤的K線仍會經由Kafka轉發給各實例的用戶，是否寫入InfluxDB則由KlineIngestFilter決定。
      *
      * @param klineData Kafka消費者接收到的加密貨幣即時K線資料
      */
     @KafkaListener(topics = "crypto_kline",
                    groupId = "influxdb")
     public void consumeCryptoKlineDataByInfluxdb(ConsumerRecord<String, Object> klineData) {
-        Map<String, Map<String, String>> klineDataMap = formatConsumerRecordToMap(klineData);
-        if (klineDataMap != null) {
-            cryptoInfluxService.writeToInflux(klineDataMap);
+        if (klineData.value() instanceof KlineEvent klineEvent && klineIngestFilter.shouldPersist(klineEvent)) {
+            cryptoInfluxService.writeToInflux(klineEvent);
         }
     }
 
@@ -77,82 +85,43 @@ public class KafkaConsumerMethod {
     @KafkaListener(topics = "stock_tw_kline",
                    groupId = "influxdb")
     public void consumeStockTwKlineDataByInfluxdb(ConsumerRecord<String, Object> klineData) {
-        Map<String, Map<String, String>> klineDataMap = formatConsumerRecordToMap(klineData);
-        if (klineDataMap != null) {
-            stockTwInfluxService.writeToInflux(klineDataMap);
+        if (klineData.value() instanceof KlineEvent klineEvent) {
+            stockTwInfluxService.writeToInflux(List.of(klineEvent));
         }
     }
 
     /**
      * 用於Kafka處理消費者的即時K線資料轉換資料格式後發送到WebSocket。
+     * 叢集模式下每個實例使用獨立的消費者群組，所有實例都會收到全部K線資料，並只發送給本地連線。
      *
      * @param klineData Kafka消費者接收到的即時K線資料
      */
     @KafkaListener(topics = "crypto_kline",
-                   groupId = "websocket")
+                   groupId = "#{@klineClusterMethod.websocketGroupId}",
+                   properties = "auto.offset.reset=#{@klineClusterMethod.websocketOffsetReset}")
     @KafkaListener(topics = "stock_tw_kline",
-                   groupId = "websocket")
+                   groupId = "#{@klineClusterMethod.websocketGroupId}",
+                   properties = "auto.offset.reset=#{@klineClusterMethod.websocketOffsetReset}")
     public void consumeKlineDataByWebsocket(ConsumerRecord<String, Object> klineData) {
-        Map<String, Map<String, String>> klineDataMap = formatConsumerRecordToMap(klineData);
-        if (klineDataMap != null) {
-            for (Map.Entry<String, Map<String, String>> entry : klineDataMap.entrySet()) {
-                String assetName = entry.getKey();
-                Asset asset;
-                if (ASSET_CACHE_MAP.containsKey(assetName)) {
-                    asset = ASSET_CACHE_MAP.get(assetName);
-                } else {
-                    asset = assetService.getAssetByAssetName(assetName);
-                    if (asset == null) {
-                        continue;
-                    }
-                    ASSET_CACHE_MAP.put(assetName, asset);
-                }
-                KafkaWebsocketDto kafkaWebsocketDto = new KafkaWebsocketDto();
-                Map<String, String> assetData = entry.getValue();
-                AssetKlineDataDto assetKlineDataDto = formatMapToAssetKlineDataDto(assetData);
-                kafkaWebsocketDto.setAssetId(asset.getId());
-                kafkaWebsocketDto.setAssetType(asset.getAssetType());
-                kafkaWebsocketDto.setAssetName(assetName);
-                kafkaWebsocketDto.setData(assetKlineDataDto);
-                CompletableFuture.runAsync(() -> klineWebSocketHandler.sendKlineDataByKafka(kafkaWebsocketDto));
-            }
+        if (!(klineData.value() instanceof KlineEvent klineEvent)) {
+            return;
         }
-    }
-
-    /**
-     * 處理Redis中緩存的即時K線資料成Map格式。
-     * 其中資產名稱為key，資產資料為value。
-     *
-     * @param obj Kafka消費者接收到的即時K線資料
-     *
-     * @return 轉換後的Map格式即時K線資料
-     */
-    private Map<String, Map<String, String>> formatConsumerRecordToMap(ConsumerRecord<String, Object> obj) {
-        try {
-            String jsonString = obj.value().toString();
-            jsonString = jsonString.replaceAll("([a-zA-Z0-9_]+)=([a-zA-Z0-9_.]+)", "\"$1\":\"$2\"");
-            jsonString = jsonString.replaceAll("([a-zA-Z0-9_]+)=", "\"$1\":");
-            return objectMapper.readValue(jsonString, new TypeReference<>() {});
-        } catch (JsonProcessingException e) {
-            return null;
+        String assetName = klineEvent.symbol();
+        Asset asset = ASSET_CACHE_MAP.get(assetName);
+        if (asset == null) {
+            asset = assetService.getAssetByAssetName(assetName);
+            if (asset == null) {
+                return;
+            }
+            ASSET_CACHE_MAP.put(assetName, asset);
         }
-    }
-
-    /**
-     * 將Map格式的資產資料轉換為AssetKlineDataDto格式。
-     *
-     * @param assetData Map格式的資產資料
-     *
-     * @return AssetKlineDataDto格式的資產資料
-     */
-    private AssetKlineDataDto formatMapToAssetKlineDataDto(Map<String, String> assetData) {
-        AssetKlineDataDto assetKlineDataDto = new AssetKlineDataDto();
-        assetKlineDataDto.setTimestamp(assetData.get("time"));
-        assetKlineDataDto.setOpen(assetData.get("open"));
-        assetKlineDataDto.setHigh(assetData.get("high"));
-        assetKlineDataDto.setLow(assetData.get("low"));
-        assetKlineDataDto.setClose(assetData.get("close"));
-        assetKlineDataDto.setVolume(assetData.get("volume"));
-        return assetKlineDataDto;
+        klineRingBufferMethod.append(asset.getId(), klineEvent);
+        latestPriceCacheMethod.update(asset.getId(), klineEvent.close(), klineEvent.epochMillis());
+        KafkaWebsocketDto kafkaWebsocketDto = new KafkaWebsocketDto();
+        kafkaWebsocketDto.setAssetId(asset.getId());
+        kafkaWebsocketDto.setAssetType(asset.getAssetType());
+        kafkaWebsocketDto.setAssetName(assetName);
+        kafkaWebsocketDto.setData(klineEvent.toAssetKlineDataDto());
+        CompletableFuture.runAsync(() -> klineWebSocketHandler.sendKlineDataByKafka(kafkaWebsocketDto));
     }
 }
@@ -3,6 +3,7 @@ package xyz.dowob.stockweb.Component.Method.Kafka;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
 
 /**
  * 用於Kafka生產者的方法。
@@ -34,4 +35,15 @@ public class KafkaProducerMethod {
     public void sendMessage(String topic, Object message) {
         kafkaTemplate.send(topic, message);
     }
+
+    /**
+     * 發送K線事件到指定的主題。
+     * 以資產代號作為訊息鍵值，確保同一資產的K線依序進入同一分區。
+     *
+     * @param topic      主題名稱
+     * @param klineEvent K線事件
+     */
+    public void sendKlineEvent(String topic, KlineEvent klineEvent) {
+        kafkaTemplate.send(topic, klineEvent.symbol(), klineEvent);
+    }
 }
@@ -0,0 +1,150 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Service.Common.RedisService;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用於多個應用實例共同分擔K線圖WebSocket連線的叢集方法。
+ * 當設定檔中的common.cluster.enable為true時：
+ * 1. 每個實例使用獨立的Kafka websocket消費者群組，所有實例都會收到全部K線資料，並只發送給本地連線。
+ * 2. 每個實例將本地訂閱的資產ID登記到Redis，形成共享的訂閱登記表，讓排程任務可以取得全域的訂閱集合。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineClusterMethod
+ * @description
+ * @create 2026-10-18 20:10
+ * @Version 1.0
+ **/
+@Component
+public class KlineClusterMethod {
+    private final RedisService redisService;
+
+    private final Set<Long> localAssets = ConcurrentHashMap.newKeySet();
+
+    private static final String NODES_KEY = "kline_cluster:nodes";
+
+    private static final String NODE_SUBSCRIPTIONS_PREFIX = "kline_cluster:subscriptions:";
+
+    private static final String LOCK_PREFIX = "kline_cluster:lock:";
+
+    private static final long NODE_TTL_SECONDS = 90;
+
+    @Getter
+    private final boolean clusterEnable;
+
+    @Getter
+    private final String instanceId;
+
+    /**
+     * KlineClusterMethod構造函數
+     *
+     * @param redisService  Redis緩存相關服務
+     * @param clusterEnable 是否開啟叢集模式
+     * @param instanceId    實例ID，未設定時使用隨機UUID
+     */
+    public KlineClusterMethod(RedisService redisService, @Value("${common.cluster.enable:false}") boolean clusterEnable, @Value("${common.cluster.instance_id:}") String instanceId) {
+        this.redisService = redisService;
+        this.clusterEnable = clusterEnable;
+        this.instanceId = instanceId == null || instanceId.isBlank() ? UUID.randomUUID().toString() : instanceId;
+    }
+
+    /**
+     * 取得Kafka websocket消費者群組ID，叢集模式下每個實例使用獨立的群組。
+     *
+     * @return 消費者群組ID
+     */
+    public String getWebsocketGroupId() {
+        return clusterEnable ? "websocket-" + instanceId : "websocket";
+    }
+
+    /**
+     * 取得Kafka websocket消費者的偏移量設定，叢集模式下新的實例群組只接收最新資料。
+     *
+     * @return 偏移量設定
+     */
+    public String getWebsocketOffsetReset() {
+        return clusterEnable ? "latest" : "earliest";
+    }
+
+    /**
+     * 登記本地訂閱的資產。
+     *
+     * @param assetId 資產ID
+     */
+    public void register(Long assetId) {
+        localAssets.add(assetId);
+        if (clusterEnable) {
+            redisService.addToCacheSet(NODE_SUBSCRIPTIONS_PREFIX + instanceId, assetId.toString(), NODE_TTL_SECONDS);
+            redisService.addToCacheSet(NODES_KEY, instanceId, NODE_TTL_SECONDS);
+        }
+    }
+
+    /**
+     * 移除本地訂閱的資產。
+     *
+     * @param assetId 資產ID
+     */
+    public void unregister(Long assetId) {
+        localAssets.remove(assetId);
+        if (clusterEnable) {
+            redisService.removeFromCacheSet(NODE_SUBSCRIPTIONS_PREFIX + instanceId, assetId.toString());
+        }
+    }
+
+    /**
+     * 每30秒重新登記本地訂閱，避免實例存活時登記過期；已停止的實例登記會在過期後自動移除。
+     */
+    @Scheduled(fixedRate = 30000)
+    public void heartbeat() {
+        if (!clusterEnable) {
+            return;
+        }
+        redisService.addToCacheSet(NODES_KEY, instanceId, NODE_TTL_SECONDS);
+        localAssets.forEach(assetId -> redisService.addToCacheSet(NODE_SUBSCRIPTIONS_PREFIX + instanceId,
+                                                                  assetId.toString(),
+                                                                  NODE_TTL_SECONDS));
+    }
+
+    /**
+     * 取得全域訂閱的資產ID集合，未開啟叢集模式時僅為本地訂閱。
+     *
+     * @return 資產ID集合
+     */
+    public Set<Long> getGlobalSubscribedAssetIds() {
+        if (!clusterEnable) {
+            return new HashSet<>(localAssets);
+        }
+        Set<Long> assetIds = new HashSet<>(localAssets);
+        for (String nodeId : redisService.getCacheSetMembers(NODES_KEY)) {
+            Set<String> members = redisService.getCacheSetMembers(NODE_SUBSCRIPTIONS_PREFIX + nodeId);
+            if (members.isEmpty() && !nodeId.equals(instanceId)) {
+                redisService.removeFromCacheSet(NODES_KEY, nodeId);
+                continue;
+            }
+            members.forEach(member -> assetIds.add(Long.parseLong(member)));
+        }
+        return assetIds;
+    }
+
+    /**
+     * 嘗試取得叢集排程任務的執行權，確保同一時間只有一個實例執行。
+     * 未開啟叢集模式時總是回傳true。
+     *
+     * @param taskName 任務名稱
+     * @param seconds  執行權持有時間（單位：秒）
+     *
+     * @return 是否取得執行權
+     */
+    public boolean tryAcquireTask(String taskName, long seconds) {
+        return !clusterEnable || redisService.saveValueToCacheIfAbsent(LOCK_PREFIX + taskName, instanceId, seconds);
+    }
+}
@@ -0,0 +1,240 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+import xyz.dowob.stockweb.Enum.AssetType;
+import xyz.dowob.stockweb.Service.Crypto.CryptoInfluxService;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 偵測即時加密貨幣K線的缺口並自動補齊。
+ * 記錄每個交易對最後一根已收盤K線的時間，當收到的已收盤K線與上一根不連續，或串流連線重新連線時，
+ * 透過Binance REST的klines端點以平行批次取得缺少的1分鐘K線並寫入InfluxDB。
+ * 重新啟動後或尚未記錄過的交易對，以InfluxDB中最後一根K線判斷缺口，最多往前補齊crypto.backfill.max_hours小時。
+ * REST位址可由設定檔更改，以便連線到本地的測試伺服器。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineGapFillMethod
+ * @description
+ * @create 2026-10-18 23:50
+ * @Version 1.0
+ **/
+@Log4j2
+@Component
+public class KlineGapFillMethod {
+    private static final long INTERVAL_MILLIS = Duration.ofMinutes(1).toMillis();
+
+    private final CryptoInfluxService cryptoInfluxService;
+
+    private final KlineRingBufferMethod klineRingBufferMethod;
+
+    private final ObjectMapper objectMapper;
+
+    private final RestTemplate restTemplate;
+
+    private final Map<String, Long> lastClosedTimes = new ConcurrentHashMap<>();
+
+    private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+
+    private Semaphore permits;
+
+    @Value("${crypto.backfill.rest_url:https://api.binance.com}")
+    private String restUrl;
+
+    @Value("${crypto.backfill.batch_size:1000}")
+    private int batchSize;
+
+    @Value("${crypto.backfill.parallelism:4}")
+    private int parallelism;
+
+    @Value("${crypto.backfill.timeout_seconds:30}")
+    private long timeoutSeconds;
+
+    @Value("${crypto.backfill.max_hours:24}")
+    private long maxHours;
+
+    /**
+     * KlineGapFillMethod構造函數
+     *
+     * @param cryptoInfluxService   加密貨幣InfluxDB服務
+     * @param klineRingBufferMethod K線環形緩衝區方法
+     * @param objectMapper          JSON對象映射
+     * @param restTemplate          REST請求模板
+     */
+    public KlineGapFillMethod(CryptoInfluxService cryptoInfluxService, KlineRingBufferMethod klineRingBufferMethod, ObjectMapper objectMapper, RestTemplate restTemplate) {
+        this.cryptoInfluxService = cryptoInfluxService;
+        this.klineRingBufferMethod = klineRingBufferMethod;
+        this.objectMapper = objectMapper;
+        this.restTemplate = restTemplate;
+    }
+
+    /**
+     * 依設定的平行數量初始化REST請求的許可數
+     */
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(Math.max(parallelism, 1));
+    }
+
+    /**
+     * 記錄已收盤的K線，若與上一根已收盤K線之間有缺口則在背景補齊。
+     *
+     * @param klineEvent K線事件
+     */
+    public void recordKline(KlineEvent klineEvent) {
+        if (!klineEvent.closed()) {
+            return;
+        }
+        Long previous = lastClosedTimes.get(klineEvent.symbol());
+        lastClosedTimes.merge(klineEvent.symbol(), klineEvent.epochMillis(), Math::max);
+        if (previous == null) {
+            CompletableFuture.runAsync(() -> backfillFromStored(klineEvent.symbol(), klineEvent.epochMillis()), executorService);
+        } else if (klineEvent.epochMillis() - previous > INTERVAL_MILLIS) {
+            long start = previous + INTERVAL_MILLIS;
+            long end = klineEvent.epochMillis() - 1;
+            CompletableFuture.runAsync(() -> backfill(klineEvent.symbol(), start, end), executorService);
+        }
+    }
+
+    /**
+     * 補齊指定串流從最後一根已收盤K線至今的缺口，用於串流重新連線後、重新訂閱之前。
+     * 尚未記錄過的交易對改以InfluxDB中最後一根K線判斷缺口，超過設定時間仍未完成時回傳的Future也會完成，以免延遲即時資料。
+     *
+     * @param streams 串流名稱，如btcusdt@kline_1m
+     *
+     * @return 補齊完成或逾時後完成的Future
+     */
+    public CompletableFuture<Void> backfillStreams(Collection<String> streams) {
+        long now = System.currentTimeMillis();
+        long currentOpenTime = now - now % INTERVAL_MILLIS;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String stream : streams) {
+            String symbol = stream.substring(0, stream.indexOf('@') < 0 ? stream.length() : stream.indexOf('@')).toUpperCase();
+            Long lastClosed = lastClosedTimes.get(symbol);
+            if (lastClosed == null) {
+                futures.add(CompletableFuture.runAsync(() -> backfillFromStored(symbol, currentOpenTime), executorService));
+                continue;
+            }
+            if (currentOpenTime - lastClosed <= INTERVAL_MILLIS) {
+                continue;
+            }
+            long start = Math.max(lastClosed + INTERVAL_MILLIS, currentOpenTime - Duration.ofHours(maxHours).toMillis());
+            futures.add(CompletableFuture.runAsync(() -> backfill(symbol, start, currentOpenTime - 1), executorService));
+        }
+        if (futures.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).completeOnTimeout(null, timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 以InfluxDB中openTime之前最後一根K線判斷缺口並補齊，用於沒有記錄過最後已收盤K線的交易對。
+     * 只查詢crypto.backfill.max_hours小時內的資料；最後一根K線可能是尚未收盤時寫入的，因此從該K線開始重新取得。
+     * 區間內沒有任何資料時，補齊整個區間。
+     *
+     * @param symbol   交易對
+     * @param openTime 目前K線的開盤時間(毫秒，不包含)
+     */
+    private void backfillFromStored(String symbol, long openTime) {
+        long earliest = openTime - Duration.ofHours(maxHours).toMillis();
+        Long stored;
+        try {
+            stored = cryptoInfluxService.getLastKlineTime(symbol, earliest, openTime);
+        } catch (RuntimeException e) {
+            log.warn("查詢{}最後一根K線失敗: {}", symbol, e.getMessage());
+            return;
+        }
+        if (stored != null && openTime - stored <= INTERVAL_MILLIS) {
+            return;
+        }
+        backfill(symbol, stored != null ? stored : earliest, openTime - 1);
+    }
+
+    /**
+     * 以REST分批取得指定時間範圍內已收盤的1分鐘K線，並寫入InfluxDB與環形緩衝區。
+     * 補齊的K線比緩衝區中最新的K線更舊，環形緩衝區會依時間順序插入，即時圖表不會留下缺口。
+     *
+     * @param symbol 交易對
+     * @param start  開始時間(毫秒，包含)
+     * @param end    結束時間(毫秒，包含)
+     */
+    private void backfill(String symbol, long start, long end) {
+        long cursor = start;
+        int limit = Math.min(Math.max(batchSize, 1), 1000);
+        while (cursor <= end) {
+            List<KlineEvent> klineEvents;
+            try {
+                klineEvents = fetchKlines(symbol, cursor, end, limit);
+            } catch (IOException | RestClientException e) {
+                log.warn("補齊{}的K線缺口失敗: {}", symbol, e.getMessage());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (klineEvents.isEmpty()) {
+                return;
+            }
+            cryptoInfluxService.writeToInflux(klineEvents);
+            klineEvents.forEach(klineRingBufferMethod::append);
+            long lastOpenTime = klineEvents.getLast().epochMillis();
+            lastClosedTimes.merge(symbol, lastOpenTime, Math::max);
+            log.info("已補齊{}的K線缺口{}筆", symbol, klineEvents.size());
+            if (klineEvents.size() < limit) {
+                return;
+            }
+            cursor = lastOpenTime + INTERVAL_MILLIS;
+        }
+    }
+
+    private List<KlineEvent> fetchKlines(String symbol, long start, long end, int limit) throws IOException, InterruptedException {
+        String url = String.format("%s/api/v3/klines?symbol=%s&interval=1m&startTime=%d&endTime=%d&limit=%d", restUrl, symbol, start, end, limit);
+        String response;
+        permits.acquire();
+        try {
+            response = restTemplate.getForObject(url, String.class);
+        } finally {
+            permits.release();
+        }
+        List<KlineEvent> klineEvents = new ArrayList<>();
+        if (response == null) {
+            return klineEvents;
+        }
+        long now = System.currentTimeMillis();
+        for (JsonNode kline : objectMapper.readTree(response)) {
+            if (kline.path(6).asLong() >= now) {
+                continue;
+            }
+            klineEvents.add(new KlineEvent(symbol,
+                                           AssetType.CRYPTO,
+                                           kline.path(0).asLong(),
+                                           kline.path(1).asDouble(),
+                                           kline.path(2).asDouble(),
+                                           kline.path(3).asDouble(),
+                                           kline.path(4).asDouble(),
+                                           kline.path(5).asDouble(),
+                                           true));
+        }
+        return klineEvents;
+    }
+}
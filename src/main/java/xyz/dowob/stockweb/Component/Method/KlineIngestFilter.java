@@ -0,0 +1,62 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+import xyz.dowob.stockweb.Enum.KlineIngestMode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 依crypto.ingest.mode決定即時K線是否需要寫入InfluxDB。
+ * 未收盤的K線仍會轉發給即時觀看的用戶，只有寫入InfluxDB的次數會被減少。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineIngestFilter
+ * @description
+ * @create 2026-10-19 00:30
+ * @Version 1.0
+ **/
+@Component
+public class KlineIngestFilter {
+    private final Map<String, Long> lastWriteTimes = new ConcurrentHashMap<>();
+
+    @Value("${crypto.ingest.mode:CLOSED}")
+    private KlineIngestMode ingestMode;
+
+    @Value("${crypto.ingest.throttle_seconds:10}")
+    private long throttleSeconds;
+
+    /**
+     * 判斷K線事件是否需要寫入InfluxDB
+     *
+     * @param klineEvent K線事件
+     *
+     * @return 是否需要寫入
+     */
+    public boolean shouldPersist(KlineEvent klineEvent) {
+        return switch (ingestMode) {
+            case ALL -> true;
+            case CLOSED -> klineEvent.closed();
+            case THROTTLE -> {
+                if (klineEvent.closed()) {
+                    lastWriteTimes.remove(klineEvent.symbol());
+                    yield true;
+                }
+                long now = System.currentTimeMillis();
+                long throttleMillis = throttleSeconds * 1000;
+                boolean[] persist = {false};
+                lastWriteTimes.compute(klineEvent.symbol(), (symbol, lastWrite) -> {
+                    if (lastWrite == null || now - lastWrite >= throttleMillis) {
+                        persist[0] = true;
+                        return now;
+                    }
+                    return lastWrite;
+                });
+                yield persist[0];
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 將解析後的K線事件依交易對分派到各自的處理通道。
+ * 每個交易對有一個佇列，有資料時才以虛擬執行緒依序處理，確保同一交易對的K線順序不變，
+ * 而呼叫端(串流連線的讀取執行緒)只需放入佇列，不會因InfluxDB或Kafka的I/O而阻塞。
+ * 佇列超過上限時優先丟棄最舊的未收盤K線，因為它已被之後的更新取代。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineLaneDispatcher
+ * @description
+ * @create 2026-10-19 01:00
+ * @Version 1.0
+ **/
+@Log4j2
+@Component
+public class KlineLaneDispatcher {
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${crypto.ingest.lane_capacity:1024}")
+    private int laneCapacity;
+
+    /**
+     * 單一交易對的處理通道
+     */
+    private static class Lane {
+        private final Queue<KlineEvent> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+    }
+
+    /**
+     * 將K線事件放入所屬交易對的通道，若通道沒有在處理中則啟動一個虛擬執行緒處理。
+     *
+     * @param klineEvent K線事件
+     * @param sink       實際處理K線事件的方法
+     */
+    public void dispatch(KlineEvent klineEvent, Consumer<KlineEvent> sink) {
+        Lane lane = lanes.computeIfAbsent(klineEvent.symbol(), k -> new Lane());
+        lane.queue.offer(klineEvent);
+        if (lane.size.incrementAndGet() > laneCapacity) {
+            dropOldestInFlight(lane, klineEvent.symbol());
+        }
+        if (lane.draining.compareAndSet(false, true)) {
+            executorService.execute(() -> drain(lane, sink));
+        }
+    }
+
+    /**
+     * 依序處理通道內的K線事件，直到佇列為空。
+     * 結束前再次檢查佇列，避免在釋放處理權的同時有新事件放入而未被處理。
+     *
+     * @param lane 通道
+     * @param sink 實際處理K線事件的方法
+     */
+    private void drain(Lane lane, Consumer<KlineEvent> sink) {
+        do {
+            KlineEvent klineEvent;
+            while ((klineEvent = lane.queue.poll()) != null) {
+                lane.size.decrementAndGet();
+                try {
+                    sink.accept(klineEvent);
+                } catch (RuntimeException e) {
+                    log.warn("處理{}的K線事件失敗: {}", klineEvent.symbol(), e.getMessage());
+                }
+            }
+            lane.draining.set(false);
+        } while (!lane.queue.isEmpty() && lane.draining.compareAndSet(false, true));
+    }
+
+    private void dropOldestInFlight(Lane lane, String symbol) {
+        Iterator<KlineEvent> iterator = lane.queue.iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().closed()) {
+                iterator.remove();
+                lane.size.decrementAndGet();
+                log.warn("{}的K線處理通道已滿，丟棄最舊的未收盤K線", symbol);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 固定容量的K線資料環形緩衝區，資料存放於堆外記憶體(Direct ByteBuffer)。
+ * 每筆資料 48 bytes: 時間戳毫秒(long)、開盤價、最高價、最低價、收盤價、成交量(double)。
+ * 記憶體用量固定為 容量 * 48 bytes，且不受GC管理的堆記憶體影響。
+ * 相同時間戳的資料視為同一根K線的更新，會覆寫該筆資料；較舊的時間戳(如補齊的缺口)會依時間順序插入，
+ * 若緩衝區已滿且比最舊的資料更舊，則會被忽略。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineRingBuffer
+ * @description
+ * @create 2026-10-18 18:05
+ * @Version 1.0
+ **/
+public class KlineRingBuffer {
+    public static final int RECORD_SIZE = 48;
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private final ByteBuffer buffer;
+
+    private final int capacity;
+
+    private int head = 0;
+
+    private int size = 0;
+
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    /**
+     * 建立指定容量的K線資料環形緩衝區。
+     *
+     * @param capacity 可保存的K線筆數
+     */
+    public KlineRingBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.buffer = ByteBuffer.allocateDirect(this.capacity * RECORD_SIZE);
+    }
+
+    /**
+     * 加入一筆K線資料。
+     *
+     * @param timestamp 時間戳毫秒
+     * @param open      開盤價
+     * @param high      最高價
+     * @param low       最低價
+     * @param close     收盤價
+     * @param volume    成交量
+     */
+    public synchronized void append(long timestamp, double open, double high, double low, double close, double volume) {
+        if (timestamp < lastTimestamp) {
+            insert(timestamp, open, high, low, close, volume);
+            return;
+        }
+        int index;
+        if (timestamp == lastTimestamp && size > 0) {
+            index = (head + size - 1) % capacity;
+        } else if (size < capacity) {
+            index = (head + size) % capacity;
+            size++;
+        } else {
+            index = head;
+            head = (head + 1) % capacity;
+        }
+        write(index, timestamp, open, high, low, close, volume);
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * 依時間順序插入一筆比最新資料更舊的K線資料，以二分搜尋找到位置後，將較新的資料往後移動一格。
+     * 補齊缺口的資料量遠小於緩衝區容量，移動的成本可以接受。
+     *
+     * @param timestamp 時間戳毫秒
+     * @param open      開盤價
+     * @param high      最高價
+     * @param low       最低價
+     * @param close     收盤價
+     * @param volume    成交量
+     */
+    private void insert(long timestamp, double open, double high, double low, double close, double volume) {
+        int lowIndex = 0, highIndex = size;
+        while (lowIndex < highIndex) {
+            int mid = (lowIndex + highIndex) >>> 1;
+            if (buffer.getLong(physicalIndex(mid) * RECORD_SIZE) < timestamp) {
+                lowIndex = mid + 1;
+            } else {
+                highIndex = mid;
+            }
+        }
+        int position = lowIndex;
+        if (position < size && buffer.getLong(physicalIndex(position) * RECORD_SIZE) == timestamp) {
+            write(physicalIndex(position), timestamp, open, high, low, close, volume);
+            return;
+        }
+        if (size == capacity) {
+            if (position == 0) {
+                return;
+            }
+            head = (head + 1) % capacity;
+            size--;
+            position--;
+        }
+        for (int i = size; i > position; i--) {
+            buffer.put(physicalIndex(i) * RECORD_SIZE, buffer, physicalIndex(i - 1) * RECORD_SIZE, RECORD_SIZE);
+        }
+        size++;
+        write(physicalIndex(position), timestamp, open, high, low, close, volume);
+    }
+
+    private int physicalIndex(int logicalIndex) {
+        return (head + logicalIndex) % capacity;
+    }
+
+    private void write(int index, long timestamp, double open, double high, double low, double close, double volume) {
+        int offset = index * RECORD_SIZE;
+        buffer.putLong(offset, timestamp);
+        buffer.putDouble(offset + 8, open);
+        buffer.putDouble(offset + 16, high);
+        buffer.putDouble(offset + 24, low);
+        buffer.putDouble(offset + 32, close);
+        buffer.putDouble(offset + 40, volume);
+    }
+
+    /**
+     * 取得可保存的K線筆數。
+     *
+     * @return 緩衝區容量
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 取得目前保存的K線筆數。
+     *
+     * @return K線筆數
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 將緩衝區內的K線資料依時間順序複製為Big-Endian的連續位元組，每筆資料的格式與KlineBinaryEncoder的資料段相同，
+     * 可直接作為二進位訊框的內容，不需經過JSON序列化與解析。
+     *
+     * @return 依時間順序排列的K線資料位元組
+     */
+    public synchronized byte[] toBinaryRecords() {
+        byte[] records = new byte[size * RECORD_SIZE];
+        int firstPart = Math.min(size, capacity - head);
+        buffer.get(head * RECORD_SIZE, records, 0, firstPart * RECORD_SIZE);
+        buffer.get(0, records, firstPart * RECORD_SIZE, (size - firstPart) * RECORD_SIZE);
+        return records;
+    }
+
+    /**
+     * 將緩衝區內的K線資料依時間順序輸出為與Redis緩存相同格式的JSON陣列。
+     *
+     * @return JSON陣列的UTF-8位元組
+     */
+    public synchronized byte[] toJsonArray() {
+        StringBuilder builder = new StringBuilder(size * 160 + 2).append('[');
+        for (int i = 0; i < size; i++) {
+            int offset = ((head + i) % capacity) * RECORD_SIZE;
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"timestamp\":\"").append(FORMATTER.format(Instant.ofEpochMilli(buffer.getLong(offset)))).append('"');
+            appendValue(builder, "open", buffer.getDouble(offset + 8));
+            appendValue(builder, "high", buffer.getDouble(offset + 16));
+            appendValue(builder, "low", buffer.getDouble(offset + 24));
+            appendValue(builder, "close", buffer.getDouble(offset + 32));
+            appendValue(builder, "volume", buffer.getDouble(offset + 40));
+            builder.append('}');
+        }
+        return builder.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void appendValue(StringBuilder builder, String field, double value) {
+        builder.append(",\"").append(field).append("\":");
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            builder.append("null");
+        } else {
+            builder.append('"').append(BigDecimal.valueOf(value).toPlainString()).append('"');
+        }
+    }
+}
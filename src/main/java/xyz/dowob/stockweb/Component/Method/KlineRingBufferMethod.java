@@ -0,0 +1,277 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+import xyz.dowob.stockweb.Enum.AssetType;
+import xyz.dowob.stockweb.Model.Common.Asset;
+import xyz.dowob.stockweb.Model.Crypto.CryptoTradingPair;
+import xyz.dowob.stockweb.Model.Currency.Currency;
+import xyz.dowob.stockweb.Model.Stock.StockTw;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 管理已訂閱資產的堆外K線環形緩衝區。
+ * 緩衝區在資產第一次被訂閱時建立，並以Redis中的即時K線緩存作為初始資料，之後由即時資料的接收端直接寫入。
+ * 新的連線與重新連線可直接從記憶體取得近期K線，不需再讀取Redis或InfluxDB。
+ * 加密貨幣的緩衝區容量依即時資料的保存天數計算(每分鐘一根K線)，其他資產使用websocket.kline.ring_buffer_capacity；
+ * 若初始資料超過緩衝區容量，代表緩衝區無法涵蓋完整的即時資料範圍，該資產改由Redis提供資料，不使用緩衝區。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineRingBufferMethod
+ * @description
+ * @create 2026-10-18 18:20
+ * @Version 1.0
+ **/
+@Log4j2
+@Component
+public class KlineRingBufferMethod {
+    private final Map<Long, KlineRingBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> assetNames = new ConcurrentHashMap<>();
+
+    private final Set<Long> seededAssets = ConcurrentHashMap.newKeySet();
+
+    private final Set<Long> uncoveredAssets = ConcurrentHashMap.newKeySet();
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Value("${websocket.kline.ring_buffer_capacity:20160}")
+    private int capacity;
+
+    @Value("${db.influxdb.bucket.crypto_current.remain_day:14}")
+    private int cryptoCurrentRemainDay;
+
+    /**
+     * 註冊資產並建立環形緩衝區，若已存在則不重複建立。
+     *
+     * @param asset 資產
+     */
+    public void register(Asset asset) {
+        buffers.computeIfAbsent(asset.getId(), k -> new KlineRingBuffer(getCapacity(asset.getAssetType())));
+        String assetName = switch (asset) {
+            case CryptoTradingPair cryptoTradingPair -> cryptoTradingPair.getTradingPair();
+            case StockTw stockTw -> stockTw.getStockCode();
+            case Currency currency -> currency.getCurrency();
+            default -> null;
+        };
+        if (assetName != null) {
+            assetNames.put(assetName, asset.getId());
+        }
+    }
+
+    /**
+     * 取得資產類型的緩衝區容量，加密貨幣依即時資料保存天數計算，使緩衝區涵蓋完整的即時資料範圍。
+     *
+     * @param assetType 資產類型
+     *
+     * @return 緩衝區容量
+     */
+    private int getCapacity(AssetType assetType) {
+        if (assetType == AssetType.CRYPTO) {
+            return Math.max(capacity, cryptoCurrentRemainDay * 24 * 60);
+        }
+        return capacity;
+    }
+
+    /**
+     * 釋放資產的環形緩衝區。
+     *
+     * @param assetId 資產ID
+     */
+    public void release(Long assetId) {
+        buffers.remove(assetId);
+        seededAssets.remove(assetId);
+        uncoveredAssets.remove(assetId);
+        assetNames.values().removeIf(assetId::equals);
+    }
+
+    /**
+     * 以Redis中的K線緩存JSON陣列作為緩衝區的初始資料，僅在第一次取得緩存時執行。
+     * 若資料筆數超過緩衝區容量，則標記該資產不使用緩衝區，避免只提供被截斷的近期資料。
+     *
+     * @param assetId 資產ID
+     * @param json    K線緩存JSON陣列的UTF-8位元組
+     */
+    public void seed(Long assetId, byte[] json) {
+        KlineRingBuffer buffer = buffers.get(assetId);
+        if (buffer == null || !seededAssets.add(assetId)) {
+            return;
+        }
+        try {
+            List<double[]> records = parseRecords(json);
+            if (records.size() > buffer.capacity()) {
+                log.debug("K線資料筆數{}超過環形緩衝區容量{}，資產{}改由Redis提供資料", records.size(), buffer.capacity(), assetId);
+                uncoveredAssets.add(assetId);
+                return;
+            }
+            records.forEach(r -> buffer.append((long) r[0], r[1], r[2], r[3], r[4], r[5]));
+        } catch (IOException | RuntimeException e) {
+            log.warn("K線環形緩衝區初始化失敗: {}", e.getMessage());
+            seededAssets.remove(assetId);
+        }
+    }
+
+    /**
+     * 將K線JSON陣列中的資料合併進已初始化的環形緩衝區，較舊的資料會依時間順序插入。
+     * 用於未直接接收即時資料的節點，以定時查詢到的新增資料更新緩衝區。
+     *
+     * @param assetId 資產ID
+     * @param json    K線JSON陣列的UTF-8位元組
+     */
+    public void merge(Long assetId, byte[] json) {
+        KlineRingBuffer buffer = buffers.get(assetId);
+        if (buffer == null || !isCovered(assetId)) {
+            return;
+        }
+        try {
+            parseRecords(json).forEach(r -> buffer.append((long) r[0], r[1], r[2], r[3], r[4], r[5]));
+        } catch (IOException | RuntimeException e) {
+            log.warn("K線環形緩衝區合併失敗: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 以串流方式解析K線JSON陣列，並依時間排序。
+     *
+     * @param json K線JSON陣列的UTF-8位元組
+     *
+     * @return 依時間排序的K線資料 [時間戳, 開盤價, 最高價, 最低價, 收盤價, 成交量]
+     *
+     * @throws IOException 解析JSON失敗時拋出
+     */
+    private List<double[]> parseRecords(byte[] json) throws IOException {
+        List<double[]> records = new ArrayList<>();
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            double[] record = null;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_OBJECT) {
+                    record = new double[]{Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+                } else if (token == JsonToken.FIELD_NAME && record != null) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    String text = parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+                    if (text == null) {
+                        continue;
+                    }
+                    switch (field) {
+                        case "timestamp" -> record[0] = Instant.parse(text).toEpochMilli();
+                        case "open" -> record[1] = Double.parseDouble(text);
+                        case "high" -> record[2] = Double.parseDouble(text);
+                        case "low" -> record[3] = Double.parseDouble(text);
+                        case "close" -> record[4] = Double.parseDouble(text);
+                        case "volume" -> record[5] = Double.parseDouble(text);
+                        default -> {
+                        }
+                    }
+                } else if (token == JsonToken.END_OBJECT && record != null) {
+                    if (!Double.isNaN(record[0])) {
+                        records.add(record);
+                    }
+                    record = null;
+                }
+            }
+        }
+        records.sort(Comparator.comparingDouble(r -> r[0]));
+        return records;
+    }
+
+    /**
+     * 將接收端的K線事件寫入對應資產的環形緩衝區，未被訂閱的資產會被略過。
+     *
+     * @param klineEvent K線事件，以資產名稱對應資產
+     */
+    public void append(KlineEvent klineEvent) {
+        Long assetId = assetNames.get(klineEvent.symbol());
+        if (assetId == null || !isCovered(assetId)) {
+            return;
+        }
+        append(assetId, klineEvent);
+    }
+
+    /**
+     * 將K線事件寫入指定資產的環形緩衝區。
+     *
+     * @param assetId    資產ID
+     * @param klineEvent K線事件
+     */
+    public void append(Long assetId, KlineEvent klineEvent) {
+        KlineRingBuffer buffer = buffers.get(assetId);
+        if (buffer == null || !isCovered(assetId)) {
+            return;
+        }
+        buffer.append(klineEvent.epochMillis(),
+                      klineEvent.open(),
+                      klineEvent.high(),
+                      klineEvent.low(),
+                      klineEvent.close(),
+                      klineEvent.volume());
+    }
+
+    /**
+     * 依資產名稱取得已被訂閱且緩衝區已初始化的資產ID
+     *
+     * @param assetName 資產名稱
+     *
+     * @return 資產ID，未被訂閱時回傳null
+     */
+    public Long getSubscribedAssetId(String assetName) {
+        Long assetId = assetNames.get(assetName);
+        return assetId != null && isCovered(assetId) ? assetId : null;
+    }
+
+    /**
+     * 取得資產環形緩衝區內的K線資料，若緩衝區尚未初始化或沒有資料則回傳null。
+     *
+     * @param assetId 資產ID
+     *
+     * @return 與Redis緩存相同格式的JSON陣列位元組
+     */
+    public byte[] getKlineData(Long assetId) {
+        KlineRingBuffer buffer = buffers.get(assetId);
+        if (buffer == null || !isCovered(assetId) || buffer.size() == 0) {
+            return null;
+        }
+        return buffer.toJsonArray();
+    }
+
+    /**
+     * 取得資產環形緩衝區內的K線資料，格式為KlineBinaryEncoder的資料段，若緩衝區尚未初始化或沒有資料則回傳null。
+     *
+     * @param assetId 資產ID
+     *
+     * @return 依時間順序排列的K線資料位元組
+     */
+    public byte[] getBinaryRecords(Long assetId) {
+        KlineRingBuffer buffer = buffers.get(assetId);
+        if (buffer == null || !isCovered(assetId) || buffer.size() == 0) {
+            return null;
+        }
+        return buffer.toBinaryRecords();
+    }
+
+    /**
+     * 資產的緩衝區是否已初始化，且涵蓋完整的即時資料範圍
+     *
+     * @param assetId 資產ID
+     *
+     * @return 是否可使用緩衝區
+     */
+    private boolean isCovered(Long assetId) {
+        return seededAssets.contains(assetId) && !uncoveredAssets.contains(assetId);
+    }
+}
@@ -0,0 +1,120 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import xyz.dowob.stockweb.Enum.AssetType;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以資產ID為鍵的最新價格快取，由即時資料的寫入流程直接更新。
+ * 讀寫皆不加鎖，更新以CAS比較事件時間，較舊的事件不會覆蓋較新的價格。
+ * 超過db.influxdb.latest_price.max_age_ms未更新的價格視為過期，由AssetInfluxMethod改從InfluxDB查詢後回填。
+ * 即時資料只帶有資產標識，需先經由register建立資產標識與資產ID的對應，未對應的資產標識不會被快取。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName LatestPriceCacheMethod
+ * @description
+ * @create 2026-10-19 04:10
+ * @Version 1.0
+ **/
+@Component
+public class LatestPriceCacheMethod {
+    private final Map<Long, LatestPrice> prices = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> assetIds = new ConcurrentHashMap<>();
+
+    @Value("${db.influxdb.latest_price.max_age_ms:120000}")
+    private long maxAgeMillis;
+
+    /**
+     * 快取的價格
+     *
+     * @param price      價格
+     * @param eventTime  價格的事件時間，用於判斷先後
+     * @param updateTime 寫入快取的時間，用於判斷是否過期
+     */
+    private record LatestPrice(double price, long eventTime, long updateTime) {}
+
+    /**
+     * 建立資產標識與資產ID的對應
+     *
+     * @param assetType 資產類型
+     * @param symbol    資產標識，如交易對、股票代碼或貨幣代碼
+     * @param assetId   資產ID
+     */
+    public void register(AssetType assetType, String symbol, Long assetId) {
+        assetIds.putIfAbsent(symbolKey(assetType, symbol), assetId);
+    }
+
+    /**
+     * 以資產標識更新最新價格，資產標識尚未對應資產ID時不做任何事
+     *
+     * @param assetType 資產類型
+     * @param symbol    資產標識
+     * @param price     價格
+     * @param eventTime 事件時間(毫秒)
+     */
+    public void update(AssetType assetType, String symbol, double price, long eventTime) {
+        Long assetId = assetIds.get(symbolKey(assetType, symbol));
+        if (assetId != null) {
+            update(assetId, price, eventTime);
+        }
+    }
+
+    /**
+     * 以資產ID更新最新價格，事件時間早於目前快取的價格時不會覆蓋
+     *
+     * @param assetId   資產ID
+     * @param price     價格
+     * @param eventTime 事件時間(毫秒)
+     */
+    public void update(Long assetId, double price, long eventTime) {
+        if (!Double.isFinite(price)) {
+            return;
+        }
+        LatestPrice latestPrice = new LatestPrice(price, eventTime, System.currentTimeMillis());
+        while (true) {
+            LatestPrice current = prices.putIfAbsent(assetId, latestPrice);
+            if (current == null || current.eventTime() > eventTime || prices.replace(assetId, current, latestPrice)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 以InfluxDB查詢的結果回填最新價格，會保留原本的事件時間，讓之後的即時資料仍可覆蓋
+     *
+     * @param assetId 資產ID
+     * @param price   價格
+     */
+    public void refresh(Long assetId, double price) {
+        if (!Double.isFinite(price)) {
+            return;
+        }
+        prices.compute(assetId,
+                       (id, current) -> new LatestPrice(price, current == null ? 0 : current.eventTime(), System.currentTimeMillis()));
+    }
+
+    /**
+     * 取得未過期的最新價格
+     *
+     * @param assetId 資產ID
+     *
+     * @return 最新價格，沒有快取或已過期時回傳null
+     */
+    public BigDecimal get(Long assetId) {
+        LatestPrice latestPrice = prices.get(assetId);
+        if (latestPrice == null || System.currentTimeMillis() - latestPrice.updateTime() > maxAgeMillis) {
+            return null;
+        }
+        return BigDecimal.valueOf(latestPrice.price());
+    }
+
+    private String symbolKey(AssetType assetType, String symbol) {
+        return assetType + ":" + symbol;
+    }
+}
@@ -0,0 +1,137 @@
+package xyz.dowob.stockweb.Component.Method;
+
+/**
+ * 將資料直接編碼為InfluxDB line protocol的編碼器，用於大量歷史資料的寫入。
+ * 量測名稱、標籤、欄位與時間戳直接寫入可重複使用的StringBuilder，不建立Point物件，也不會將數值裝箱，
+ * 累積的多行資料以單一字串交給WriteApi寫入後即可清空重複使用。
+ * 沒有任何合法欄位的行不符合line protocol，會在結束時被捨棄。
+ * 此類別不是執行緒安全的，每個寫入流程應使用各自的實例。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName LineProtocolEncoder
+ * @description
+ * @create 2026-10-19 02:20
+ * @Version 1.0
+ **/
+public class LineProtocolEncoder {
+    private final StringBuilder builder;
+
+    private int lines = 0;
+
+    private int lineStart = 0;
+
+    private boolean firstField = true;
+
+    /**
+     * LineProtocolEncoder構造函數
+     *
+     * @param expectedLines 預期的行數，用於預先配置緩衝區大小
+     */
+    public LineProtocolEncoder(int expectedLines) {
+        this.builder = new StringBuilder(Math.max(expectedLines, 1) * 128);
+    }
+
+    /**
+     * 開始新的一行並寫入量測名稱
+     *
+     * @param measurement 量測名稱
+     *
+     * @return 編碼器本身
+     */
+    public LineProtocolEncoder measurement(String measurement) {
+        lineStart = builder.length();
+        if (!builder.isEmpty()) {
+            builder.append('\n');
+        }
+        appendEscaped(measurement, false);
+        firstField = true;
+        return this;
+    }
+
+    /**
+     * 寫入標籤，需在欄位之前呼叫
+     *
+     * @param key   標籤名稱
+     * @param value 標籤值
+     *
+     * @return 編碼器本身
+     */
+    public LineProtocolEncoder tag(String key, String value) {
+        builder.append(',');
+        appendEscaped(key, true);
+        builder.append('=');
+        appendEscaped(value, true);
+        return this;
+    }
+
+    /**
+     * 寫入浮點數欄位，NaN與無限大不屬於合法的line protocol數值，會被略過
+     *
+     * @param key   欄位名稱
+     * @param value 欄位值
+     *
+     * @return 編碼器本身
+     */
+    public LineProtocolEncoder field(String key, double value) {
+        if (!Double.isFinite(value)) {
+            return this;
+        }
+        builder.append(firstField ? ' ' : ',');
+        firstField = false;
+        appendEscaped(key, true);
+        builder.append('=').append(value);
+        return this;
+    }
+
+    /**
+     * 寫入時間戳並結束這一行，若這一行沒有任何欄位(如全部為NaN)則捨棄整行
+     *
+     * @param timestamp 時間戳，精度需與寫入時指定的WritePrecision一致
+     */
+    public void time(long timestamp) {
+        if (firstField) {
+            builder.setLength(lineStart);
+            return;
+        }
+        builder.append(' ').append(timestamp);
+        lines++;
+    }
+
+    /**
+     * 取得目前累積的行數
+     *
+     * @return 行數
+     */
+    public int size() {
+        return lines;
+    }
+
+    /**
+     * 取出目前累積的line protocol並清空緩衝區
+     *
+     * @return 以換行分隔的line protocol
+     */
+    public String drain() {
+        String records = builder.toString();
+        builder.setLength(0);
+        lines = 0;
+        return records;
+    }
+
+    /**
+     * 依line protocol規則跳脫特殊字元，量測名稱需跳脫逗號與空白，標籤與欄位名稱還需跳脫等號
+     *
+     * @param value       要寫入的字串
+     * @param escapeEqual 是否跳脫等號
+     */
+    private void appendEscaped(String value, boolean escapeEqual) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == ' ' || (escapeEqual && c == '=')) {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+    }
+}
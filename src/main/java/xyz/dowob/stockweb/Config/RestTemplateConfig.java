@@ -0,0 +1,26 @@
+package xyz.dowob.stockweb.Config;
+
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * @author yuan
+ * RestTemplate設定
+ * 提供共用的RestTemplate, 以便注入並在測試中替換為本地測試伺服器
+ */
+@Configuration
+public class RestTemplateConfig {
+    /**
+     * 創建共用的RestTemplate
+     *
+     * @param restTemplateBuilder RestTemplate建構器
+     *
+     * @return RestTemplate
+     */
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder) {
+        return restTemplateBuilder.build();
+    }
+}
@@ -3,8 +3,6 @@ package xyz.dowob.stockweb.Config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.web.socket.client.WebSocketConnectionManager;
-import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
@@ -30,22 +28,6 @@ public class WebSocketConfig implements WebSocketConfigurer {
         taskScheduler.initialize();
     }
 
-    /**
-     * 創建WebSocketConnectionManager
-     *
-     * @param cryptoWebSocketHandler CryptoWebSocketHandler
-     *
-     * @return WebSocketConnectionManager
-     */
-    @Bean
-    public WebSocketConnectionManager wsConnectionManager(CryptoWebSocketHandler cryptoWebSocketHandler) {
-        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
-        String url = "wss://stream.binance.com:9443/stream?streams=";
-        WebSocketConnectionManager connectionManager = new WebSocketConnectionManager(webSocketClient, cryptoWebSocketHandler, url);
-        connectionManager.setAutoStartup(false);
-        return connectionManager;
-    }
-
     /**
      * 創建ThreadPoolTaskScheduler
      *
@@ -43,7 +43,7 @@ public class ApiAssetController {
     }
 
     /**
-     * 取得資產資訊, 並存入Redis
+     * 取得資產資訊, 統計數據取自定時計算的快照, 只需轉換為用戶偏好的幣別
      *
      * @param assetId 資產ID
      * @param session HttpSession
@@ -56,7 +56,7 @@ public class ApiAssetController {
         try {
             User user = userService.getUserFromJwtTokenOrSession(session);
             Asset asset = assetService.getAssetById(assetId);
-            List<String> cachedAssetJson = assetService.getAssetStatisticsAndSaveToRedis(asset);
+            List<String> cachedAssetJson = assetService.getAssetStatistics(asset);
             return ResponseEntity.ok().body(assetService.formatRedisAssetInfoCacheToJson(cachedAssetJson, asset, user));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("發生錯誤: " + e.getMessage());
@@ -0,0 +1,40 @@
+package xyz.dowob.stockweb.Dto.Common;
+
+import xyz.dowob.stockweb.Enum.AssetType;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 即時K線事件，由接收端產生並直接傳遞至Kafka、InfluxDB與環形緩衝區。
+ * 1. symbol: 資產代號(交易對或股票代碼)
+ * 2. assetType: 資產類型
+ * 3. epochMillis: K線時間(毫秒)
+ * 4. open/high/low/close/volume: 開高低收與成交量
+ * 5. closed: 該K線是否已收盤
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineEvent
+ * @description
+ * @create 2026-10-18 22:40
+ * @Version 1.0
+ **/
+public record KlineEvent(String symbol, AssetType assetType, long epochMillis, double open, double high, double low, double close,
+                         double volume, boolean closed) implements Serializable {
+    /**
+     * 轉換為發送給前端的AssetKlineDataDto格式，數值以不含科學記號的字串表示。
+     *
+     * @return AssetKlineDataDto
+     */
+    public AssetKlineDataDto toAssetKlineDataDto() {
+        AssetKlineDataDto assetKlineDataDto = new AssetKlineDataDto();
+        assetKlineDataDto.setTimestamp(String.valueOf(epochMillis));
+        assetKlineDataDto.setOpen(BigDecimal.valueOf(open).toPlainString());
+        assetKlineDataDto.setHigh(BigDecimal.valueOf(high).toPlainString());
+        assetKlineDataDto.setLow(BigDecimal.valueOf(low).toPlainString());
+        assetKlineDataDto.setClose(BigDecimal.valueOf(close).toPlainString());
+        assetKlineDataDto.setVolume(BigDecimal.valueOf(volume).toPlainString());
+        return assetKlineDataDto;
+    }
+}
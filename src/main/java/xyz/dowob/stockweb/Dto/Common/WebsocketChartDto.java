@@ -21,4 +21,8 @@ public class WebsocketChartDto implements Serializable {
     private String type;
 
     private BigDecimal preferCurrencyExrate;
+
+    private Integer chunk;
+
+    private Boolean hasMore;
 }
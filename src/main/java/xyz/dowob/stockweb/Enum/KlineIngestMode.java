@@ -0,0 +1,14 @@
+package xyz.dowob.stockweb.Enum;
+
+/**
+ * @author yuan
+ * 即時K線寫入InfluxDB的模式
+ * 1. ALL: 每一筆更新都寫入
+ * 2. CLOSED: 僅寫入已收盤的K線
+ * 3. THROTTLE: 已收盤的K線必定寫入，未收盤的K線每個交易對每N秒最多寫入一次
+ */
+public enum KlineIngestMode {
+    ALL,
+    CLOSED,
+    THROTTLE
+}
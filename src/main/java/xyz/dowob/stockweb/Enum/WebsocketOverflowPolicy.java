@@ -0,0 +1,14 @@
+package xyz.dowob.stockweb.Enum;
+
+/**
+ * @author yuan
+ * websocket發送佇列溢出處理策略
+ * 1. DROP: 丟棄最舊的中間K線資料
+ * 2. CLOSE: 關閉處理過慢的連線
+ * 3. COALESCE: 僅保留最新一筆K線資料
+ */
+public enum WebsocketOverflowPolicy {
+    DROP,
+    CLOSE,
+    COALESCE
+}
@@ -21,6 +21,7 @@ import org.springframework.web.client.RestTemplate;
 import xyz.dowob.stockweb.Component.Annotation.MeaninglessData;
 import xyz.dowob.stockweb.Component.Handler.AssetHandler;
 import xyz.dowob.stockweb.Component.Method.AssetInfluxMethod;
+import xyz.dowob.stockweb.Component.Method.AssetStatisticsSnapshotMethod;
 import xyz.dowob.stockweb.Component.Method.AssetTrie.Trie;
 import xyz.dowob.stockweb.Dto.Common.AssetKlineDataDto;
 import xyz.dowob.stockweb.Dto.Common.AssetListDto;
@@ -40,18 +41,23 @@ import xyz.dowob.stockweb.Repository.StockTW.StockTwRepository;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static xyz.dowob.stockweb.Exception.AssetExceptions.ErrorEnum.*;
 import static xyz.dowob.stockweb.Exception.FormatExceptions.ErrorEnum.*;
@@ -78,19 +84,22 @@ public class AssetService {
 
     private final CryptoRepository cryptoRepository;
 
+    private final AssetStatisticsSnapshotMethod assetStatisticsSnapshotMethod;
+
     /**
      * AssetService建構子
      *
-     * @param assetRepository    資產資料庫操作介面
-     * @param assetInfluxMethod  資產InfluxDB相關方法
-     * @param objectMapper       JSON轉換物件
-     * @param redisService       Redis緩存相關服務
-     * @param assetHandler       資產處理器
-     * @param currencyRepository 貨幣資料庫操作介面
-     * @param stockTwRepository  台股資料庫操作介面
-     * @param cryptoRepository   加密貨幣資料庫操作介面
+     * @param assetRepository               資產資料庫操作介面
+     * @param assetInfluxMethod             資產InfluxDB相關方法
+     * @param objectMapper                  JSON轉換物件
+     * @param redisService                  Redis緩存相關服務
+     * @param assetHandler                  資產處理器
+     * @param currencyRepository            貨幣資料庫操作介面
+     * @param stockTwRepository             台股資料庫操作介面
+     * @param cryptoRepository              加密貨幣資料庫操作介面
+     * @param assetStatisticsSnapshotMethod 資產統計快照
      */
-    public AssetService(AssetRepository assetRepository, AssetInfluxMethod assetInfluxMethod, ObjectMapper objectMapper, RedisService redisService, AssetHandler assetHandler, CurrencyRepository currencyRepository, StockTwRepository stockTwRepository, CryptoRepository cryptoRepository) {
+    public AssetService(AssetRepository assetRepository, AssetInfluxMethod assetInfluxMethod, ObjectMapper objectMapper, RedisService redisService, AssetHandler assetHandler, CurrencyRepository currencyRepository, StockTwRepository stockTwRepository, CryptoRepository cryptoRepository, AssetStatisticsSnapshotMethod assetStatisticsSnapshotMethod) {
         this.assetRepository = assetRepository;
         this.assetInfluxMethod = assetInfluxMethod;
         this.objectMapper = objectMapper;
@@ -99,6 +108,7 @@ public class AssetService {
         this.currencyRepository = currencyRepository;
         this.stockTwRepository = stockTwRepository;
         this.cryptoRepository = cryptoRepository;
+        this.assetStatisticsSnapshotMethod = assetStatisticsSnapshotMethod;
         this.objectMapper.registerModule(new JavaTimeModule());
     }
 
@@ -117,9 +127,84 @@ public class AssetService {
     @Value("${common.global_page_size:100}")
     private int pageSize;
 
-    public Map<String, List<FluxTable>> getAssetKlineData(Long assetId, String type, String timestamp) throws AssetExceptions {
+    @Value("${websocket.kline.stream_chunk_rows:1000}")
+    private int klineStreamChunkRows;
+
+    @Value("${websocket.kline.blob_compress:false}")
+    private boolean klineBlobCompress;
+
+    private static final int KLINE_BLOB_EXPIRE_HOURS = 48;
+
+    /**
+     * 串流查詢資產自指定時間以來的K線資料。
+     * 每累積websocket.kline.stream_chunk_rows筆就格式化為一段JSON交給onChunk處理，記憶體用量只與分段大小有關。
+     *
+     * @param assetId   資產Id
+     * @param type      查詢類型
+     * @param timestamp 起始時間，為null時使用預設起始時間
+     * @param onChunk   每一段資料的處理方法，參數為[K線JSON, 最後時間點]
+     *
+     * @return 查詢到的K線資料筆數
+     *
+     * @throws AssetExceptions 資產不存在時拋出
+     */
+    public long streamAssetKlineData(Long assetId, String type, String timestamp, Consumer<List<String>> onChunk) throws AssetExceptions {
         Asset asset = getAssetById(assetId);
-        return assetInfluxMethod.queryByAsset(asset, "history".equals(type), timestamp);
+        KlineChunkWriter writer = new KlineChunkWriter(onChunk);
+        assetInfluxMethod.streamByAsset(asset, "history".equals(type), timestamp, writer);
+        return writer.finish();
+    }
+
+    /**
+     * 批次查詢多個資產自各自最後更新時間以來的K線資料。
+     * 資產一次從資料庫取出，並依資料庫分組後每組只執行一次Flux查詢。
+     *
+     * @param assetTimestamps 資產Id與其最後更新時間，最後更新時間為null時使用預設起始時間
+     * @param type            查詢類型
+     *
+     * @return 資料表 {assetId + "_history/current", FluxTable}
+     */
+    public Map<String, List<FluxTable>> getAssetsKlineData(Map<Long, String> assetTimestamps, String type) {
+        Map<Asset, String> assetStarts = new HashMap<>();
+        assetRepository.findAllById(assetTimestamps.keySet()).forEach(asset -> assetStarts.put(asset, assetTimestamps.get(asset.getId())));
+        if (assetStarts.isEmpty()) {
+            return new HashMap<>();
+        }
+        return assetInfluxMethod.queryByAssets(assetStarts, "history".equals(type));
+    }
+
+    /**
+     * 串流查詢資產在指定時間區間內的K線資料，用於分段傳輸。
+     *
+     * @param assetId 資產Id
+     * @param type    查詢類型
+     * @param start   起始時間(RFC3339格式)
+     * @param stop    結束時間(RFC3339格式)
+     * @param onChunk 每一段資料的處理方法，參數為[K線JSON, 最後時間點]
+     *
+     * @return 查詢到的K線資料筆數
+     *
+     * @throws AssetExceptions 資產不存在時拋出
+     */
+    public long streamAssetKlineData(Long assetId, String type, String start, String stop, Consumer<List<String>> onChunk) throws AssetExceptions {
+        Asset asset = getAssetById(assetId);
+        KlineChunkWriter writer = new KlineChunkWriter(onChunk);
+        assetInfluxMethod.streamByAssetRange(asset, "history".equals(type), start, stop, writer);
+        return writer.finish();
+    }
+
+    /**
+     * 取得資產K線資料的最早查詢時間。
+     *
+     * @param assetId 資產Id
+     * @param type    查詢類型
+     *
+     * @return 最早查詢時間
+     *
+     * @throws AssetExceptions 資產不存在時拋出
+     */
+    public LocalDateTime getKlineDateline(Long assetId, String type) throws AssetExceptions {
+        return assetInfluxMethod.getKlineDateline(getAssetById(assetId), "history".equals(type));
     }
 
     /**
@@ -134,11 +219,23 @@ public class AssetService {
      * @return 是否有數據
      */
     public boolean checkNewDataMethod(Long assetId, String type, Map<String, List<FluxTable>> tableMap) throws RepositoryExceptions {
+        return checkNewDataMethod(assetId, type, !tableMap.get("%s_%s".formatted(assetId, type)).isEmpty());
+    }
+
+    /**
+     * 當資產歷史數據判斷邏輯，用於串流查詢後已知是否有資料的情況
+     *
+     * @param assetId 資產Id
+     * @param type    查詢類型
+     * @param hasData 是否查詢到資料
+     *
+     * @return 是否有數據
+     */
+    public boolean checkNewDataMethod(Long assetId, String type, boolean hasData) throws RepositoryExceptions {
         String hashInnerKey = String.format("%s_%s:", type, assetId);
         String listKey = String.format("kline_%s", hashInnerKey);
-        if (tableMap.get("%s_%s".formatted(assetId, type)).isEmpty()) {
-            List<String> listCache = redisService.getCacheListValueFromKey(listKey + "data");
-            if (listCache.isEmpty()) {
+        if (!hasData) {
+            if (redisService.getCacheListSize(listKey + "data") == 0 && !redisService.hasKey(listKey + "blob")) {
                 redisService.saveHashToCache("kline", hashInnerKey + "status", "no_data", 48);
                 return false;
             }
@@ -158,17 +255,239 @@ public class AssetService {
     @MeaninglessData
     public void saveAssetInfoToRedis(Map<String, List<FluxTable>> tableMap, String key, String hashInnerKey) {
         try {
-            redisService.saveHashToCache("kline", hashInnerKey + "status", "processing", 48);
-            List<String> klineDataMap = formatKlineTableByTime(tableMap);
-            redisService.rPushToCacheList(key + "data", klineDataMap.getFirst(), 24);
-            redisService.saveHashToCache("kline", hashInnerKey + "last_timestamp", klineDataMap.get(1), 48);
-            redisService.saveHashToCache("kline", hashInnerKey + "status", "success", 48);
+            saveKlineDataToRedis(formatKlineTableByTime(tableMap), key, hashInnerKey);
         } catch (Exception e) {
             redisService.saveHashToCache("kline", hashInnerKey + "status", "fail", 48);
             throw new FormatExceptions(ASSET_FORMAT_ERROR, tableMap);
         }
     }
 
+    /**
+     * 將已格式化的K線資料存儲到Redis中。
+     * 最後更新時間只會往後推進，分段傳輸時先存入較新的資料也不會被較舊的分段覆蓋。
+     *
+     * @param klineData    formatKlineTableByTime的結果 [K線JSON, 最後時間點]
+     * @param key          緩存鍵。
+     * @param hashInnerKey 緩存內部鍵。
+     */
+    public void saveKlineDataToRedis(List<String> klineData, String key, String hashInnerKey) {
+        redisService.saveHashToCache("kline", hashInnerKey + "status", "processing", 48);
+        redisService.rPushToCacheList(key + "data", klineData.getFirst(), 24);
+        String lastTimestamp = klineData.get(1);
+        String savedTimestamp = redisService.getHashValueFromKey("kline", hashInnerKey + "last_timestamp");
+        if (lastTimestamp != null && (savedTimestamp == null || savedTimestamp.compareTo(lastTimestamp) < 0)) {
+            redisService.saveHashToCache("kline", hashInnerKey + "last_timestamp", lastTimestamp, 48);
+        }
+        redisService.saveHashToCache("kline", hashInnerKey + "status", "success", 48);
+    }
+
+    /**
+     * 清除資產K線圖快取，於從頭載入完整資料前呼叫，避免中斷的載入所留下的部分資料與新資料重複。
+     *
+     * @param assetId 資產ID
+     * @param type    查詢類型
+     */
+    public void resetKlineCache(Long assetId, String type) {
+        String listKey = String.format("kline_%s_%s:", type, assetId);
+        redisService.deleteKeys(List.of(listKey + "data", listKey + "blob", listKey + "complete"));
+    }
+
+    /**
+     * 標記資產K線圖快取已載入完整資料，在此之前快取只有部分資料，getKlineCacheBlob會視為沒有快取。
+     *
+     * @param assetId 資產ID
+     * @param type    查詢類型
+     */
+    public void markKlineCacheComplete(Long assetId, String type) {
+        redisService.saveValueToCache(String.format("kline_%s_%s:complete", type, assetId), "1", 24);
+    }
+
+    /**
+     * 取得資產K線圖的合併快取資料。
+     * 以預先合併的blob為基礎，接上尚未壓實的增量資料，並直接以字串拼接為JSON陣列，不建立JSON樹。
+     * blob與增量列表以單一交易讀取，壓實同時進行時也不會重複或遺漏資料。
+     * 快取尚未標記為完整時(載入中或載入中斷)，視為沒有快取。
+     *
+     * @param assetId 資產ID
+     * @param type    查詢類型
+     *
+     * @return JSON陣列的UTF-8位元組，若沒有資料則回傳null
+     *
+     * @throws RepositoryExceptions 讀取Redis或解壓縮失敗時拋出
+     */
+    public byte[] getKlineCacheBlob(Long assetId, String type) throws RepositoryExceptions {
+        String listKey = String.format("kline_%s_%s:", type, assetId);
+        if (redisService.getCacheValueFromKey(listKey + "complete") == null) {
+            return null;
+        }
+        RedisService.BytesListSnapshot snapshot = redisService.getBytesAndList(listKey + "blob", listKey + "data");
+        String payload = decodeKlineBlob(snapshot.value());
+        if (payload.isEmpty() && snapshot.list().isEmpty()) {
+            return null;
+        }
+        return mergeJsonArrays(payload, snapshot.list()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 將K線圖快取列表中新增的增量資料合併進預先序列化的blob，並在同一交易中從列表移除已合併的資料，使列表不會無限增長。
+     * blob以原始位元組存放，若設定websocket.kline.blob_compress為true，則為gzip壓縮後的位元組，讀取時不需Base64解碼。
+     * 已標記為完整的快取會一併延長完整標記的有效時間；blob的有效時間較完整標記長，標記存在時blob必定存在。
+     *
+     * @param assetId 資產ID
+     * @param type    查詢類型
+     *
+     * @throws RepositoryExceptions 讀寫Redis或壓縮失敗時拋出
+     */
+    public void compactKlineCache(Long assetId, String type) throws RepositoryExceptions {
+        String listKey = String.format("kline_%s_%s:", type, assetId);
+        boolean compacted = redisService.compactListIntoBytes(listKey + "data",
+                                                              listKey + "blob",
+                                                              KLINE_BLOB_EXPIRE_HOURS,
+                                                              (value, deltas) -> encodeKlineBlob(mergeJsonArrays(decodeKlineBlob(value), deltas)));
+        if (compacted && redisService.getCacheValueFromKey(listKey + "complete") != null) {
+            markKlineCacheComplete(assetId, type);
+        }
+    }
+
+    /**
+     * 以字串拼接方式合併多個JSON陣列或物件字串為單一JSON陣列。
+     *
+     * @param payload 已合併的JSON陣列字串，可為空字串
+     * @param items   待合併的JSON陣列或物件字串
+     *
+     * @return 合併後的JSON陣列字串
+     */
+    private String mergeJsonArrays(String payload, List<String> items) {
+        StringBuilder builder = new StringBuilder(payload.length() + 2).append('[');
+        appendJsonArrayBody(builder, payload);
+        if (items != null) {
+            items.forEach(item -> appendJsonArrayBody(builder, item));
+        }
+        return builder.append(']').toString();
+    }
+
+    private void appendJsonArrayBody(StringBuilder builder, String json) {
+        String trimmed = json.trim();
+        if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        if (trimmed.isEmpty()) {
+            return;
+        }
+        if (builder.length() > 1) {
+            builder.append(',');
+        }
+        builder.append(trimmed);
+    }
+
+    private byte[] encodeKlineBlob(String json) throws RepositoryExceptions {
+        if (!klineBlobCompress) {
+            return json.getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+            gzipOutputStream.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RepositoryExceptions(RepositoryExceptions.ErrorEnum.REDIS_WRITE_ERROR, e.getMessage());
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 解碼blob的原始位元組，依gzip標頭判斷是否壓縮；不是JSON陣列也不是gzip的舊格式blob視為空白，由增量列表重新合併。
+     *
+     * @param value blob的原始位元組，可為null
+     *
+     * @return JSON陣列字串，沒有資料時為空字串
+     *
+     * @throws RepositoryExceptions 解壓縮失敗時拋出
+     */
+    private String decodeKlineBlob(byte[] value) throws RepositoryExceptions {
+        if (value == null || value.length < 2) {
+            return "";
+        }
+        if (value[0] == '[') {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+        if (value[0] != (byte) (GZIPInputStream.GZIP_MAGIC & 0xff) || value[1] != (byte) (GZIPInputStream.GZIP_MAGIC >> 8)) {
+            return "";
+        }
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(value))) {
+            return new String(gzipInputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RepositoryExceptions(RepositoryExceptions.ErrorEnum.REDIS_WRITE_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * 將串流查詢的K線資料依序格式化為分段JSON。
+     * 每一筆資料為pivot後的單一時間點，累積到分段大小後序列化並交給onChunk，已交出的資料不再保留。
+     */
+    private class KlineChunkWriter implements Consumer<FluxRecord> {
+        private final Consumer<List<String>> onChunk;
+
+        private final List<AssetKlineDataDto> chunk = new ArrayList<>(klineStreamChunkRows);
+
+        private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+        private Instant lastTime;
+
+        private long count = 0;
+
+        private KlineChunkWriter(Consumer<List<String>> onChunk) {
+            this.onChunk = onChunk;
+        }
+
+        @Override
+        public void accept(FluxRecord record) {
+            Instant recordTime = Objects.requireNonNull(record.getTime());
+            if (lastTime == null || lastTime.isBefore(recordTime)) {
+                lastTime = recordTime;
+            }
+            AssetKlineDataDto dataDto = new AssetKlineDataDto();
+            dataDto.setTimestamp(formatter.format(recordTime));
+            if (record.getValueByKey("rate") instanceof Double rate) {
+                String formattedRate = String.format("%.6f", BigDecimal.valueOf(rate));
+                dataDto.setOpen(formattedRate);
+                dataDto.setHigh(formattedRate);
+                dataDto.setLow(formattedRate);
+                dataDto.setClose(formattedRate);
+                dataDto.setVolume("0");
+            } else {
+                dataDto.setOpen(formatKlineValue(record.getValueByKey("open")));
+                dataDto.setHigh(formatKlineValue(record.getValueByKey("high")));
+                dataDto.setLow(formatKlineValue(record.getValueByKey("low")));
+                dataDto.setClose(formatKlineValue(record.getValueByKey("close")));
+                dataDto.setVolume(formatKlineValue(record.getValueByKey("volume")));
+            }
+            chunk.add(dataDto);
+            count++;
+            if (chunk.size() >= klineStreamChunkRows) {
+                flush();
+            }
+        }
+
+        private long finish() {
+            if (!chunk.isEmpty()) {
+                flush();
+            }
+            return count;
+        }
+
+        private void flush() {
+            try {
+                onChunk.accept(List.of(objectMapper.writeValueAsString(chunk), formatter.format(lastTime)));
+            } catch (JsonProcessingException e) {
+                throw new FormatExceptions(ASSET_FORMAT_ERROR, e.getMessage());
+            }
+            chunk.clear();
+        }
+
+        private String formatKlineValue(Object value) {
+            return value instanceof Double doubleValue ? String.format("%.6f", BigDecimal.valueOf(doubleValue)) : null;
+        }
+    }
+
     @MeaninglessData
     public List<String> formatKlineTableByTime(Map<String, List<FluxTable>> tableMap) throws JsonProcessingException, FormatExceptions {
         String lastTimePoint = null;
@@ -246,71 +565,44 @@ public class AssetService {
     }
 
     /**
-     * 獲取資產統計數據並存儲到Redis中。
+     * 批次計算所有已訂閱資產的統計快照。
+     * 每種資料庫每個參考時間點只查詢一次，計算結果整批寫入資產統計快照。
+     *
+     * @throws RuntimeException 重試失敗時的最後一次錯誤
+     */
+    public void refreshAssetStatisticsSnapshot() {
+        List<Asset> assets = findHasSubscribeAsset(true, true, true);
+        if (assets.isEmpty()) {
+            return;
+        }
+        List<LocalDateTime> localDateList = assetInfluxMethod.getStatisticDate();
+        assetStatisticsSnapshotMethod.putAll(assetInfluxMethod.queryStatisticPrices(assets, localDateList.subList(1, localDateList.size()), 72));
+    }
+
+    /**
+     * 獲取資產統計數據。
+     * 一天前、一週前、一個月前、一年前的參考價格取自資產統計快照，快照不存在或已過期時才即時查詢並回填；今天的價格取自最新價格。
      *
      * @param asset 資產對象。
      *
-     * @return 資產統計數據列表。
+     * @return 資產統計數據列表，依時間由舊到新排列，查無資料的時間點為"數據不足"。
      */
-    public List<String> getAssetStatisticsAndSaveToRedis(Asset asset) throws AssetExceptions {
-        List<LocalDateTime> localDateList = assetInfluxMethod.getStatisticDate();
-        Map<LocalDateTime, String> priceMap = new TreeMap<>();
-        Map<String, String> filters = new HashMap<>();
-        Object[] select = new Object[2];
-        switch (asset) {
-            case StockTw stockTw -> {
-                filters.put("_field", "close");
-                filters.put("stock_tw", stockTw.getStockCode());
-                select[0] = stockTwHistoryBucket;
-                select[1] = "kline_data";
-            }
-            case CryptoTradingPair cryptoTradingPair -> {
-                filters.put("_field", "close");
-                filters.put("tradingPair", cryptoTradingPair.getTradingPair());
-                select[0] = cryptoHistoryBucket;
-                select[1] = "kline_data";
-            }
-            case Currency currency -> {
-                filters.put("_field", "rate");
-                filters.put("Currency", currency.getCurrency());
-                select[0] = currencyBucket;
-                select[1] = "exchange_rate";
-            }
-            default -> throw new AssetExceptions(ASSET_NOT_FOUND, asset);
-        }
-        Map<LocalDateTime, List<FluxTable>> queryResultMap = assetInfluxMethod.queryByTimeAndUser(select[0].toString(),
-                                                                                                  select[1].toString(),
-                                                                                                  filters,
-                                                                                                  null,
-                                                                                                  localDateList,
-                                                                                                  72,
-                                                                                                  true,
-                                                                                                  false);
-        for (Map.Entry<LocalDateTime, List<FluxTable>> entry : queryResultMap.entrySet()) {
-            if (entry.getValue().isEmpty() || entry.getValue().getFirst().getRecords().isEmpty()) {
-                priceMap.put(entry.getKey(), null);
-            } else {
-                for (FluxTable table : entry.getValue()) {
-                    for (FluxRecord record : table.getRecords()) {
-                        if (record.getValueByKey("_value") instanceof Double doubleValue) {
-                            BigDecimal value = BigDecimal.valueOf(doubleValue);
-                            priceMap.put(entry.getKey(), String.format("%.6f", value));
-                        } else {
-                            priceMap.put(entry.getKey(), null);
-                        }
-                    }
-                }
-            }
+    public List<String> getAssetStatistics(Asset asset) {
+        double[] referencePrices = assetStatisticsSnapshotMethod.get(asset.getId());
+        if (referencePrices == null) {
+            List<LocalDateTime> localDateList = assetInfluxMethod.getStatisticDate();
+            Map<Long, double[]> statistics = assetInfluxMethod.queryStatisticPrices(List.of(asset),
+                                                                                    localDateList.subList(1, localDateList.size()),
+                                                                                    72);
+            assetStatisticsSnapshotMethod.putAll(statistics);
+            referencePrices = statistics.get(asset.getId());
         }
-        priceMap.put(localDateList.getFirst(), (assetInfluxMethod.getLatestPrice(asset)).toString());
         List<String> resultList = new ArrayList<>();
-        for (Map.Entry<LocalDateTime, String> entry : priceMap.entrySet()) {
-            if (entry.getValue() != null) {
-                resultList.add(entry.getValue());
-            } else {
-                resultList.add("數據不足");
-            }
+        for (int i = referencePrices.length - 1; i >= 0; i--) {
+            resultList.add(Double.isNaN(referencePrices[i]) ? "數據不足" : String.format("%.6f", BigDecimal.valueOf(referencePrices[i])));
         }
+        BigDecimal latestPrice = assetInfluxMethod.getLatestPrice(asset);
+        resultList.add(latestPrice != null ? latestPrice.toString() : "數據不足");
         return resultList;
     }
 
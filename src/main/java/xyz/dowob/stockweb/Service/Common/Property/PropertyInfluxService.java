@@ -5,12 +5,15 @@ import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.WriteApi;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
+import com.influxdb.query.FluxRecord;
 import com.influxdb.query.FluxTable;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import xyz.dowob.stockweb.Component.Annotation.MeaninglessData;
 import xyz.dowob.stockweb.Component.Method.AssetInfluxMethod;
+import xyz.dowob.stockweb.Component.Method.Flux.FluxQuery;
+import xyz.dowob.stockweb.Component.Method.Flux.FluxQueryMethod;
 import xyz.dowob.stockweb.Component.Method.retry.RetryTemplate;
 import xyz.dowob.stockweb.Dto.Property.PropertyListDto;
 import xyz.dowob.stockweb.Exception.AssetExceptions;
@@ -26,6 +29,8 @@ import java.time.ZoneOffset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 /**
  * @author yuan
@@ -40,6 +45,8 @@ public class PropertyInfluxService {
 
     private final RetryTemplate retryTemplate;
 
+    private final FluxQueryMethod fluxQueryMethod;
+
     private final OffsetDateTime startDateTime = Instant.parse("1970-01-01T00:00:00Z").atOffset(ZoneOffset.UTC);
 
     private final OffsetDateTime stopDateTime = Instant.parse("2099-12-31T23:59:59Z").atOffset(ZoneOffset.UTC);
@@ -50,12 +57,14 @@ public class PropertyInfluxService {
      * @param propertySummaryInfluxClient 用戶資產Influx客戶端
      * @param assetInfluxMethod           資產Influx操作方法
      * @param retryTemplate               重試模板
+     * @param fluxQueryMethod             Flux查詢方法
      */
     public PropertyInfluxService(
-            @Qualifier("propertySummaryInfluxClient") InfluxDBClient propertySummaryInfluxClient, AssetInfluxMethod assetInfluxMethod, RetryTemplate retryTemplate) {
+            @Qualifier("propertySummaryInfluxClient") InfluxDBClient propertySummaryInfluxClient, AssetInfluxMethod assetInfluxMethod, RetryTemplate retryTemplate, FluxQueryMethod fluxQueryMethod) {
         this.propertySummaryInfluxClient = propertySummaryInfluxClient;
         this.assetInfluxMethod = assetInfluxMethod;
         this.retryTemplate = retryTemplate;
+        this.fluxQueryMethod = fluxQueryMethod;
     }
 
     @Value("${db.influxdb.bucket.property_summary}")
@@ -210,28 +219,35 @@ public class PropertyInfluxService {
     @MeaninglessData
     public Map<String, List<FluxTable>> queryInflux(String bucket, String measurement, Map<String, Map<String, List<String>>> filter, User user, String queryTimeRange, boolean isLast, boolean isFirst, boolean isCount, boolean isSum) {
         Map<String, List<FluxTable>> userPropertyTablesMap = new HashMap<>();
-        String summaryPredicate = createInquiryPredicate(bucket,
-                                                         measurement,
-                                                         filter,
-                                                         user,
-                                                         queryTimeRange,
-                                                         isLast,
-                                                         isFirst,
-                                                         isCount,
-                                                         isSum);
-        var ref = new Object() {
-            List<FluxTable> userPropertyTables;
-        };
-        try {
-            retryTemplate.doWithRetry(() -> ref.userPropertyTables = propertySummaryInfluxClient.getQueryApi()
-                                                                                                .query(summaryPredicate, org));
-        } catch (RetryException e) {
-            throw new RuntimeException("重試失敗，最後一次錯誤信息：" + e.getLastException().getMessage());
-        }
-        userPropertyTablesMap.put(measurement, ref.userPropertyTables);
+        FluxQuery summaryPredicate = createInquiryPredicate(bucket,
+                                                            measurement,
+                                                            filter,
+                                                            user,
+                                                            queryTimeRange,
+                                                            isLast,
+                                                            isFirst,
+                                                            isCount,
+                                                            isSum);
+        userPropertyTablesMap.put(measurement, fluxQueryMethod.query(propertySummaryInfluxClient, summaryPredicate));
         return userPropertyTablesMap;
     }
 
+    /**
+     * 透過用戶串流查詢用戶資產的原始序列，每解析出一筆資料就交給onRecord處理，不保留整個查詢結果
+     * 同一個資料表的資料會連續傳入，可透過FluxRecord.getTable()判斷資料表是否已切換
+     *
+     * @param bucket         bucket
+     * @param measurement    查詢表
+     * @param filter         查詢條件
+     * @param user           用戶
+     * @param queryTimeRange 查詢時間範圍
+     * @param onRecord       每一筆資料的處理方法
+     */
+    public void queryInflux(String bucket, String measurement, Map<String, Map<String, List<String>>> filter, User user, String queryTimeRange, Consumer<FluxRecord> onRecord) {
+        FluxQuery summaryPredicate = createInquiryPredicate(bucket, measurement, filter, user, queryTimeRange, false, false, false, false);
+        fluxQueryMethod.stream(propertySummaryInfluxClient, summaryPredicate, onRecord);
+    }
+
     /**
      * 建立influx查詢語句
      *
@@ -247,42 +263,31 @@ public class PropertyInfluxService {
      *
      * @return 查詢條件
      */
-    private String createInquiryPredicate(String propertySummaryBucket, String measurement, Map<String, Map<String, List<String>>> filter, User user, String dateRange, boolean isLast, boolean isFirst, boolean isCount, boolean isSum) {
-        StringBuilder baseQuery = new StringBuilder(String.format("from(bucket: \"%s\")" + " |> range(start: -%s)" + " |> filter(fn: (r) => r[\"_measurement\"] == \"%s\")",
-                                                                  propertySummaryBucket,
-                                                                  dateRange,
-                                                                  measurement));
+    private FluxQuery createInquiryPredicate(String propertySummaryBucket, String measurement, Map<String, Map<String, List<String>>> filter, User user, String dateRange, boolean isLast, boolean isFirst, boolean isCount, boolean isSum) {
+        FluxQuery.Builder builder = FluxQuery.from(propertySummaryBucket).range("-" + dateRange).filter("_measurement", measurement);
         if (isLast) {
-            baseQuery.append(" |> last()");
+            builder.last();
         } else if (isFirst) {
-            baseQuery.append(" |> first()");
+            builder.first();
         } else if (isCount) {
-            baseQuery.append(" |> count()");
+            builder.count();
         } else if (isSum) {
-            baseQuery.append(" |> sum(column: \"_value\")");
+            builder.sum();
         }
         if (user != null) {
-            baseQuery.append(String.format(" |> filter(fn: (r) => r[\"user_id\"] == \"%s\")", user.getId()));
+            builder.filter("user_id", user.getId().toString());
         }
-        if (filter != null) {
-            int filterSize = filter.size();
-            for (Map.Entry<String, Map<String, List<String>>> entry : filter.entrySet()) {
-                String logic = "or".equals(entry.getKey()) ? " or " : " and ";
-                for (Map.Entry<String, List<String>> subEntry : entry.getValue().entrySet()) {
-                    StringBuilder subFilter = new StringBuilder();
-                    for (int i = 0; i < subEntry.getValue().size(); i++) {
-                        if (!subFilter.isEmpty()) {
-                            subFilter.append(logic);
-                        }
-                        subFilter.append(String.format("r[\"%s\"] == \"%s\"", subEntry.getKey(), subEntry.getValue().get(i)));
-                    }
-                    if (filterSize == 1) {
-                        baseQuery.append(" |> filter(fn: (r) => ").append(subFilter).append(")");
-                    }
+        if (filter != null && filter.size() == 1) {
+            Map.Entry<String, Map<String, List<String>>> entry = filter.entrySet().iterator().next();
+            for (Map.Entry<String, List<String>> subEntry : new TreeMap<>(entry.getValue()).entrySet()) {
+                if ("or".equals(entry.getKey())) {
+                    builder.filter(subEntry.getKey(), subEntry.getValue());
+                } else {
+                    subEntry.getValue().forEach(value -> builder.filter(subEntry.getKey(), value));
                 }
             }
         }
-        return baseQuery.toString();
+        return builder.build();
     }
 
     /**
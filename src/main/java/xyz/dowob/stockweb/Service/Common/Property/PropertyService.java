@@ -473,6 +473,7 @@ public class PropertyService {
      * 取得用戶所有持有資產
      * 分成2個部分，一個是用戶持有的資產查詢以及相同類型資產合併
      * 另一個是將合併後的資產依照需求轉換貨幣價格
+     * 所有資產的最新價格以每個資料庫一次查詢的方式批次取得
      *
      * @param user                           用戶
      * @param isFormattedToPreferredCurrency 是否格式化為用戶偏好貨幣
@@ -494,8 +495,9 @@ public class PropertyService {
                                                                                                                    .add(replacement.getQuantity()));
                                                                                       return existing;
                                                                                   }));
+        Map<Long, BigDecimal> latestPrices = assetInfluxMethod.getLatestPrices(propertyMap.values().stream().map(Property::getAsset).toList());
         return new ArrayList<>(propertyMap.values()).stream().map(property -> {
-            BigDecimal currentPrice = assetInfluxMethod.getLatestPrice(property.getAsset());
+            BigDecimal currentPrice = latestPrices.get(property.getAsset().getId());
             BigDecimal exchangeRate;
             if (isFormattedToPreferredCurrency) {
                 exchangeRate = assetHandler.exrateToPreferredCurrency(property.getAsset(), currentPrice, user.getPreferredCurrency());
@@ -1116,6 +1118,7 @@ public class PropertyService {
     /**
      * 計算用戶資產最大回撤
      * 獲取用戶資產報酬率、計算最大回撤
+     * 資產序列以串流方式逐筆計算峰值與回撤，不保留整個查詢結果
      *
      * @param user 用戶
      *
@@ -1133,43 +1136,55 @@ public class PropertyService {
                                                                                 Arrays.asList(BigDecimal.ZERO, BigDecimal.ZERO),
                                                                                 "total",
                                                                                 Arrays.asList(BigDecimal.ZERO, BigDecimal.ZERO)));
-            Map<String, List<FluxTable>> drawDownTable = propertyInfluxService.queryInflux(propertySummaryBucket,
-                                                                                           "summary_property",
-                                                                                           null,
-                                                                                           user,
-                                                                                           timeMap.get(timeMap.keySet().iterator().next()),
-                                                                                           false,
-                                                                                           false,
-                                                                                           false,
-                                                                                           false);
-            for (FluxTable table : drawDownTable.get("summary_property")) {
-                if (table.getRecords().isEmpty()) {
-                    continue;
-                }
-                BigDecimal maxDrawDown = BigDecimal.ZERO;
-                BigDecimal peak = BigDecimal.ZERO;
-                String type = "";
-                for (FluxRecord record : table.getRecords()) {
-                    Double value = (Double) record.getValueByKey("_value");
-                    if (value != null) {
-                        BigDecimal propertySum = BigDecimal.valueOf(value);
-                        if (propertySum.compareTo(BigDecimal.ZERO) == 0) {
-                            continue;
-                        }
-                        if (propertySum.compareTo(peak) > 0) {
-                            peak = propertySum;
-                        }
-                        if (peak.compareTo(BigDecimal.ZERO) != 0) {
-                            BigDecimal drawDown = (peak.subtract(propertySum)).divide(peak, 6, RoundingMode.HALF_UP);
-                            if (drawDown.compareTo(maxDrawDown) > 0) {
-                                maxDrawDown = drawDown;
-                            }
-                        }
+            var ref = new Object() {
+                int table = -1;
+
+                BigDecimal maxDrawDown;
+
+                BigDecimal peak;
+
+                String type;
+
+                void commit() {
+                    if (table != -1) {
+                        currentTimeMap.put(type.replace("_sum", ""), List.of(peak, maxDrawDown.multiply(BigDecimal.valueOf(100))));
                     }
-                    type = Objects.requireNonNull(record.getField()).replace("_sum", "");
                 }
-                currentTimeMap.put(type.replace("_sum", ""), List.of(peak, maxDrawDown.multiply(BigDecimal.valueOf(100))));
-            }
+            };
+            propertyInfluxService.queryInflux(propertySummaryBucket,
+                                              "summary_property",
+                                              null,
+                                              user,
+                                              timeMap.get(timeMap.keySet().iterator().next()),
+                                              record -> {
+                                                  if (record.getTable() != ref.table) {
+                                                      ref.commit();
+                                                      ref.table = record.getTable();
+                                                      ref.maxDrawDown = BigDecimal.ZERO;
+                                                      ref.peak = BigDecimal.ZERO;
+                                                  }
+                                                  ref.type = Objects.requireNonNull(record.getField()).replace("_sum", "");
+                                                  Double value = (Double) record.getValueByKey("_value");
+                                                  if (value == null) {
+                                                      return;
+                                                  }
+                                                  BigDecimal propertySum = BigDecimal.valueOf(value);
+                                                  if (propertySum.compareTo(BigDecimal.ZERO) == 0) {
+                                                      return;
+                                                  }
+                                                  if (propertySum.compareTo(ref.peak) > 0) {
+                                                      ref.peak = propertySum;
+                                                  }
+                                                  if (ref.peak.compareTo(BigDecimal.ZERO) != 0) {
+                                                      BigDecimal drawDown = (ref.peak.subtract(propertySum)).divide(ref.peak,
+                                                                                                                   6,
+                                                                                                                   RoundingMode.HALF_UP);
+                                                      if (drawDown.compareTo(ref.maxDrawDown) > 0) {
+                                                          ref.maxDrawDown = drawDown;
+                                                      }
+                                                  }
+                                              });
+            ref.commit();
             result.put(timeMap.keySet().iterator().next(), currentTimeMap);
         }
         return result;
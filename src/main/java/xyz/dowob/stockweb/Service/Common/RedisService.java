@@ -1,14 +1,19 @@
 package xyz.dowob.stockweb.Service.Common;
 
 import com.google.common.annotations.Beta;
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Service;
 import xyz.dowob.stockweb.Component.Annotation.MeaninglessData;
 import xyz.dowob.stockweb.Exception.RepositoryExceptions;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -77,10 +82,13 @@ public class RedisService {
      * @param key            缓存的key值
      * @param value          要插入的資料，應為JSON格式的字符串
      * @param expirationTime 缓存過期時間（單位：小时）
+     *
+     * @return 插入後的列表長度
      */
-    public void rPushToCacheList(String key, String value, long expirationTime) {
-        redisTemplate.opsForList().rightPush(key, value);
+    public Long rPushToCacheList(String key, String value, long expirationTime) {
+        Long size = redisTemplate.opsForList().rightPush(key, value);
         redisTemplate.expire(key, expirationTime, TimeUnit.HOURS);
+        return size;
     }
 
     /**
@@ -109,6 +117,34 @@ public class RedisService {
         }
     }
 
+    /**
+     * 取得緩存列表中從指定位置開始的數據值
+     *
+     * @param key   緩存的key值
+     * @param start 起始位置
+     *
+     * @return 緩存列表中的數據值
+     */
+    public List<String> getCacheListValueFromKey(String key, long start) throws RepositoryExceptions {
+        try {
+            return redisTemplate.opsForList().range(key, start, -1);
+        } catch (Exception e) {
+            throw new RepositoryExceptions(RepositoryExceptions.ErrorEnum.REDIS_WRITE_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * 取得緩存列表的長度
+     *
+     * @param key 緩存的key值
+     *
+     * @return 緩存列表的長度，若不存在則為0
+     */
+    public long getCacheListSize(String key) {
+        Long size = redisTemplate.opsForList().size(key);
+        return size == null ? 0 : size;
+    }
+
     /**
      * 取得哈希表緩存中的數據值
      *
@@ -121,6 +157,197 @@ public class RedisService {
         return (String) redisTemplate.opsForHash().get(key, innerKey);
     }
 
+    /**
+     * 批次取得哈希表緩存中的多個數據值
+     *
+     * @param key       緩存的key值
+     * @param innerKeys 哈希表的key值列表
+     *
+     * @return 與innerKeys順序相同的數據值列表，不存在的項目為null
+     */
+    public List<String> getHashValuesFromKey(String key, List<String> innerKeys) {
+        List<Object> values = redisTemplate.opsForHash().multiGet(key, new ArrayList<>(innerKeys));
+        List<String> result = new ArrayList<>(values.size());
+        values.forEach(value -> result.add((String) value));
+        return result;
+    }
+
+    /**
+     * 將數據加入集合緩存，並重設過期時間
+     *
+     * @param key     緩存的key值
+     * @param value   要加入的數據
+     * @param seconds 緩存過期時間（單位：秒）
+     */
+    public void addToCacheSet(String key, String value, long seconds) {
+        redisTemplate.opsForSet().add(key, value);
+        redisTemplate.expire(key, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 從集合緩存中移除數據
+     *
+     * @param key   緩存的key值
+     * @param value 要移除的數據
+     */
+    public void removeFromCacheSet(String key, String value) {
+        redisTemplate.opsForSet().remove(key, value);
+    }
+
+    /**
+     * 取得集合緩存中的所有數據
+     *
+     * @param key 緩存的key值
+     *
+     * @return 集合中的數據，若不存在則為空集合
+     */
+    public Set<String> getCacheSetMembers(String key) {
+        Set<String> members = redisTemplate.opsForSet().members(key);
+        return members == null ? Set.of() : members;
+    }
+
+    /**
+     * 當緩存不存在時寫入數據，用於簡單的分散式鎖
+     *
+     * @param key     緩存的key值
+     * @param value   要存入的數據
+     * @param seconds 緩存過期時間（單位：秒）
+     *
+     * @return 是否成功寫入
+     */
+    public boolean saveValueToCacheIfAbsent(String key, String value, long seconds) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, value, seconds, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 鍵是否存在
+     *
+     * @param key 緩存的key值
+     *
+     * @return 是否存在
+     */
+    public boolean hasKey(String key) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(key));
+    }
+
+    /**
+     * 以二進位值與列表組成的緩存快照，value為未經字串序列化的原始位元組
+     *
+     * @param value 二進位值，不存在時為null
+     * @param list  列表中的數據值，不存在時為空列表
+     */
+    public record BytesListSnapshot(byte[] value, List<String> list) {}
+
+    /**
+     * 將列表合併進二進位值的方法
+     */
+    @FunctionalInterface
+    public interface ListCompactor {
+        /**
+         * 合併二進位值與列表
+         *
+         * @param value 目前的二進位值，不存在時為null
+         * @param list  待合併的列表數據值
+         *
+         * @return 合併後的二進位值
+         *
+         * @throws RepositoryExceptions 合併失敗時拋出
+         */
+        byte[] compact(byte[] value, List<String> list) throws RepositoryExceptions;
+    }
+
+    /**
+     * 以單一交易讀取二進位值與完整列表，與compactListIntoBytes同時執行時也不會讀到不一致的狀態。
+     *
+     * @param bytesKey 二進位值的key值
+     * @param listKey  列表的key值
+     *
+     * @return 二進位值與列表的快照
+     *
+     * @throws RepositoryExceptions 讀取Redis失敗時拋出
+     */
+    public BytesListSnapshot getBytesAndList(String bytesKey, String listKey) throws RepositoryExceptions {
+        try {
+            List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+                connection.multi();
+                connection.stringCommands().get(bytesKey.getBytes(StandardCharsets.UTF_8));
+                connection.listCommands().lRange(listKey.getBytes(StandardCharsets.UTF_8), 0, -1);
+                return connection.exec();
+            });
+            if (results == null || results.size() < 2) {
+                return new BytesListSnapshot(null, List.of());
+            }
+            Object value = results.get(0);
+            return new BytesListSnapshot(value instanceof String text ? text.getBytes(StandardCharsets.UTF_8) : (byte[]) value,
+                                         toStrings(results.get(1)));
+        } catch (Exception e) {
+            throw new RepositoryExceptions(RepositoryExceptions.ErrorEnum.REDIS_WRITE_ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * 將列表目前的所有元素合併進二進位值，並在同一交易中寫入二進位值與移除已合併的元素，使列表不會無限增長。
+     * 以WATCH監視列表，讀取後列表若被其他連線修改(新增、刪除)則放棄這次合併，留待下次執行。
+     *
+     * @param listKey   列表的key值
+     * @param bytesKey  二進位值的key值
+     * @param hours     二進位值的過期時間（單位：小時）
+     * @param compactor 合併方法
+     *
+     * @return 是否已寫入合併結果，列表為空或交易被放棄時回傳false
+     *
+     * @throws RepositoryExceptions 讀寫Redis或合併失敗時拋出
+     */
+    public boolean compactListIntoBytes(String listKey, String bytesKey, int hours, ListCompactor compactor) throws RepositoryExceptions {
+        byte[] rawListKey = listKey.getBytes(StandardCharsets.UTF_8);
+        byte[] rawBytesKey = bytesKey.getBytes(StandardCharsets.UTF_8);
+        try {
+            return Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection -> {
+                connection.watch(rawListKey);
+                byte[] merged;
+                List<byte[]> items;
+                try {
+                    byte[] value = connection.stringCommands().get(rawBytesKey);
+                    items = connection.listCommands().lRange(rawListKey, 0, -1);
+                    if (items == null || items.isEmpty()) {
+                        connection.unwatch();
+                        return false;
+                    }
+                    merged = compactor.compact(value, toStrings(items));
+                } catch (RepositoryExceptions e) {
+                    connection.unwatch();
+                    throw new RuntimeException(e);
+                }
+                connection.multi();
+                connection.stringCommands().set(rawBytesKey, merged, Expiration.from(hours, TimeUnit.HOURS), RedisStringCommands.SetOption.upsert());
+                connection.listCommands().lTrim(rawListKey, items.size(), -1);
+                return connection.exec() != null;
+            }));
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof RepositoryExceptions repositoryExceptions) {
+                throw repositoryExceptions;
+            }
+            throw new RepositoryExceptions(RepositoryExceptions.ErrorEnum.REDIS_WRITE_ERROR, e.getMessage());
+        }
+    }
+
+    private List<String> toStrings(Object items) {
+        List<String> values = new ArrayList<>();
+        if (items instanceof List<?> list) {
+            list.forEach(item -> values.add(item instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(item)));
+        }
+        return values;
+    }
+
+    /**
+     * 刪除指定的鍵
+     *
+     * @param keys 要刪除的鍵
+     */
+    public void deleteKeys(Collection<String> keys) {
+        redisTemplate.delete(keys);
+    }
+
     /**
      * 使用 scan 命令根据模式删除匹配的鍵
      *
@@ -3,19 +3,21 @@ package xyz.dowob.stockweb.Service.Crypto;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
-import com.influxdb.query.FluxTable;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import xyz.dowob.stockweb.Component.Method.AssetInfluxMethod;
+import xyz.dowob.stockweb.Component.Method.Flux.FluxQuery;
+import xyz.dowob.stockweb.Component.Method.Flux.FluxQueryMethod;
+import xyz.dowob.stockweb.Component.Method.LineProtocolEncoder;
 import xyz.dowob.stockweb.Component.Method.retry.RetryTemplate;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
 import xyz.dowob.stockweb.Exception.AssetExceptions;
 import xyz.dowob.stockweb.Exception.RetryException;
 
 import java.time.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author yuan
@@ -31,6 +33,8 @@ public class CryptoInfluxService {
 
     private final RetryTemplate retryTemplate;
 
+    private final FluxQueryMethod fluxQueryMethod;
+
     private final OffsetDateTime startDateTime = Instant.parse("1970-01-01T00:00:00Z").atOffset(ZoneOffset.UTC);
 
     private final OffsetDateTime stopDateTime = Instant.parse("2099-12-31T23:59:59Z").atOffset(ZoneOffset.UTC);
@@ -42,14 +46,16 @@ public class CryptoInfluxService {
      * @param cryptoHistoryInfluxClient 加密貨幣歷史InfluxDB客戶端
      * @param assetInfluxMethod         資產InfluxDB方法
      * @param retryTemplate             重試模板
+     * @param fluxQueryMethod           Flux查詢方法
      */
     public CryptoInfluxService (
             @Qualifier("CryptoInfluxClient") InfluxDBClient cryptoInfluxClient, @Qualifier("CryptoHistoryInfluxClient")
-    InfluxDBClient cryptoHistoryInfluxClient, AssetInfluxMethod assetInfluxMethod, RetryTemplate retryTemplate) {
+    InfluxDBClient cryptoHistoryInfluxClient, AssetInfluxMethod assetInfluxMethod, RetryTemplate retryTemplate, FluxQueryMethod fluxQueryMethod) {
         this.cryptoInfluxDBClient = cryptoInfluxClient;
         this.cryptoHistoryInfluxDBClient = cryptoHistoryInfluxClient;
         this.assetInfluxMethod = assetInfluxMethod;
         this.retryTemplate = retryTemplate;
+        this.fluxQueryMethod = fluxQueryMethod;
     }
 
     @Value("${db.influxdb.bucket.crypto}")
@@ -65,68 +71,73 @@ public class CryptoInfluxService {
     private int influxMaxSendNum;
 
     /**
-     * WebSocket的kline數據寫入InfluxDB
+     * WebSocket的kline事件寫入InfluxDB
      *
-     * @param klineData kline數據
+     * @param klineEvent kline事件
      */
-    public void writeToInflux (Map<String, Map<String, String>> klineData) {
+    public void writeToInflux (KlineEvent klineEvent) {
+        Point point = Point.measurement("kline_data")
+                           .addTag("tradingPair", klineEvent.symbol())
+                           .addField("open", klineEvent.open())
+                           .addField("close", klineEvent.close())
+                           .addField("high", klineEvent.high())
+                           .addField("low", klineEvent.low())
+                           .addField("volume", klineEvent.volume())
+                           .time(klineEvent.epochMillis(), WritePrecision.MS);
+        assetInfluxMethod.writeToInflux(cryptoInfluxDBClient, point);
+    }
+
+    /**
+     * 多筆kline事件批次寫入InfluxDB，用於補齊K線缺口，寫入完成後才返回
+     *
+     * @param klineEvents kline事件列表
+     */
+    public void writeToInflux (List<KlineEvent> klineEvents) {
         List<Point> points = new ArrayList<>();
-        for (Map.Entry<String, Map<String, String>> entry : klineData.entrySet()) {
-            Double open = Double.parseDouble(entry.getValue().get("open"));
-            Double close = Double.parseDouble(entry.getValue().get("close"));
-            Double high = Double.parseDouble(entry.getValue().get("high"));
-            Double low = Double.parseDouble(entry.getValue().get("low"));
-            Double volume = Double.parseDouble(entry.getValue().get("volume"));
+        for (KlineEvent klineEvent : klineEvents) {
             Point point = Point.measurement("kline_data")
-                               .addTag("tradingPair", entry.getKey())
-                               .addField("open", open)
-                               .addField("close", close)
-                               .addField("high", high)
-                               .addField("low", low)
-                               .addField("volume", volume)
-                               .time(Long.parseLong(entry.getValue().get("time")), WritePrecision.MS);
+                               .addTag("tradingPair", klineEvent.symbol())
+                               .addField("open", klineEvent.open())
+                               .addField("close", klineEvent.close())
+                               .addField("high", klineEvent.high())
+                               .addField("low", klineEvent.low())
+                               .addField("volume", klineEvent.volume())
+                               .time(klineEvent.epochMillis(), WritePrecision.MS);
             points.add(point);
             if (points.size() >= influxMaxSendNum) {
-                assetInfluxMethod.writeToInflux(cryptoInfluxDBClient, points);
+                assetInfluxMethod.writeToInfluxBlocking(cryptoInfluxDBClient, points);
                 points.clear();
             }
         }
         if (!points.isEmpty()) {
-            assetInfluxMethod.writeToInflux(cryptoInfluxDBClient, points);
+            assetInfluxMethod.writeToInfluxBlocking(cryptoInfluxDBClient, points);
         }
     }
 
     /**
      * 將加密貨幣歷史數據寫入InfluxDB
+     * 直接編碼為line protocol後批次寫入，不建立Point物件
      *
      * @param data        加密貨幣歷史數據
      * @param tradingPair 交易對
      */
     public void writeCryptoHistoryToInflux (List<String[]> data, String tradingPair) {
-        List<Point> points = new ArrayList<>();
+        LineProtocolEncoder encoder = new LineProtocolEncoder(influxMaxSendNum);
         for (String[] record : data) {
-            Long time = Long.parseLong(record[0]) / 1000;
-            Double open = Double.parseDouble(record[1]);
-            Double high = Double.parseDouble(record[2]);
-            Double low = Double.parseDouble(record[3]);
-            Double close = Double.parseDouble(record[4]);
-            Double volume = Double.parseDouble(record[5]);
-            Point point = Point.measurement("kline_data")
-                               .addTag("tradingPair", tradingPair)
-                               .addField("open", open)
-                               .addField("close", close)
-                               .addField("high", high)
-                               .addField("low", low)
-                               .addField("volume", volume)
-                               .time(time, WritePrecision.MS);
-            points.add(point);
-            if (points.size() >= influxMaxSendNum) {
-                assetInfluxMethod.writeToInflux(cryptoHistoryInfluxDBClient, points);
-                points.clear();
+            encoder.measurement("kline_data")
+                   .tag("tradingPair", tradingPair)
+                   .field("open", Double.parseDouble(record[1]))
+                   .field("close", Double.parseDouble(record[4]))
+                   .field("high", Double.parseDouble(record[2]))
+                   .field("low", Double.parseDouble(record[3]))
+                   .field("volume", Double.parseDouble(record[5]))
+                   .time(Long.parseLong(record[0]) / 1000);
+            if (encoder.size() >= influxMaxSendNum) {
+                assetInfluxMethod.writeRecordsBlocking(cryptoHistoryInfluxDBClient, encoder.drain());
             }
         }
-        if (!points.isEmpty()) {
-            assetInfluxMethod.writeToInflux(cryptoHistoryInfluxDBClient, points);
+        if (encoder.size() > 0) {
+            assetInfluxMethod.writeRecordsBlocking(cryptoHistoryInfluxDBClient, encoder.drain());
         }
     }
 
@@ -153,6 +164,34 @@ public class CryptoInfluxService {
         }
     }
 
+    /**
+     * 取得交易對在指定時間區間內最後一根K線的開盤時間，用於重新啟動後判斷即時K線的缺口
+     *
+     * @param tradingPair 交易對
+     * @param start       開始時間(毫秒，包含)
+     * @param stop        結束時間(毫秒，不包含)
+     *
+     * @return 最後一根K線的開盤時間(毫秒)，區間內沒有資料時回傳null
+     */
+    public Long getLastKlineTime (String tradingPair, long start, long stop) {
+        var ref = new Object() {
+            Instant lastRecordTime;
+        };
+        FluxQuery query = FluxQuery.from(cryptoBucket)
+                                   .range(Instant.ofEpochMilli(start).toString(), Instant.ofEpochMilli(stop).toString())
+                                   .filter("_measurement", "kline_data")
+                                   .filter("tradingPair", tradingPair)
+                                   .last()
+                                   .build();
+        fluxQueryMethod.stream(cryptoInfluxDBClient, query, record -> {
+            Instant recordTime = record.getTime();
+            if (recordTime != null && (ref.lastRecordTime == null || recordTime.isAfter(ref.lastRecordTime))) {
+                ref.lastRecordTime = recordTime;
+            }
+        });
+        return ref.lastRecordTime != null ? ref.lastRecordTime.toEpochMilli() : null;
+    }
+
     /**
      * 根據交易對獲取最後一條數據的日期
      *
@@ -163,22 +202,22 @@ public class CryptoInfluxService {
     // todo 實現接口處理指定範圍資料重新抓取 如|> range(start: -365d, stop: -1d)
     public LocalDate getLastDateByTradingPair (String tradingPair) {
         var ref = new Object() {
-            FluxTable result;
+            Instant lastRecordTime;
         };
-        String query = String.format("from(bucket: \"%s\") |> range(start: -365d)" + " |> filter(fn: (r) => r[\"_measurement\"] == \"kline_data\")" + " |> filter(fn: (r) => r[\"tradingPair\"] == \"%s\")" + " |> last()",
-                                     cryptoHistoryBucket,
-                                     tradingPair
-        );
-        try {
-            retryTemplate.doWithRetry(() -> ref.result = cryptoHistoryInfluxDBClient.getQueryApi().query(query, org).getLast());
-        } catch (RetryException e) {
-            throw new RuntimeException("重試失敗，最後一次錯誤信息：" + e.getLastException().getMessage());
-        }
-        if (!ref.result.getRecords().isEmpty()) {
-            Instant lastRecordTime = ref.result.getRecords().getFirst().getTime();
-            if (lastRecordTime != null) {
-                return LocalDateTime.ofInstant(lastRecordTime, ZoneId.of("UTC")).toLocalDate();
+        FluxQuery query = FluxQuery.from(cryptoHistoryBucket)
+                                   .range("-365d")
+                                   .filter("_measurement", "kline_data")
+                                   .filter("tradingPair", tradingPair)
+                                   .last()
+                                   .build();
+        fluxQueryMethod.stream(cryptoHistoryInfluxDBClient, query, record -> {
+            Instant recordTime = record.getTime();
+            if (recordTime != null && (ref.lastRecordTime == null || recordTime.isAfter(ref.lastRecordTime))) {
+                ref.lastRecordTime = recordTime;
             }
+        });
+        if (ref.lastRecordTime != null) {
+            return LocalDateTime.ofInstant(ref.lastRecordTime, ZoneId.of("UTC")).toLocalDate();
         }
         return null;
     }
@@ -14,8 +14,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
-import org.springframework.web.socket.client.WebSocketConnectionManager;
-import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import xyz.dowob.stockweb.Component.Event.Asset.AssetHistoryDataFetchCompleteEvent;
 import xyz.dowob.stockweb.Component.Event.Asset.ImmediateDataUpdateEvent;
 import xyz.dowob.stockweb.Component.Event.Crypto.WebSocketConnectionStatusEvent;
@@ -58,8 +56,6 @@ public class CryptoService {
 
     private final CryptoInfluxService cryptoInfluxService;
 
-    private WebSocketConnectionManager connectionManager;
-
     private final CryptoRepository cryptoRepository;
 
     private final ObjectMapper objectMapper;
@@ -97,7 +93,6 @@ public class CryptoService {
      * @param webSocketHandler          虛擬貨幣WebSocket處理器
      * @param taskRepository            任務數據庫
      * @param cryptoInfluxService       加密貨幣InfluxDB服務
-     * @param connectionManager         WebSocket連接管理器
      * @param cryptoRepository          加密貨幣數據庫
      * @param objectMapper              JSON對象映射
      * @param fileService               文件服務
@@ -105,11 +100,10 @@ public class CryptoService {
      * @param dynamicThreadPoolService  動態線程池服務
      * @param applicationEventPublisher 應用事件發布者
      */
-    public CryptoService(CryptoWebSocketHandler webSocketHandler, TaskRepository taskRepository, CryptoInfluxService cryptoInfluxService, WebSocketConnectionManager connectionManager, CryptoRepository cryptoRepository, ObjectMapper objectMapper, FileService fileService, RedisService redisService, ProgressTrackerService progressTrackerService, DynamicThreadPoolService dynamicThreadPoolService, ApplicationEventPublisher applicationEventPublisher) {
+    public CryptoService(CryptoWebSocketHandler webSocketHandler, TaskRepository taskRepository, CryptoInfluxService cryptoInfluxService, CryptoRepository cryptoRepository, ObjectMapper objectMapper, FileService fileService, RedisService redisService, ProgressTrackerService progressTrackerService, DynamicThreadPoolService dynamicThreadPoolService, ApplicationEventPublisher applicationEventPublisher) {
         this.cryptoWebSocketHandler = webSocketHandler;
         this.taskRepository = taskRepository;
         this.cryptoInfluxService = cryptoInfluxService;
-        this.connectionManager = connectionManager;
         this.cryptoRepository = cryptoRepository;
         this.objectMapper = objectMapper;
         this.fileService = fileService;
@@ -163,12 +157,7 @@ public class CryptoService {
             throw new IllegalStateException("已經開啟連線");
         }
         isNeedToCheckConnection = true;
-        StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
-        connectionManager = new WebSocketConnectionManager(webSocketClient,
-                                                           cryptoWebSocketHandler,
-                                                           "wss://stream.binance.com:9443/stream?streams=");
-        connectionManager.setAutoStartup(true);
-        connectionManager.start();
+        cryptoWebSocketHandler.start();
         applicationEventPublisher.publishEvent(new ImmediateDataUpdateEvent(this, true, AssetType.CRYPTO));
     }
 
@@ -180,11 +169,20 @@ public class CryptoService {
     public void closeConnection() throws IllegalStateException {
         if (isRunning) {
             isNeedToCheckConnection = false;
-            connectionManager.stop();
+            cryptoWebSocketHandler.stop();
         }
         applicationEventPublisher.publishEvent(new ImmediateDataUpdateEvent(this, false, AssetType.CRYPTO));
     }
 
+    /**
+     * 依資料庫中有訂閱者的交易對，增量更新WebSocket連線的訂閱串流
+     */
+    public void syncSubscribedTradingPairs() {
+        if (isNeedToCheckConnection) {
+            cryptoWebSocketHandler.syncSubscribedStreams();
+        }
+    }
+
     /**
      * 取消訂閱Websocket的交易對
      *
@@ -525,7 +523,7 @@ public class CryptoService {
                             trackBackTask.completeTask(TaskStatusType.SUCCESS, "歷史價格資料成功抓取，總計用時: " + task.getTaskUsageTime());
                             taskRepository.save(trackBackTask);
                             progressTrackerService.deleteProgress(trackBackTaskId);
-                            String deletePattern = String.format("kline_history_%s:data", tradingPair.getId());
+                            String deletePattern = String.format("kline_history_%s:*", tradingPair.getId());
                             try {
                                 redisService.deleteByPattern(deletePattern);
                             } catch (RepositoryExceptions e) {
@@ -6,6 +6,8 @@ import com.influxdb.client.write.Point;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import xyz.dowob.stockweb.Component.Method.AssetInfluxMethod;
+import xyz.dowob.stockweb.Component.Method.LatestPriceCacheMethod;
+import xyz.dowob.stockweb.Enum.AssetType;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -22,16 +24,20 @@ public class CurrencyInfluxService {
 
     private final AssetInfluxMethod assetInfluxMethod;
 
+    private final LatestPriceCacheMethod latestPriceCacheMethod;
+
     /**
      * CurrencyInfluxService構造函數
      *
-     * @param currencyClient    貨幣InfluxDB客戶端
-     * @param assetInfluxMethod 資產InfluxDB方法
+     * @param currencyClient         貨幣InfluxDB客戶端
+     * @param assetInfluxMethod      資產InfluxDB方法
+     * @param latestPriceCacheMethod 最新價格快取
      */
     public CurrencyInfluxService(
-            @Qualifier("CurrencyInfluxClient") InfluxDBClient currencyClient, AssetInfluxMethod assetInfluxMethod) {
+            @Qualifier("CurrencyInfluxClient") InfluxDBClient currencyClient, AssetInfluxMethod assetInfluxMethod, LatestPriceCacheMethod latestPriceCacheMethod) {
         this.currencyClient = currencyClient;
         this.assetInfluxMethod = assetInfluxMethod;
+        this.latestPriceCacheMethod = latestPriceCacheMethod;
     }
 
     /**
@@ -49,5 +55,6 @@ public class CurrencyInfluxService {
                            .addField("rate", formattedRate.doubleValue())
                            .time(epochMilli, WritePrecision.MS);
         assetInfluxMethod.writeToInflux(currencyClient, point);
+        latestPriceCacheMethod.update(AssetType.CURRENCY, currency, formattedRate.doubleValue(), epochMilli);
     }
 }
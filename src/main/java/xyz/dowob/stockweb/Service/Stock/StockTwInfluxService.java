@@ -9,7 +9,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import xyz.dowob.stockweb.Component.Method.AssetInfluxMethod;
+import xyz.dowob.stockweb.Component.Method.LineProtocolEncoder;
 import xyz.dowob.stockweb.Component.Method.retry.RetryTemplate;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
 import xyz.dowob.stockweb.Exception.AssetExceptions;
 import xyz.dowob.stockweb.Model.Currency.Currency;
 import xyz.dowob.stockweb.Repository.Currency.CurrencyRepository;
@@ -20,7 +22,6 @@ import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -77,27 +78,19 @@ public class StockTwInfluxService {
     /**
      * 五秒搓合交易的kline數據寫入InfluxDB
      *
-     * @param msgArray kline數據
+     * @param klineEvents kline事件列表
      */
-    public void writeToInflux (Map<String, Map<String, String>> msgArray) {
+    public void writeToInflux (List<KlineEvent> klineEvents) {
         List<Point> points = new ArrayList<>();
-        for (Map.Entry<String, Map<String, String>> dataMap : msgArray.entrySet()) {
-            String stockId = dataMap.getKey();
-            Map<String, String> data = dataMap.getValue();
-            String time = data.get("time");
-            Double closeDouble = Double.parseDouble(data.get("close"));
-            Double highDouble = Double.parseDouble(data.get("high"));
-            Double openDouble = Double.parseDouble(data.get("open"));
-            Double lowDouble = Double.parseDouble(data.get("low"));
-            Double volumeDouble = Double.parseDouble(data.get("volume"));
+        for (KlineEvent klineEvent : klineEvents) {
             Point point = Point.measurement("kline_data")
-                               .addTag("stock_tw", stockId)
-                               .addField("open", openDouble)
-                               .addField("close", closeDouble)
-                               .addField("high", highDouble)
-                               .addField("low", lowDouble)
-                               .addField("volume", volumeDouble)
-                               .time(Long.parseLong(time), WritePrecision.MS);
+                               .addTag("stock_tw", klineEvent.symbol())
+                               .addField("open", klineEvent.open())
+                               .addField("close", klineEvent.close())
+                               .addField("high", klineEvent.high())
+                               .addField("low", klineEvent.low())
+                               .addField("volume", klineEvent.volume())
+                               .time(klineEvent.epochMillis(), WritePrecision.MS);
             points.add(point);
             if (points.size() >= influxMaxSendNum) {
                 assetInfluxMethod.writeToInflux(StockTwInfluxDBClient, points);
@@ -116,11 +109,12 @@ public class StockTwInfluxService {
      * @param stockCode 股票代碼
      */
     public void writeStockTwHistoryToInflux (ArrayNode dataArray, String stockCode) throws AssetExceptions {
-        List<Point> points = new ArrayList<>();
+        BigDecimal twdToUsd = currencyRepository.findByCurrency("TWD")
+                                                .orElseThrow(() -> new AssetExceptions(AssetExceptions.ErrorEnum.DEFAULT_CURRENCY_NOT_FOUND,
+                                                                                       "TWD"))
+                                                .getExchangeRate();
+        LineProtocolEncoder encoder = new LineProtocolEncoder(influxMaxSendNum);
         for (JsonNode dataEntry : dataArray) {
-            String dateStr = dataEntry.get(0).asText();
-            Long tLong = formattedRocData(dateStr);
-            String numberOfStocksVolume = dataEntry.get(1).asText().replace(",", "");
             String openingPrice = dataEntry.get(3).asText();
             String highestPrice = dataEntry.get(4).asText();
             String lowestPrice = dataEntry.get(5).asText();
@@ -130,22 +124,20 @@ public class StockTwInfluxService {
             ) || Objects.equals(closingPrice, "--")) {
                 continue;
             }
-            Point point = formatKlineDataToPoint(tLong,
-                                                 stockCode,
-                                                 numberOfStocksVolume,
-                                                 openingPrice,
-                                                 highestPrice,
-                                                 lowestPrice,
-                                                 closingPrice
-            );
-            points.add(point);
-            if (points.size() >= influxMaxSendNum) {
-                assetInfluxMethod.writeToInflux(StockTwHistoryInfluxDBClient, points);
-                points.clear();
+            encoder.measurement("kline_data")
+                   .tag("stock_tw", stockCode)
+                   .field("high", formatPrice(highestPrice, twdToUsd))
+                   .field("low", formatPrice(lowestPrice, twdToUsd))
+                   .field("open", formatPrice(openingPrice, twdToUsd))
+                   .field("close", formatPrice(closingPrice, twdToUsd))
+                   .field("volume", Double.parseDouble(dataEntry.get(1).asText().replace(",", "")))
+                   .time(formattedRocData(dataEntry.get(0).asText()));
+            if (encoder.size() >= influxMaxSendNum) {
+                assetInfluxMethod.writeRecordsBlocking(StockTwHistoryInfluxDBClient, encoder.drain());
             }
         }
-        if (!points.isEmpty()) {
-            assetInfluxMethod.writeToInflux(StockTwHistoryInfluxDBClient, points);
+        if (encoder.size() > 0) {
+            assetInfluxMethod.writeRecordsBlocking(StockTwHistoryInfluxDBClient, encoder.drain());
         }
     }
 
@@ -265,7 +257,7 @@ public class StockTwInfluxService {
      *
      * @return 格式化後的價格
      */
-    private Double formatPrice (String price, BigDecimal exchangeRate) {
+    private double formatPrice (String price, BigDecimal exchangeRate) {
         return (new BigDecimal(price)).divide(exchangeRate, 3, RoundingMode.HALF_UP).doubleValue();
     }
 }
@@ -16,7 +16,10 @@ import org.springframework.web.client.RestTemplate;
 import xyz.dowob.stockweb.Component.Annotation.MeaninglessData;
 import xyz.dowob.stockweb.Component.Event.Asset.AssetHistoryDataFetchCompleteEvent;
 import xyz.dowob.stockweb.Component.Method.Kafka.KafkaProducerMethod;
+import xyz.dowob.stockweb.Component.Method.KlineRingBufferMethod;
+import xyz.dowob.stockweb.Component.Method.LatestPriceCacheMethod;
 import xyz.dowob.stockweb.Component.Method.SubscribeMethod;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
 import xyz.dowob.stockweb.Enum.AssetType;
 import xyz.dowob.stockweb.Enum.TaskStatusType;
 import xyz.dowob.stockweb.Exception.AssetExceptions;
@@ -65,6 +68,10 @@ public class StockTwService {
 
     private final SubscribeMethod subscribeMethod;
 
+    private final KlineRingBufferMethod klineRingBufferMethod;
+
+    private final LatestPriceCacheMethod latestPriceCacheMethod;
+
     private final String STOCK_CURRENT_PRICE_URL = "https://mis.twse.com.tw/stock/api/getStockInfo.jsp?ex_ch=";
 
     @SuppressWarnings("UnstableApiUsage")
@@ -87,6 +94,8 @@ public class StockTwService {
      * @param applicationEventPublisher 事件發布
      * @param subscribeMethod           訂閱方法
      * @param kafkaProducerMethod       Kafka生產者方法
+     * @param klineRingBufferMethod     K線環形緩衝區方法
+     * @param latestPriceCacheMethod    最新價格快取
      */
     public StockTwService(
             StockTwRepository stockTwRepository,
@@ -97,7 +106,9 @@ public class StockTwService {
             Optional<KafkaProducerMethod> kafkaProducerMethod,
             ObjectMapper objectMapper,
             ApplicationEventPublisher applicationEventPublisher,
-            SubscribeMethod subscribeMethod) {
+            SubscribeMethod subscribeMethod,
+            KlineRingBufferMethod klineRingBufferMethod,
+            LatestPriceCacheMethod latestPriceCacheMethod) {
         this.stockTwRepository = stockTwRepository;
         this.subscribeRepository = subscribeRepository;
         this.stockTwInfluxService = stockTwInfluxService;
@@ -107,6 +118,8 @@ public class StockTwService {
         this.objectMapper = objectMapper;
         this.applicationEventPublisher = applicationEventPublisher;
         this.subscribeMethod = subscribeMethod;
+        this.klineRingBufferMethod = klineRingBufferMethod;
+        this.latestPriceCacheMethod = latestPriceCacheMethod;
     }
 
     /**
@@ -258,11 +271,15 @@ public class StockTwService {
         stockInquiryList.forEach(stockInquiry -> inquireUrl.append(stockInquiry).append("|"));
         JsonNode msgArray = getJsonNodeByUrl(inquireUrl.toString()).path("msgArray");
         if (!msgArray.isMissingNode() && msgArray.isArray() && !msgArray.isEmpty()) {
-            Map<String, Map<String, String>> klineData = formatStockTwDataToKline(msgArray);
+            List<KlineEvent> klineEvents = formatStockTwDataToKline(msgArray);
             if (kafkaProducerMethod.isPresent()) {
-                kafkaProducerMethod.get().sendMessage("stock_tw_kline", klineData);
+                klineEvents.forEach(klineEvent -> kafkaProducerMethod.get().sendKlineEvent("stock_tw_kline", klineEvent));
             } else {
-                stockTwInfluxService.writeToInflux(klineData);
+                klineEvents.forEach(klineEvent -> {
+                    klineRingBufferMethod.append(klineEvent);
+                    latestPriceCacheMethod.update(klineEvent.assetType(), klineEvent.symbol(), klineEvent.close(), klineEvent.epochMillis());
+                });
+                stockTwInfluxService.writeToInflux(klineEvents);
             }
         }
     }
@@ -465,11 +482,11 @@ public class StockTwService {
      *
      * @param msgArray 股票資料，請求資料為多檔股票，每檔股票為一個JsonNode
      *
-     * @return HashMap<String, Map < String, String>> 股票代碼與Kline資料
+     * @return List<KlineEvent> 每檔股票的K線事件
      */
     @MeaninglessData
-    private HashMap<String, Map<String, String>> formatStockTwDataToKline(JsonNode msgArray) throws AssetExceptions {
-        HashMap<String, Map<String, String>> klineData = new HashMap<>();
+    private List<KlineEvent> formatStockTwDataToKline(JsonNode msgArray) throws AssetExceptions {
+        List<KlineEvent> klineEvents = new ArrayList<>();
         Currency twdCurrency = currencyRepository
                 .findByCurrency("TWD")
                 .orElseThrow(() -> new AssetExceptions(AssetExceptions.ErrorEnum.DEFAULT_CURRENCY_NOT_FOUND, "TWD"));
@@ -480,18 +497,17 @@ public class StockTwService {
                     "--") || Objects.equals(msgNode.path("o").asText(), "--") || Objects.equals(msgNode.path("l").asText(), "--")) {
                 continue;
             }
-
-            HashMap<String, String> innerMap = new HashMap<>();
-            innerMap.put("time", String.valueOf(removeTimestampSecond(msgNode.path("tlong").asLong())));
-            innerMap.put("close", formatPriceToUsdToPlainString(msgNode, "z", twdToUsd));
-            innerMap.put("high", formatPriceToUsdToPlainString(msgNode, "h", twdToUsd));
-            innerMap.put("open", formatPriceToUsdToPlainString(msgNode, "o", twdToUsd));
-            innerMap.put("low", formatPriceToUsdToPlainString(msgNode, "l", twdToUsd));
-            innerMap.put("volume", msgNode.path("v").asText());
-            String stockId = msgNode.path("c").asText();
-            klineData.put(stockId, innerMap);
+            klineEvents.add(new KlineEvent(msgNode.path("c").asText(),
+                                           AssetType.STOCK_TW,
+                                           removeTimestampSecond(msgNode.path("tlong").asLong()),
+                                           formatPriceToUsd(msgNode, "o", twdToUsd),
+                                           formatPriceToUsd(msgNode, "h", twdToUsd),
+                                           formatPriceToUsd(msgNode, "l", twdToUsd),
+                                           formatPriceToUsd(msgNode, "z", twdToUsd),
+                                           msgNode.path("v").asDouble(),
+                                           false));
         }
-        return klineData;
+        return klineEvents;
     }
 
     /**
@@ -509,15 +525,15 @@ public class StockTwService {
     }
 
     /**
-     * 將台幣價格轉換為美元價格，並轉換成PlainString
+     * 將台幣價格轉換為美元價格
      *
      * @param msgNode  股票資料
      * @param index    股票資料索引
      * @param twdToUsd 台幣對美元匯率
      *
-     * @return String 轉換後的價格
+     * @return double 轉換後的價格
      */
-    private String formatPriceToUsdToPlainString(JsonNode msgNode, String index, BigDecimal twdToUsd) {
-        return (new BigDecimal(msgNode.path(index).asText())).divide(twdToUsd, 3, RoundingMode.HALF_UP).toPlainString();
+    private double formatPriceToUsd(JsonNode msgNode, String index, BigDecimal twdToUsd) {
+        return (new BigDecimal(msgNode.path(index).asText())).divide(twdToUsd, 3, RoundingMode.HALF_UP).doubleValue();
     }
 }
@@ -56,14 +56,41 @@ function formatDetailToFloatString(input) {
 }
 
 
+function decodeBinaryKline(buffer) {
+    const view = new DataView(buffer);
+    const type = view.getUint8(1) === 1 ? "history" : "current";
+    const hasMore = (view.getUint8(2) & 1) === 1;
+    const chunk = view.getInt32(3);
+    const preferCurrencyExrate = view.getFloat64(7);
+    const count = view.getInt32(15);
+    const data = [];
+    let offset = 19;
+    for (let i = 0; i < count; i++) {
+        data.push({
+            timestamp: Number(view.getBigInt64(offset)),
+            open: view.getFloat64(offset + 8),
+            high: view.getFloat64(offset + 16),
+            low: view.getFloat64(offset + 24),
+            close: view.getFloat64(offset + 32),
+            volume: view.getFloat64(offset + 40)
+        });
+        offset += 48;
+    }
+    return {data, preferCurrencyExrate, type, chunk: chunk < 0 ? null : chunk, hasMore};
+}
+
 function handleIncomingData(rawData) {
     try {
-        const jsonData = JSON.parse(rawData);
-        const {data, preferCurrencyExrate, type} = jsonData;
+        const jsonData = rawData instanceof ArrayBuffer ? decodeBinaryKline(rawData) : JSON.parse(rawData);
+        const {data, preferCurrencyExrate, type, chunk, hasMore} = jsonData;
 
         if (data && data.length > 0) {
             const formattedData = formatKlineData(data, preferCurrencyExrate);
-            updateKlineChart(type, formattedData);
+            if (chunk > 0) {
+                prependKlineChart(type, formattedData, hasMore);
+            } else {
+                updateKlineChart(type, formattedData);
+            }
         } else {
             console.warn("接收到的資料為空");
         }
@@ -100,6 +127,15 @@ function initKlineChart(type) {
     charts[type] = chart;
 }
 
+function prependKlineChart(type, data, hasMore) {
+    const chart = charts[type];
+    if (!chart) {
+        console.error(`類型為${type}的圖表尚未初始化`);
+        return;
+    }
+    chart.applyMoreData(data, hasMore === true);
+}
+
 function updateKlineChart(type, data) {
     const chart = charts[type];
     if (!chart) {
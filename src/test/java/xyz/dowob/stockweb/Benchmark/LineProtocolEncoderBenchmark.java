@@ -0,0 +1,95 @@
+package xyz.dowob.stockweb.Benchmark;
+
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import xyz.dowob.stockweb.Component.Method.LineProtocolEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比較LineProtocolEncoder與Point物件將加密貨幣歷史K線編碼為line protocol的耗時與配置量。
+ * 兩者的輸入與CryptoInfluxService.writeCryptoHistoryToInflux相同，輸出為一個批次的line protocol字串。
+ * 執行方式: mvn -B test-compile 後以 main 方法啟動，或加上 -prof gc 觀察每次操作的配置量。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName LineProtocolEncoderBenchmark
+ * @description
+ * @create 2026-10-19 10:40
+ * @Version 1.0
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineProtocolEncoderBenchmark {
+    @Param({"1000", "5000"})
+    private int batchSize;
+
+    private List<String[]> data;
+
+    @Setup
+    public void setUp() {
+        data = new ArrayList<>(batchSize);
+        long openTime = 1_700_000_000_000L;
+        for (int i = 0; i < batchSize; i++) {
+            double price = 35000 + i * 0.25;
+            data.add(new String[]{String.valueOf(openTime + i * 60_000L), String.valueOf(price), String.valueOf(price + 12.5), String.valueOf(price - 8.75), String.valueOf(price + 3.5), String.valueOf(10.123 + i)});
+        }
+    }
+
+    @Benchmark
+    public String encoder() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder(batchSize);
+        for (String[] record : data) {
+            encoder.measurement("kline_data")
+                   .tag("tradingPair", "BTCUSDT")
+                   .field("open", Double.parseDouble(record[1]))
+                   .field("close", Double.parseDouble(record[4]))
+                   .field("high", Double.parseDouble(record[2]))
+                   .field("low", Double.parseDouble(record[3]))
+                   .field("volume", Double.parseDouble(record[5]))
+                   .time(Long.parseLong(record[0]) / 1000);
+        }
+        return encoder.drain();
+    }
+
+    @Benchmark
+    public String point() {
+        List<String> records = new ArrayList<>(batchSize);
+        for (String[] record : data) {
+            records.add(Point.measurement("kline_data")
+                             .addTag("tradingPair", "BTCUSDT")
+                             .addField("open", Double.parseDouble(record[1]))
+                             .addField("close", Double.parseDouble(record[4]))
+                             .addField("high", Double.parseDouble(record[2]))
+                             .addField("low", Double.parseDouble(record[3]))
+                             .addField("volume", Double.parseDouble(record[5]))
+                             .time(Long.parseLong(record[0]) / 1000, WritePrecision.S)
+                             .toLineProtocol());
+        }
+        return String.join("\n", records);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LineProtocolEncoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
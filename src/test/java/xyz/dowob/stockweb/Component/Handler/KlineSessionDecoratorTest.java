@@ -0,0 +1,138 @@
+package xyz.dowob.stockweb.Component.Handler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import xyz.dowob.stockweb.Enum.WebsocketOverflowPolicy;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * KlineSessionDecorator的發送順序與各溢出策略測試。
+ * 第一則消息的發送會被阻塞，使之後的消息累積在佇列中，再檢查放行後實際送出的消息。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineSessionDecoratorTest
+ * @description
+ * @create 2026-10-19 12:30
+ * @Version 1.0
+ **/
+class KlineSessionDecoratorTest {
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch sending = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private WebSocketSession delegate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        delegate = mock(WebSocketSession.class);
+        when(delegate.getId()).thenReturn("session");
+        when(delegate.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            if ("blocker".equals(message.getPayload())) {
+                sending.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            sent.add(String.valueOf(message.getPayload()));
+            return null;
+        }).when(delegate).sendMessage(any());
+    }
+
+    @Test
+    void sendsFullMessagesBeforeRealtimeMessages() throws Exception {
+        KlineSessionDecorator decorator = blockedDecorator(4, 4, WebsocketOverflowPolicy.DROP);
+        decorator.enqueueRealtime("current_1", new TextMessage("realtime"));
+        decorator.enqueue(new TextMessage("full-1"));
+        decorator.enqueue(new TextMessage("full-2"));
+        release.countDown();
+
+        verify(delegate, timeout(2000).times(4)).sendMessage(any());
+        assertThat(sent).containsExactly("blocker", "full-1", "full-2", "realtime");
+    }
+
+    @Test
+    void closesSessionWhenFullQueueOverflows() throws Exception {
+        KlineSessionDecorator decorator = blockedDecorator(4, 2, WebsocketOverflowPolicy.DROP);
+        decorator.enqueue(new TextMessage("full-1"));
+        decorator.enqueue(new TextMessage("full-2"));
+        decorator.enqueue(new TextMessage("full-3"));
+
+        verify(delegate, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+        assertThat(sent).doesNotContain("full-3");
+    }
+
+    @Test
+    void dropPolicyDiscardsOldestRealtimeMessages() throws Exception {
+        KlineSessionDecorator decorator = blockedDecorator(2, 4, WebsocketOverflowPolicy.DROP);
+        decorator.enqueueRealtime("current_1", new TextMessage("tick-1"));
+        decorator.enqueueRealtime("current_1", new TextMessage("tick-2"));
+        decorator.enqueueRealtime("current_1", new TextMessage("tick-3"));
+        release.countDown();
+
+        verify(delegate, timeout(2000).times(3)).sendMessage(any());
+        assertThat(sent).containsExactly("blocker", "tick-2", "tick-3");
+        verify(delegate, never()).close(any());
+    }
+
+    @Test
+    void closePolicyClosesSessionWhenRealtimeQueueOverflows() throws Exception {
+        KlineSessionDecorator decorator = blockedDecorator(1, 4, WebsocketOverflowPolicy.CLOSE);
+        decorator.enqueueRealtime("current_1", new TextMessage("tick-1"));
+        decorator.enqueueRealtime("current_1", new TextMessage("tick-2"));
+
+        verify(delegate, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+    }
+
+    @Test
+    void coalescePolicyKeepsLatestMessagePerKey() throws Exception {
+        KlineSessionDecorator decorator = blockedDecorator(1, 4, WebsocketOverflowPolicy.COALESCE);
+        decorator.enqueueRealtime("current_1", new TextMessage("asset-1-a"));
+        decorator.enqueueRealtime("current_2", new TextMessage("asset-2-a"));
+        decorator.enqueueRealtime("current_1", new TextMessage("asset-1-b"));
+        decorator.enqueueRealtime("history_1", new TextMessage("history-1-a"));
+        release.countDown();
+
+        verify(delegate, timeout(2000).times(4)).sendMessage(any());
+        assertThat(sent.getFirst()).isEqualTo("blocker");
+        assertThat(sent).containsExactlyInAnyOrder("blocker", "asset-1-b", "asset-2-a", "history-1-a");
+        verify(delegate, never()).close(any());
+    }
+
+    /**
+     * 建立裝飾器並送出一則會被阻塞的完整資料消息，回傳時發送執行緒已被阻塞
+     *
+     * @param queueCapacity     即時資料佇列容量
+     * @param fullQueueCapacity 完整資料佇列容量
+     * @param overflowPolicy    溢出策略
+     *
+     * @return 裝飾器
+     */
+    private KlineSessionDecorator blockedDecorator(int queueCapacity, int fullQueueCapacity, WebsocketOverflowPolicy overflowPolicy) throws InterruptedException {
+        KlineSessionDecorator decorator = new KlineSessionDecorator(delegate, 10_000, 1024 * 1024, queueCapacity, fullQueueCapacity, overflowPolicy);
+        decorator.enqueue(new TextMessage("blocker"));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+        return decorator;
+    }
+}
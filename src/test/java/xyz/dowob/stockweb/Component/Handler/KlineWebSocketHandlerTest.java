@@ -0,0 +1,329 @@
+package xyz.dowob.stockweb.Component.Handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.influxdb.query.FluxRecord;
+import com.influxdb.query.FluxTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import xyz.dowob.stockweb.Component.Method.AssetInfluxMethod;
+import xyz.dowob.stockweb.Component.Method.KlineClusterMethod;
+import xyz.dowob.stockweb.Component.Method.KlineRingBufferMethod;
+import xyz.dowob.stockweb.Enum.AssetType;
+import xyz.dowob.stockweb.Enum.WebsocketOverflowPolicy;
+import xyz.dowob.stockweb.Model.Common.Asset;
+import xyz.dowob.stockweb.Model.Crypto.CryptoTradingPair;
+import xyz.dowob.stockweb.Model.Currency.Currency;
+import xyz.dowob.stockweb.Model.User.User;
+import xyz.dowob.stockweb.Repository.Common.AssetRepository;
+import xyz.dowob.stockweb.Service.Common.AssetService;
+import xyz.dowob.stockweb.Service.Common.RedisService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * KlineWebSocketHandler的歷史K線分段傳輸與排程更新測試。
+ * 以記憶體中的Redis列表與模擬的InfluxDB驗證分段由新到舊發送而快取依時間由舊到新排列，以及只有取得叢集執行權的實例會寫入共享快取。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineWebSocketHandlerTest
+ * @description
+ * @create 2026-10-19 14:20
+ * @Version 1.0
+ **/
+class KlineWebSocketHandlerTest {
+    private static final Long ASSET_ID = 1L;
+
+    private static final int HISTORY_CHUNK_DAYS = 180;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, List<String>> redisLists = new ConcurrentHashMap<>();
+
+    private final Map<String, String> redisValues = new ConcurrentHashMap<>();
+
+    private RedisService redisService;
+
+    private AssetRepository assetRepository;
+
+    private AssetInfluxMethod assetInfluxMethod;
+
+    private KlineClusterMethod klineClusterMethod;
+
+    private AssetService assetService;
+
+    private KlineWebSocketHandler handler;
+
+    private WebSocketSession session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        redisService = mockRedisService();
+        assetRepository = mock(AssetRepository.class);
+        when(assetRepository.findById(ASSET_ID)).thenReturn(Optional.of(cryptoAsset(ASSET_ID)));
+        assetInfluxMethod = mock(AssetInfluxMethod.class);
+        assetService = new AssetService(assetRepository, assetInfluxMethod, objectMapper, redisService, null, null, null, null, null);
+        ReflectionTestUtils.setField(assetService, "klineStreamChunkRows", 2);
+
+        handler = new KlineWebSocketHandler();
+        ReflectionTestUtils.setField(handler, "redisService", redisService);
+        ReflectionTestUtils.setField(handler, "assetService", assetService);
+        ReflectionTestUtils.setField(handler, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(handler, "klineRingBufferMethod", new KlineRingBufferMethod());
+        klineClusterMethod = mock(KlineClusterMethod.class);
+        ReflectionTestUtils.setField(handler, "klineClusterMethod", klineClusterMethod);
+        ReflectionTestUtils.setField(handler, "sendTimeLimit", 10_000);
+        ReflectionTestUtils.setField(handler, "bufferSizeLimit", 1024 * 1024);
+        ReflectionTestUtils.setField(handler, "queueCapacity", 16);
+        ReflectionTestUtils.setField(handler, "fullQueueCapacity", 256);
+        ReflectionTestUtils.setField(handler, "overflowPolicy", WebsocketOverflowPolicy.COALESCE);
+        ReflectionTestUtils.setField(handler, "historyChunkDays", HISTORY_CHUNK_DAYS);
+
+        Currency currency = new Currency();
+        currency.setExchangeRate(BigDecimal.ONE);
+        User user = new User();
+        user.setId(1L);
+        user.setPreferredCurrency(currency);
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("history-session");
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAttributes()).thenReturn(new HashMap<>(Map.of("user", user)));
+        handler.afterConnectionEstablished(session);
+    }
+
+    @AfterEach
+    void tearDown() {
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+    }
+
+    @Test
+    void streamsHistoryNewestFirstAndCachesItOldestFirst() throws Exception {
+        LocalDateTime dateline = LocalDateTime.now(ZoneOffset.UTC).minusDays(2L * HISTORY_CHUNK_DAYS + 40);
+        when(assetInfluxMethod.getKlineDateline(any(), eq(true))).thenReturn(dateline);
+        doAnswer(invocation -> {
+            Instant start = Instant.parse(invocation.getArgument(2));
+            Instant stop = Instant.parse(invocation.getArgument(3));
+            Consumer<FluxRecord> onRecord = invocation.getArgument(4);
+            Duration step = Duration.between(start, stop).dividedBy(4);
+            for (int i = 1; i <= 3; i++) {
+                onRecord.accept(klineRecord(start.plus(step.multipliedBy(i))));
+            }
+            return null;
+        }).when(assetInfluxMethod).streamByAssetRange(any(), eq(true), anyString(), anyString(), any());
+
+        ReflectionTestUtils.invokeMethod(handler, "streamHistoryKlineData", session, ASSET_ID);
+
+        verify(assetInfluxMethod, times(3)).streamByAssetRange(any(), eq(true), anyString(), anyString(), any());
+        ArgumentCaptor<TextMessage> messages = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, times(6)).sendMessage(messages.capture());
+        List<Instant> sentChunkStarts = new ArrayList<>();
+        for (TextMessage message : messages.getAllValues()) {
+            sentChunkStarts.add(timestamps(objectMapper.readTree(message.getPayload()).get("data")).getFirst());
+        }
+        assertThat(sentChunkStarts).isSortedAccordingTo(Comparator.reverseOrder());
+
+        byte[] blob = assetService.getKlineCacheBlob(ASSET_ID, "history");
+        assertThat(blob).isNotNull();
+        List<Instant> cached = timestamps(objectMapper.readTree(blob));
+        assertThat(cached).hasSize(9).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    void refreshWithoutClusterTaskOnlyBroadcastsLocalSubscriptions() throws Exception {
+        Instant lastCached = Instant.parse("2026-10-19T00:00:00Z");
+        Instant refreshed = lastCached.plusSeconds(60);
+        subscribeSession();
+        when(klineClusterMethod.tryAcquireTask("refresh_current", 50)).thenReturn(false);
+        when(redisService.getHashValuesFromKey(eq("kline"), anyList())).thenReturn(Arrays.asList(lastCached.toString(), "success"));
+        when(assetRepository.findAllById(any())).thenReturn(List.of(cryptoAsset(ASSET_ID)));
+        when(assetInfluxMethod.queryByAssets(anyMap(), eq(false))).thenReturn(Map.of(ASSET_ID + "_current", List.of(closeTable(refreshed))));
+
+        ReflectionTestUtils.invokeMethod(handler, "refreshSubscriptions", "current");
+        ReflectionTestUtils.invokeMethod(handler, "refreshSubscriptions", "current");
+
+        verify(klineClusterMethod, never()).getGlobalSubscribedAssetIds();
+        verify(redisService, never()).rPushToCacheList(anyString(), anyString(), anyLong());
+        verify(session, timeout(2000).times(2)).sendMessage(any(WebSocketMessage.class));
+        ArgumentCaptor<Map<Asset, String>> starts = ArgumentCaptor.captor();
+        verify(assetInfluxMethod, times(2)).queryByAssets(starts.capture(), eq(false));
+        assertThat(starts.getAllValues().getFirst().values()).containsExactly(lastCached.toString());
+        assertThat(Instant.parse(starts.getAllValues().getLast().values().iterator().next())).isEqualTo(refreshed);
+    }
+
+    @Test
+    void refreshWithClusterTaskCachesGlobalSubscriptions() throws Exception {
+        Long remoteAssetId = 2L;
+        Instant lastCached = Instant.parse("2026-10-19T00:00:00Z");
+        subscribeSession();
+        when(klineClusterMethod.tryAcquireTask("refresh_current", 50)).thenReturn(true);
+        when(klineClusterMethod.getGlobalSubscribedAssetIds()).thenReturn(Set.of(ASSET_ID, remoteAssetId));
+        when(redisService.getHashValuesFromKey(eq("kline"), anyList())).thenReturn(Arrays.asList(lastCached.toString(),
+                                                                                                lastCached.toString(),
+                                                                                                "success",
+                                                                                                "success"));
+        when(assetRepository.findAllById(any())).thenReturn(List.of(cryptoAsset(ASSET_ID), cryptoAsset(remoteAssetId)));
+        when(assetInfluxMethod.queryByAssets(anyMap(), eq(false))).thenReturn(Map.of(ASSET_ID + "_current",
+                                                                                     List.of(closeTable(lastCached.plusSeconds(60))),
+                                                                                     remoteAssetId + "_current",
+                                                                                     List.of(closeTable(lastCached.plusSeconds(60)))));
+
+        ReflectionTestUtils.invokeMethod(handler, "refreshSubscriptions", "current");
+
+        assertThat(redisLists).containsOnlyKeys("kline_current_1:data", "kline_current_2:data");
+        assertThat(redisLists.values()).allSatisfy(list -> assertThat(list).hasSize(1));
+        verify(session, timeout(2000)).sendMessage(any(WebSocketMessage.class));
+    }
+
+    @Test
+    void waiterLoadsItselfWhenSharedLoadFails() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<FluxRecord> onRecord = invocation.getArgument(3);
+            onRecord.accept(klineRecord(Instant.parse("2026-10-19T00:00:00Z")));
+            return null;
+        }).when(assetInfluxMethod).streamByAsset(any(), eq(false), isNull(), any());
+        CompletableFuture<Boolean> sharedLoad = startSharedLoad();
+
+        ReflectionTestUtils.invokeMethod(handler, "loadKlineData", session, ASSET_ID, "current");
+        finishSharedLoad(sharedLoad).completeExceptionally(new IllegalStateException("influx unavailable"));
+
+        verify(session, timeout(2000)).sendMessage(any(WebSocketMessage.class));
+        verify(session, never()).close(any(CloseStatus.class));
+        assertThat(redisLists.get("kline_current_1:data")).hasSize(1);
+    }
+
+    @Test
+    void waiterClosesSessionWhenItsOwnLoadAlsoFails() throws Exception {
+        doThrow(new IllegalStateException("influx unavailable")).when(assetInfluxMethod).streamByAsset(any(), eq(false), isNull(), any());
+        CompletableFuture<Boolean> sharedLoad = startSharedLoad();
+
+        ReflectionTestUtils.invokeMethod(handler, "loadKlineData", session, ASSET_ID, "current");
+        finishSharedLoad(sharedLoad).complete(null);
+
+        ArgumentCaptor<CloseStatus> status = ArgumentCaptor.forClass(CloseStatus.class);
+        verify(session, timeout(2000)).close(status.capture());
+        assertThat(status.getValue().getCode()).isEqualTo(CloseStatus.SERVER_ERROR.getCode());
+        verify(session, never()).sendMessage(any(WebSocketMessage.class));
+    }
+
+    /**
+     * 以HashMap模擬Redis的列表與字串值，只實作歷史K線快取用到的操作
+     *
+     * @return 模擬的RedisService
+     *
+     * @throws Exception 模擬方法宣告的例外
+     */
+    private RedisService mockRedisService() throws Exception {
+        RedisService redisService = mock(RedisService.class);
+        when(redisService.rPushToCacheList(anyString(), anyString(), anyLong())).thenAnswer(invocation -> {
+            List<String> list = redisLists.computeIfAbsent(invocation.getArgument(0), k -> new ArrayList<>());
+            list.add(invocation.getArgument(1));
+            return (long) list.size();
+        });
+        doAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            keys.forEach(key -> {
+                redisLists.remove(key);
+                redisValues.remove(key);
+            });
+            return null;
+        }).when(redisService).deleteKeys(anyCollection());
+        doAnswer(invocation -> redisValues.put(invocation.getArgument(0), invocation.getArgument(1))).when(redisService)
+                                                                                                     .saveValueToCache(anyString(),
+                                                                                                                       anyString(),
+                                                                                                                       anyInt());
+        when(redisService.getCacheValueFromKey(anyString())).thenAnswer(invocation -> redisValues.get(invocation.<String>getArgument(0)));
+        when(redisService.getBytesAndList(anyString(), anyString())).thenAnswer(invocation -> {
+            List<String> list = redisLists.getOrDefault(invocation.<String>getArgument(1), List.of());
+            return new RedisService.BytesListSnapshot(null, list);
+        });
+        return redisService;
+    }
+
+    private void subscribeSession() {
+        ReflectionTestUtils.invokeMethod(handler, "addSubscription", ASSET_ID, session.getId());
+    }
+
+    /**
+     * 模擬另一個連線正在載入同一資產的current資料
+     *
+     * @return 該次載入的Future
+     */
+    private CompletableFuture<Boolean> startSharedLoad() {
+        CompletableFuture<Boolean> sharedLoad = new CompletableFuture<>();
+        klineLoading().put("current_" + ASSET_ID, sharedLoad);
+        return sharedLoad;
+    }
+
+    /**
+     * 與實際的載入相同，先從KLINE_LOADING移除再完成Future
+     *
+     * @param sharedLoad 載入的Future
+     *
+     * @return 載入的Future
+     */
+    private CompletableFuture<Boolean> finishSharedLoad(CompletableFuture<Boolean> sharedLoad) {
+        klineLoading().remove("current_" + ASSET_ID, sharedLoad);
+        return sharedLoad;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, CompletableFuture<Boolean>> klineLoading() {
+        return (Map<String, CompletableFuture<Boolean>>) Objects.requireNonNull(ReflectionTestUtils.getField(KlineWebSocketHandler.class,
+                                                                                                             "KLINE_LOADING"));
+    }
+
+    private CryptoTradingPair cryptoAsset(Long assetId) {
+        CryptoTradingPair asset = new CryptoTradingPair();
+        asset.setId(assetId);
+        asset.setAssetType(AssetType.CRYPTO);
+        asset.setTradingPair("PAIR" + assetId);
+        return asset;
+    }
+
+    private FluxTable closeTable(Instant time) {
+        FluxRecord record = new FluxRecord(0);
+        record.getValues().put("_time", time);
+        record.getValues().put("_field", "close");
+        record.getValues().put("_value", 1.5);
+        FluxTable table = new FluxTable();
+        table.getRecords().add(record);
+        return table;
+    }
+
+    private FluxRecord klineRecord(Instant time) {
+        FluxRecord record = new FluxRecord(0);
+        record.getValues().put("_time", time);
+        record.getValues().put("open", 1.0);
+        record.getValues().put("high", 2.0);
+        record.getValues().put("low", 0.5);
+        record.getValues().put("close", 1.5);
+        record.getValues().put("volume", 10.0);
+        return record;
+    }
+
+    private List<Instant> timestamps(JsonNode klines) {
+        List<Instant> timestamps = new ArrayList<>();
+        klines.forEach(node -> timestamps.add(Instant.parse(node.get("timestamp").asText())));
+        return timestamps;
+    }
+}
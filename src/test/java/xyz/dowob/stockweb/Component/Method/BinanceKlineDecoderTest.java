@@ -0,0 +1,75 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+import xyz.dowob.stockweb.Enum.AssetType;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BinanceKlineDecoder的訊息解析與十進位字串解析(parseDecimal)測試，解析結果需與Double.parseDouble完全相同。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName BinanceKlineDecoderTest
+ * @description
+ * @create 2026-10-19 11:45
+ * @Version 1.0
+ **/
+class BinanceKlineDecoderTest {
+    private final BinanceKlineDecoder decoder = new BinanceKlineDecoder();
+
+    @Test
+    void decodesCombinedStreamKline() throws IOException {
+        String payload = """
+                {"stream":"btcusdt@kline_1m","data":{"e":"kline","E":1700000001000,"s":"BTCUSDT","k":{"t":1700000000000,"T":1700000059999,
+                "s":"BTCUSDT","i":"1m","f":100,"L":200,"o":"36500.10000000","c":"36510.25000000","h":"36520.00000000","l":"36490.01000000",
+                "v":"12.34500000","n":100,"x":true,"q":"450000.00","V":"6.0","Q":"219000.0","B":"0"}}}
+                """;
+
+        KlineEvent event = decoder.decode(payload);
+
+        assertThat(event).isEqualTo(new KlineEvent("BTCUSDT", AssetType.CRYPTO, 1700000000000L, 36500.1, 36520, 36490.01, 36510.25, 12.345, true));
+    }
+
+    @Test
+    void returnsNullForNonKlineMessages() throws IOException {
+        assertThat(decoder.decode("{\"result\":null,\"id\":1}")).isNull();
+        assertThat(decoder.decode("[]")).isNull();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "42", "0.1", "0.00000001", "36510.25000000", "-1.5", "5.", "123456789.12345678", "0.000000000000000000001234",
+                            "98765432109876543210", "1e-5", "1.5E3", "0.30000000000000004"})
+    void parsesDecimalLikeDoubleParseDouble(String value) throws IOException {
+        assertThat(decodeClose(value)).isEqualTo(Double.parseDouble(value));
+    }
+
+    @Test
+    void parsesRandomPricesLikeDoubleParseDouble() throws IOException {
+        Random random = new Random(20261019L);
+        for (int i = 0; i < 10_000; i++) {
+            String value = String.format("%d.%08d", random.nextInt(1_000_000), random.nextInt(100_000_000));
+            assertThat(decodeClose(value)).as(value).isEqualTo(Double.parseDouble(value));
+        }
+    }
+
+    @Test
+    void acceptsNumericTokens() throws IOException {
+        KlineEvent event = decoder.decode("{\"data\":{\"k\":{\"s\":\"ETHUSDT\",\"t\":1,\"c\":12.5,\"v\":3}}}");
+
+        assertThat(event.close()).isEqualTo(12.5);
+        assertThat(event.volume()).isEqualTo(3);
+        assertThat(event.open()).isNaN();
+        assertThat(event.closed()).isFalse();
+    }
+
+    private double decodeClose(String value) throws IOException {
+        return decoder.decode("{\"data\":{\"k\":{\"s\":\"BTCUSDT\",\"t\":1,\"c\":\"" + value + "\"}}}").close();
+    }
+}
@@ -0,0 +1,85 @@
+package xyz.dowob.stockweb.Component.Method.Flux;
+
+import org.junit.jupiter.api.Test;
+import xyz.dowob.stockweb.Exception.FormatExceptions;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * FluxQuery的字面值跳脫、參數綁定與時間格式驗證測試。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName FluxQueryTest
+ * @description
+ * @create 2026-10-19 12:00
+ * @Version 1.0
+ **/
+class FluxQueryTest {
+    @Test
+    void bindsValuesAsParams() {
+        FluxQuery query = FluxQuery.from("crypto").range("-30d").filter("tradingPair", "BTCUSDT").last().build();
+
+        assertThat(query.getBody()).isEqualTo(
+                "from(bucket: params.p0) |> range(start: params.p1) |> filter(fn: (r) => r[\"tradingPair\"] == params.p2) |> last()");
+        assertThat(query.toFlux()).isEqualTo("params = {p0: \"crypto\", p1: -30d, p2: \"BTCUSDT\"}\n" + query.getBody());
+    }
+
+    @Test
+    void escapesStringLiterals() {
+        FluxQuery query = FluxQuery.from("bucket").filter("tag", "a\"b\\c\nd\re\tf${g}$h").build();
+
+        assertThat(query.toFlux()).startsWith("params = {p0: \"bucket\", p1: \"a\\\"b\\\\c\\nd\\re\\tf\\${g}$h\"}\n");
+    }
+
+    @Test
+    void keepsInjectedSyntaxInsideLiteral() {
+        FluxQuery query = FluxQuery.from("bucket").filter("tag", "x\") |> drop(columns: [\"_value\"]) //").build();
+
+        assertThat(query.getBody()).doesNotContain("drop");
+        assertThat(query.toFlux()).contains("p1: \"x\\\") |> drop(columns: [\\\"_value\\\"]) //\"");
+    }
+
+    @Test
+    void escapesColumnNamesInBody() {
+        FluxQuery query = FluxQuery.from("bucket").filter("a\"]b", "v").group("c\\d").build();
+
+        assertThat(query.getBody()).contains("r[\"a\\\"]b\"] == params.p1").contains("group(columns: [\"c\\\\d\"])");
+    }
+
+    @Test
+    void bindsCollectionAsSetLiteral() {
+        FluxQuery query = FluxQuery.from("bucket").filter("symbol", List.of("A", "B\"")).build();
+
+        assertThat(query.getBody()).contains("contains(value: r[\"symbol\"], set: params.p1)");
+        assertThat(query.toFlux()).contains("p1: [\"A\", \"B\\\"\"]");
+    }
+
+    @Test
+    void normalizesTimeLiterals() {
+        FluxQuery query = FluxQuery.from("bucket").range("2024-01-01T00:00:00Z", "now()").build();
+
+        assertThat(query.toFlux()).startsWith("params = {p0: \"bucket\", p1: 2024-01-01T00:00:00Z, p2: now()}\n");
+        assertThat(FluxQuery.from("bucket").range("-1h30m").build().toFlux()).contains("p1: -1h30m");
+    }
+
+    @Test
+    void rejectsInvalidTimeLiterals() {
+        assertThatThrownBy(() -> FluxQuery.from("bucket").range("2024-01-01")).isInstanceOf(FormatExceptions.class);
+        assertThatThrownBy(() -> FluxQuery.from("bucket").range("-1d) |> drop(columns: [\"_value\"])")).isInstanceOf(FormatExceptions.class);
+        assertThatThrownBy(() -> FluxQuery.from("bucket").range("now()", "tomorrow")).isInstanceOf(FormatExceptions.class);
+    }
+
+    @Test
+    void sameShapeSharesBodyAndEqualityUsesParams() {
+        FluxQuery btc = FluxQuery.from("crypto").range("-1d").filter("tradingPair", "BTCUSDT").build();
+        FluxQuery eth = FluxQuery.from("crypto").range("-1d").filter("tradingPair", "ETHUSDT").build();
+        FluxQuery btcAgain = FluxQuery.from("crypto").range("-1d").filter("tradingPair", "BTCUSDT").build();
+
+        assertThat(btc.getBody()).isEqualTo(eth.getBody());
+        assertThat(btc).isNotEqualTo(eth).isEqualTo(btcAgain).hasSameHashCodeAs(btcAgain);
+    }
+}
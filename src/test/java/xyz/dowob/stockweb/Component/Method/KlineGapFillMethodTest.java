@@ -0,0 +1,292 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+import xyz.dowob.stockweb.Enum.AssetType;
+import xyz.dowob.stockweb.Model.Crypto.CryptoTradingPair;
+import xyz.dowob.stockweb.Service.Crypto.CryptoInfluxService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 以本地的JDK HttpServer模擬Binance REST端點，驗證K線缺口補齊透過HTTP取得資料後寫入InfluxDB與環形緩衝區。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineGapFillMethodTest
+ * @description
+ * @create 2026-10-19 10:10
+ * @Version 1.0
+ **/
+@ExtendWith(MockitoExtension.class)
+class KlineGapFillMethodTest {
+    private static final long MINUTE = 60_000L;
+
+    private static final String SYMBOL = "BTCUSDT";
+
+    private static final Long ASSET_ID = 1L;
+
+    private static final long MAX_HOURS = 24L;
+
+    @Mock
+    private CryptoInfluxService cryptoInfluxService;
+
+    @Captor
+    private ArgumentCaptor<List<KlineEvent>> klineEventsCaptor;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<Long, String> responses = new ConcurrentHashMap<>();
+
+    private final List<Map<String, String>> requests = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+
+    private KlineRingBufferMethod klineRingBufferMethod;
+
+    private KlineGapFillMethod klineGapFillMethod;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/v3/klines", this::handleKlines);
+        server.start();
+
+        klineRingBufferMethod = new KlineRingBufferMethod();
+        ReflectionTestUtils.setField(klineRingBufferMethod, "capacity", 100);
+        ReflectionTestUtils.setField(klineRingBufferMethod, "cryptoCurrentRemainDay", 0);
+        CryptoTradingPair cryptoTradingPair = new CryptoTradingPair();
+        cryptoTradingPair.setId(ASSET_ID);
+        cryptoTradingPair.setAssetType(AssetType.CRYPTO);
+        cryptoTradingPair.setTradingPair(SYMBOL);
+        klineRingBufferMethod.register(cryptoTradingPair);
+        klineRingBufferMethod.seed(ASSET_ID, "[]".getBytes(StandardCharsets.UTF_8));
+
+        klineGapFillMethod = new KlineGapFillMethod(cryptoInfluxService, klineRingBufferMethod, objectMapper, new RestTemplate());
+        ReflectionTestUtils.setField(klineGapFillMethod, "restUrl", "http://localhost:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(klineGapFillMethod, "batchSize", 1000);
+        ReflectionTestUtils.setField(klineGapFillMethod, "parallelism", 2);
+        ReflectionTestUtils.setField(klineGapFillMethod, "timeoutSeconds", 10L);
+        ReflectionTestUtils.setField(klineGapFillMethod, "maxHours", MAX_HOURS);
+        klineGapFillMethod.init();
+
+        lenient().when(cryptoInfluxService.getLastKlineTime(anyString(), anyLong(), anyLong()))
+                 .thenAnswer(invocation -> invocation.<Long>getArgument(2) - MINUTE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void backfillStreamsWritesMissingKlinesAndInsertsThemInOrder() throws Exception {
+        long currentOpenTime = currentOpenTime();
+        long lastClosed = currentOpenTime - 3 * MINUTE;
+        receive(lastClosed);
+        receive(currentOpenTime, false);
+        respondKlines(lastClosed + MINUTE, lastClosed + MINUTE, lastClosed + 2 * MINUTE);
+
+        klineGapFillMethod.backfillStreams(List.of("btcusdt@kline_1m")).get(10, TimeUnit.SECONDS);
+
+        assertThat(requestedStartTimes()).containsExactly(lastClosed + MINUTE);
+        assertThat(requests.getFirst()).containsEntry("symbol", SYMBOL)
+                                       .containsEntry("interval", "1m")
+                                       .containsEntry("endTime", String.valueOf(currentOpenTime - 1));
+        verify(cryptoInfluxService).writeToInflux(klineEventsCaptor.capture());
+        assertThat(klineEventsCaptor.getValue()).extracting(KlineEvent::epochMillis)
+                                                .containsExactly(lastClosed + MINUTE, lastClosed + 2 * MINUTE);
+        assertThat(klineEventsCaptor.getValue()).allMatch(KlineEvent::closed);
+        assertThat(ringBufferTimestamps()).containsExactly(lastClosed,
+                                                           lastClosed + MINUTE,
+                                                           lastClosed + 2 * MINUTE,
+                                                           currentOpenTime);
+    }
+
+    @Test
+    void backfillStreamsRequestsNextBatchWhenBatchIsFull() throws Exception {
+        ReflectionTestUtils.setField(klineGapFillMethod, "batchSize", 2);
+        long currentOpenTime = currentOpenTime();
+        long lastClosed = currentOpenTime - 4 * MINUTE;
+        receive(lastClosed);
+        respondKlines(lastClosed + MINUTE, lastClosed + MINUTE, lastClosed + 2 * MINUTE);
+        respondKlines(lastClosed + 3 * MINUTE, lastClosed + 3 * MINUTE);
+
+        klineGapFillMethod.backfillStreams(List.of("btcusdt@kline_1m")).get(10, TimeUnit.SECONDS);
+
+        assertThat(requestedStartTimes()).containsExactly(lastClosed + MINUTE, lastClosed + 3 * MINUTE);
+        verify(cryptoInfluxService, times(2)).writeToInflux(klineEventsCaptor.capture());
+        assertThat(klineEventsCaptor.getAllValues()).flatExtracting(events -> events.stream().map(KlineEvent::epochMillis).toList())
+                                                    .containsExactly(lastClosed + MINUTE, lastClosed + 2 * MINUTE, lastClosed + 3 * MINUTE);
+        assertThat(ringBufferTimestamps()).containsExactly(lastClosed, lastClosed + MINUTE, lastClosed + 2 * MINUTE, lastClosed + 3 * MINUTE);
+    }
+
+    @Test
+    void backfillStreamsSkipsContinuousStreams() throws Exception {
+        receive(currentOpenTime() - MINUTE);
+
+        klineGapFillMethod.backfillStreams(List.of("btcusdt@kline_1m", "ethusdt@kline_1m")).get(10, TimeUnit.SECONDS);
+
+        assertThat(requests).isEmpty();
+        verify(cryptoInfluxService, never()).writeToInflux(anyList());
+    }
+
+    @Test
+    void backfillStreamsSeedsUnseenPairFromLastStoredKline() throws Exception {
+        long currentOpenTime = currentOpenTime();
+        long stored = currentOpenTime - 3 * MINUTE;
+        when(cryptoInfluxService.getLastKlineTime(eq(SYMBOL), anyLong(), eq(currentOpenTime))).thenReturn(stored);
+        respondKlines(stored, stored, stored + MINUTE, stored + 2 * MINUTE);
+
+        klineGapFillMethod.backfillStreams(List.of("btcusdt@kline_1m")).get(10, TimeUnit.SECONDS);
+
+        verify(cryptoInfluxService).getLastKlineTime(SYMBOL, currentOpenTime - Duration.ofHours(MAX_HOURS).toMillis(), currentOpenTime);
+        assertThat(requestedStartTimes()).containsExactly(stored);
+        verify(cryptoInfluxService).writeToInflux(klineEventsCaptor.capture());
+        assertThat(klineEventsCaptor.getValue()).extracting(KlineEvent::epochMillis).containsExactly(stored, stored + MINUTE, stored + 2 * MINUTE);
+        assertThat(ringBufferTimestamps()).containsExactly(stored, stored + MINUTE, stored + 2 * MINUTE);
+    }
+
+    @Test
+    void backfillStreamsCapsUnseenPairWithoutStoredKlinesToMaxHours() throws Exception {
+        long currentOpenTime = currentOpenTime();
+        long earliest = currentOpenTime - Duration.ofHours(MAX_HOURS).toMillis();
+        when(cryptoInfluxService.getLastKlineTime(SYMBOL, earliest, currentOpenTime)).thenReturn(null);
+
+        klineGapFillMethod.backfillStreams(List.of("btcusdt@kline_1m")).get(10, TimeUnit.SECONDS);
+
+        assertThat(requestedStartTimes()).containsExactly(earliest);
+        verify(cryptoInfluxService, never()).writeToInflux(anyList());
+    }
+
+    @Test
+    void recordKlineBackfillsGapBetweenClosedKlines() throws Exception {
+        long first = currentOpenTime() - 10 * MINUTE;
+        long next = first + 4 * MINUTE;
+        respondKlines(first + MINUTE, first + MINUTE, first + 2 * MINUTE, first + 3 * MINUTE);
+
+        receive(first);
+        receive(next);
+
+        verify(cryptoInfluxService, timeout(5000)).writeToInflux(klineEventsCaptor.capture());
+        assertThat(requestedStartTimes()).containsExactly(first + MINUTE);
+        assertThat(klineEventsCaptor.getValue()).extracting(KlineEvent::epochMillis)
+                                                .containsExactly(first + MINUTE, first + 2 * MINUTE, first + 3 * MINUTE);
+    }
+
+    @Test
+    void recordKlineBackfillsGapAfterRestartFromLastStoredKline() throws Exception {
+        long first = currentOpenTime() - 10 * MINUTE;
+        long stored = first - 3 * MINUTE;
+        when(cryptoInfluxService.getLastKlineTime(eq(SYMBOL), anyLong(), eq(first))).thenReturn(stored);
+        respondKlines(stored, stored, stored + MINUTE, stored + 2 * MINUTE);
+
+        receive(first);
+
+        verify(cryptoInfluxService, timeout(5000)).writeToInflux(klineEventsCaptor.capture());
+        assertThat(requestedStartTimes()).containsExactly(stored);
+        assertThat(requests.getFirst()).containsEntry("endTime", String.valueOf(first - 1));
+        assertThat(klineEventsCaptor.getValue()).extracting(KlineEvent::epochMillis).containsExactly(stored, stored + MINUTE, stored + 2 * MINUTE);
+    }
+
+    private long currentOpenTime() {
+        long now = System.currentTimeMillis();
+        return now - now % MINUTE;
+    }
+
+    private void receive(long openTime) {
+        receive(openTime, true);
+    }
+
+    /**
+     * 模擬即時串流收到一根K線
+     *
+     * @param openTime 開盤時間
+     * @param closed   是否已收盤
+     */
+    private void receive(long openTime, boolean closed) {
+        KlineEvent klineEvent = new KlineEvent(SYMBOL, AssetType.CRYPTO, openTime, 1, 2, 0.5, 1.5, 10, closed);
+        klineRingBufferMethod.append(klineEvent);
+        klineGapFillMethod.recordKline(klineEvent);
+    }
+
+    /**
+     * 設定以startTime開始的klines請求所回傳的K線，未設定的請求回傳空陣列
+     *
+     * @param startTime 請求的開始時間
+     * @param openTimes 回傳的K線開盤時間
+     */
+    private void respondKlines(long startTime, long... openTimes) throws JsonProcessingException {
+        List<Object[]> klines = new ArrayList<>();
+        for (long openTime : openTimes) {
+            klines.add(new Object[]{openTime, "1.0", "2.0", "0.5", "1.5", "10.0", openTime + MINUTE - 1, "15.0", 5, "5.0", "7.5", "0"});
+        }
+        responses.put(startTime, objectMapper.writeValueAsString(klines));
+    }
+
+    private void handleKlines(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : exchange.getRequestURI().getRawQuery().split("&")) {
+            int separator = pair.indexOf('=');
+            params.put(pair.substring(0, separator), pair.substring(separator + 1));
+        }
+        requests.add(params);
+        byte[] body = responses.getOrDefault(Long.parseLong(params.get("startTime")), "[]").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private List<Long> requestedStartTimes() {
+        return requests.stream().map(params -> Long.parseLong(params.get("startTime"))).toList();
+    }
+
+    private List<Long> ringBufferTimestamps() throws Exception {
+        List<Long> timestamps = new ArrayList<>();
+        for (JsonNode node : objectMapper.readTree(klineRingBufferMethod.getKlineData(ASSET_ID))) {
+            timestamps.add(Instant.parse(node.get("timestamp").asText()).toEpochMilli());
+        }
+        return timestamps;
+    }
+}
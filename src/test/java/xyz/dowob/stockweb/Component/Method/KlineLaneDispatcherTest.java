@@ -0,0 +1,137 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import xyz.dowob.stockweb.Dto.Common.KlineEvent;
+import xyz.dowob.stockweb.Enum.AssetType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * KlineLaneDispatcher的交易對內順序、單一處理者與通道滿載時的丟棄策略測試。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineLaneDispatcherTest
+ * @description
+ * @create 2026-10-19 12:15
+ * @Version 1.0
+ **/
+class KlineLaneDispatcherTest {
+    private static final List<String> SYMBOLS = List.of("BTCUSDT", "ETHUSDT", "BNBUSDT", "SOLUSDT");
+
+    private KlineLaneDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new KlineLaneDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "laneCapacity", 100_000);
+    }
+
+    @Test
+    void keepsOrderPerSymbolWithSingleConsumer() throws InterruptedException {
+        int perSymbol = 5_000;
+        Map<String, List<Long>> received = new ConcurrentHashMap<>();
+        Map<String, AtomicBoolean> active = new ConcurrentHashMap<>();
+        AtomicBoolean overlapped = new AtomicBoolean(false);
+        CountDownLatch done = new CountDownLatch(perSymbol * SYMBOLS.size());
+        Consumer<KlineEvent> sink = event -> {
+            AtomicBoolean running = active.computeIfAbsent(event.symbol(), k -> new AtomicBoolean(false));
+            if (!running.compareAndSet(false, true)) {
+                overlapped.set(true);
+            }
+            received.computeIfAbsent(event.symbol(), k -> new CopyOnWriteArrayList<>()).add(event.epochMillis());
+            running.set(false);
+            done.countDown();
+        };
+
+        Thread[] producers = new Thread[SYMBOLS.size()];
+        for (int p = 0; p < producers.length; p++) {
+            String symbol = SYMBOLS.get(p);
+            producers[p] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perSymbol; i++) {
+                    dispatcher.dispatch(event(symbol, i, true), sink);
+                }
+            });
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(overlapped).isFalse();
+        for (String symbol : SYMBOLS) {
+            assertThat(received.get(symbol)).hasSize(perSymbol).isSorted();
+        }
+    }
+
+    @Test
+    void dropsOldestOpenKlineWhenLaneIsFull() throws InterruptedException {
+        ReflectionTestUtils.setField(dispatcher, "laneCapacity", 3);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+        Consumer<KlineEvent> sink = event -> {
+            if (event.epochMillis() == 0) {
+                blocked.countDown();
+                await(release);
+            }
+            received.add(event.epochMillis());
+            done.countDown();
+        };
+
+        dispatcher.dispatch(event("BTCUSDT", 0, true), sink);
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(event("BTCUSDT", 1, false), sink);
+        dispatcher.dispatch(event("BTCUSDT", 2, true), sink);
+        dispatcher.dispatch(event("BTCUSDT", 3, false), sink);
+        dispatcher.dispatch(event("BTCUSDT", 4, false), sink);
+        release.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).containsExactly(0L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void continuesAfterSinkFailure() throws InterruptedException {
+        List<Long> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        Consumer<KlineEvent> sink = event -> {
+            if (event.epochMillis() == 1) {
+                done.countDown();
+                throw new IllegalStateException("寫入失敗");
+            }
+            received.add(event.epochMillis());
+            done.countDown();
+        };
+
+        dispatcher.dispatch(event("BTCUSDT", 1, true), sink);
+        dispatcher.dispatch(event("BTCUSDT", 2, true), sink);
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).containsExactly(2L);
+    }
+
+    private KlineEvent event(String symbol, long openTime, boolean closed) {
+        return new KlineEvent(symbol, AssetType.CRYPTO, openTime, 1, 1, 1, 1, 1, closed);
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
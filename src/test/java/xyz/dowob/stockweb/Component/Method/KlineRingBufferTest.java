@@ -0,0 +1,153 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import xyz.dowob.stockweb.Component.Handler.KlineBinaryEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * KlineRingBuffer的環繞、覆寫與依時間順序插入測試。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName KlineRingBufferTest
+ * @description
+ * @create 2026-10-19 11:30
+ * @Version 1.0
+ **/
+class KlineRingBufferTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void keepsRecordsInOrderBelowCapacity() {
+        KlineRingBuffer buffer = new KlineRingBuffer(5);
+        append(buffer, 1, 2, 3);
+
+        assertThat(buffer.size()).isEqualTo(3);
+        assertThat(timestamps(buffer)).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void wrapsAroundAndEvictsOldestRecords() {
+        KlineRingBuffer buffer = new KlineRingBuffer(3);
+        append(buffer, 1, 2, 3, 4, 5);
+
+        assertThat(buffer.size()).isEqualTo(3);
+        assertThat(timestamps(buffer)).containsExactly(3L, 4L, 5L);
+        assertThat(closes(buffer)).containsExactly(3d, 4d, 5d);
+    }
+
+    @Test
+    void overwritesLatestRecordWithSameTimestamp() {
+        KlineRingBuffer buffer = new KlineRingBuffer(3);
+        buffer.append(1, 1, 1, 1, 1, 1);
+        buffer.append(2, 2, 2, 2, 2, 2);
+        buffer.append(2, 2, 3, 2, 2.5, 7);
+
+        assertThat(buffer.size()).isEqualTo(2);
+        assertThat(timestamps(buffer)).containsExactly(1L, 2L);
+        assertThat(closes(buffer)).containsExactly(1d, 2.5d);
+    }
+
+    @Test
+    void overwritesSameTimestampAfterWraparound() {
+        KlineRingBuffer buffer = new KlineRingBuffer(3);
+        append(buffer, 1, 2, 3, 4);
+        buffer.append(4, 4, 4, 4, 40, 4);
+
+        assertThat(timestamps(buffer)).containsExactly(2L, 3L, 4L);
+        assertThat(closes(buffer)).containsExactly(2d, 3d, 40d);
+    }
+
+    @Test
+    void insertsOlderRecordsInOrder() {
+        KlineRingBuffer buffer = new KlineRingBuffer(5);
+        append(buffer, 1, 4);
+        append(buffer, 2, 3);
+
+        assertThat(timestamps(buffer)).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(closes(buffer)).containsExactly(1d, 2d, 3d, 4d);
+    }
+
+    @Test
+    void insertsOlderRecordsAcrossWraparound() {
+        KlineRingBuffer buffer = new KlineRingBuffer(4);
+        append(buffer, 1, 2, 3, 5, 6);
+        buffer.append(4, 4, 4, 4, 4, 4);
+
+        assertThat(buffer.size()).isEqualTo(4);
+        assertThat(timestamps(buffer)).containsExactly(3L, 4L, 5L, 6L);
+        buffer.append(7, 7, 7, 7, 7, 7);
+        assertThat(timestamps(buffer)).containsExactly(4L, 5L, 6L, 7L);
+    }
+
+    @Test
+    void overwritesOlderRecordWithSameTimestamp() {
+        KlineRingBuffer buffer = new KlineRingBuffer(4);
+        append(buffer, 1, 2, 3);
+        buffer.append(2, 2, 2, 2, 20, 2);
+
+        assertThat(timestamps(buffer)).containsExactly(1L, 2L, 3L);
+        assertThat(closes(buffer)).containsExactly(1d, 20d, 3d);
+    }
+
+    @Test
+    void ignoresRecordOlderThanOldestWhenFull() {
+        KlineRingBuffer buffer = new KlineRingBuffer(3);
+        append(buffer, 2, 3, 4);
+        buffer.append(1, 1, 1, 1, 1, 1);
+
+        assertThat(timestamps(buffer)).containsExactly(2L, 3L, 4L);
+    }
+
+    @Test
+    void jsonOutputMatchesCacheFormat() throws Exception {
+        KlineRingBuffer buffer = new KlineRingBuffer(2);
+        buffer.append(1_700_000_000_000L, 1.5, 2, 1, Double.NaN, 10);
+
+        JsonNode node = objectMapper.readTree(buffer.toJsonArray()).get(0);
+        assertThat(node.get("timestamp").asText()).isEqualTo("2023-11-14T22:13:20.000Z");
+        assertThat(node.get("open").asText()).isEqualTo("1.5");
+        assertThat(node.get("close").isNull()).isTrue();
+    }
+
+    @Test
+    void binaryRecordsMatchEncodedJson() throws Exception {
+        KlineRingBuffer buffer = new KlineRingBuffer(3);
+        append(buffer, 1_000, 2_000, 3_000, 4_000);
+
+        byte[] records = buffer.toBinaryRecords();
+        assertThat(records).hasSize(3 * KlineRingBuffer.RECORD_SIZE);
+        assertThat(records).isEqualTo(KlineBinaryEncoder.encodeRecords(buffer.toJsonArray(), objectMapper.getFactory()));
+    }
+
+    private void append(KlineRingBuffer buffer, long... timestamps) {
+        for (long timestamp : timestamps) {
+            buffer.append(timestamp, timestamp, timestamp, timestamp, timestamp, timestamp);
+        }
+    }
+
+    private List<Long> timestamps(KlineRingBuffer buffer) {
+        ByteBuffer records = ByteBuffer.wrap(buffer.toBinaryRecords());
+        List<Long> timestamps = new ArrayList<>();
+        for (int offset = 0; offset < records.capacity(); offset += KlineRingBuffer.RECORD_SIZE) {
+            timestamps.add(records.getLong(offset));
+        }
+        return timestamps;
+    }
+
+    private List<Double> closes(KlineRingBuffer buffer) {
+        ByteBuffer records = ByteBuffer.wrap(buffer.toBinaryRecords());
+        List<Double> closes = new ArrayList<>();
+        for (int offset = 0; offset < records.capacity(); offset += KlineRingBuffer.RECORD_SIZE) {
+            closes.add(records.getDouble(offset + 32));
+        }
+        return closes;
+    }
+}
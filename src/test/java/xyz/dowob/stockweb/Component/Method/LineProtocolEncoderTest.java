@@ -0,0 +1,65 @@
+package xyz.dowob.stockweb.Component.Method;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * LineProtocolEncoder的跳脫規則與非法欄位處理測試。
+ *
+ * @author yuan
+ * @program Stock-Web
+ * @ClassName LineProtocolEncoderTest
+ * @description
+ * @create 2026-10-19 10:50
+ * @Version 1.0
+ **/
+class LineProtocolEncoderTest {
+    @Test
+    void escapesMeasurementTagsAndFieldKeys() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder(1);
+        encoder.measurement("kline data,1=2").tag("trading pair", "BTC,USDT=x").field("open price", 1.5).time(10);
+
+        assertThat(encoder.drain()).isEqualTo("kline\\ data\\,1=2,trading\\ pair=BTC\\,USDT\\=x open\\ price=1.5 10");
+    }
+
+    @Test
+    void joinsLinesWithNewlineAndDrainResets() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder(2);
+        encoder.measurement("kline_data").tag("tradingPair", "BTCUSDT").field("open", 1.0).field("close", 2.0).time(1);
+        encoder.measurement("kline_data").tag("tradingPair", "BTCUSDT").field("open", 3.0).time(2);
+
+        assertThat(encoder.size()).isEqualTo(2);
+        assertThat(encoder.drain()).isEqualTo("kline_data,tradingPair=BTCUSDT open=1.0,close=2.0 1\nkline_data,tradingPair=BTCUSDT open=3.0 2");
+        assertThat(encoder.size()).isZero();
+        assertThat(encoder.drain()).isEmpty();
+    }
+
+    @Test
+    void skipsNonFiniteFields() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder(1);
+        encoder.measurement("kline_data").field("open", Double.NaN).field("close", 2.0).field("high", Double.POSITIVE_INFINITY).time(1);
+
+        assertThat(encoder.drain()).isEqualTo("kline_data close=2.0 1");
+    }
+
+    @Test
+    void dropsLineWithoutValidFields() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder(3);
+        encoder.measurement("kline_data").tag("tradingPair", "BTCUSDT").field("open", 1.0).time(1);
+        encoder.measurement("kline_data").tag("tradingPair", "BTCUSDT").field("open", Double.NaN).field("close", Double.NaN).time(2);
+        encoder.measurement("kline_data").tag("tradingPair", "BTCUSDT").field("open", 3.0).time(3);
+
+        assertThat(encoder.size()).isEqualTo(2);
+        assertThat(encoder.drain()).isEqualTo("kline_data,tradingPair=BTCUSDT open=1.0 1\nkline_data,tradingPair=BTCUSDT open=3.0 3");
+    }
+
+    @Test
+    void dropsOnlyLineWithoutValidFields() {
+        LineProtocolEncoder encoder = new LineProtocolEncoder(1);
+        encoder.measurement("kline_data").field("open", Double.NaN).time(1);
+        encoder.measurement("kline_data").field("open", 2.0).time(2);
+
+        assertThat(encoder.drain()).isEqualTo("kline_data open=2.0 2");
+    }
+}